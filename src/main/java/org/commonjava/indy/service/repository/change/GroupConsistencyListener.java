@@ -23,6 +23,7 @@ import org.commonjava.event.store.StoreEventType;
 import org.commonjava.indy.service.repository.audit.ChangeSummary;
 import org.commonjava.indy.service.repository.data.StoreDataManager;
 import org.commonjava.indy.service.repository.exception.IndyDataException;
+import org.commonjava.indy.service.repository.model.ArtifactStore;
 import org.commonjava.indy.service.repository.model.Group;
 import org.commonjava.indy.service.repository.model.StoreKey;
 import org.eclipse.microprofile.reactive.messaging.Incoming;
@@ -33,6 +34,7 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import java.util.Set;
 
+import static jakarta.ws.rs.core.Response.Status.CONFLICT;
 import static org.commonjava.indy.service.repository.change.event.kafka.KafkaEventUtils.CHANNEL_INTERNAL;
 import static org.commonjava.indy.service.repository.model.StoreKey.fromEventStoreKey;
 
@@ -42,6 +44,8 @@ public class GroupConsistencyListener
 
     private static final String GROUP_CONSISTENCY_ORIGIN = "group-consistency";
 
+    private static final int MAX_UPDATE_ATTEMPTS = 5;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -57,21 +61,54 @@ public class GroupConsistencyListener
             for ( final Group group : groups )
             {
                 logger.debug( "Removing {} from membership of group: {}", key, group.getKey() );
+                removeConstituent( group, key );
+            }
+        }
+        catch ( final IndyDataException e )
+        {
+            logger.error( String.format( "Failed to remove group constituent listings for: %s. Error: %s", key,
+                                         e.getMessage() ), e );
+        }
+    }
 
-                Group g = group.copyOf();
-                g.removeConstituent( key );
+    /**
+     * Update the group as of the version read, so a concurrent update of it by another node is not overwritten. On
+     * conflict, the membership change is applied again to the current group definition.
+     */
+    private void removeConstituent( final Group group, final StoreKey key )
+            throws IndyDataException
+    {
+        Group current = group;
+        for ( int attempt = 1; ; attempt++ )
+        {
+            Group g = current.copyOf();
+            g.removeConstituent( key );
+            try
+            {
                 storeDataManager.storeArtifactStore( g, new ChangeSummary( ChangeSummary.SYSTEM_USER,
                                                                            "Auto-update groups containing: " + key
                                                                                    + " (to maintain consistency)" ),
                                                      false, false,
                                                      new EventMetadata().set( StoreDataManager.EVENT_ORIGIN,
                                                                               GROUP_CONSISTENCY_ORIGIN ) );
+                return;
             }
-        }
-        catch ( final IndyDataException e )
-        {
-            logger.error( String.format( "Failed to remove group constituent listings for: %s. Error: %s", key,
-                                         e.getMessage() ), e );
+            catch ( final IndyDataException e )
+            {
+                if ( e.getStatus() != CONFLICT.getStatusCode() || attempt >= MAX_UPDATE_ATTEMPTS )
+                {
+                    throw e;
+                }
+                logger.debug( "Group {} was modified concurrently, retry removing {}", group.getKey(), key );
+            }
+
+            final ArtifactStore reloaded = storeDataManager.getArtifactStore( group.getKey() ).orElse( null );
+            if ( !( reloaded instanceof Group ) || !( (Group) reloaded ).getConstituents().contains( key ) )
+            {
+                logger.debug( "Group {} was deleted or no longer contains {}", group.getKey(), key );
+                return;
+            }
+            current = (Group) reloaded;
         }
     }
 
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change;
+
+import io.smallrye.reactive.messaging.annotations.Blocking;
+import org.commonjava.event.store.IndyStoreEvent;
+import org.commonjava.event.store.StoreEventType;
+import org.commonjava.indy.service.repository.data.StoreDataManager;
+import org.commonjava.indy.service.repository.data.cassandra.CassandraStoreDataManager;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.eclipse.microprofile.reactive.messaging.Incoming;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.service.repository.change.event.kafka.KafkaEventUtils.CHANNEL_STORE_SYNC;
+
+/**
+ * Keeps the in-memory store snapshot, the caches and the in-memory indexes of the Cassandra data manager in sync with
+ * the changes made by other nodes, following the store events they publish. Events of this node are read back too,
+ * reloading those stores is harmless.
+ */
+@ApplicationScoped
+public class StoreSnapshotSyncListener
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    StoreDataManager storeDataManager;
+
+    @Incoming( CHANNEL_STORE_SYNC )
+    @Blocking
+    public void storeChanged( IndyStoreEvent event )
+    {
+        if ( !( storeDataManager instanceof CassandraStoreDataManager )
+                || !( (CassandraStoreDataManager) storeDataManager ).isFollowingPeers() )
+        {
+            return;
+        }
+
+        if ( event.getEventType() == StoreEventType.PostUpdate || event.getEventType() == StoreEventType.PostDelete )
+        {
+            final Set<StoreKey> keys =
+                    event.getKeys().stream().map( StoreKey::fromEventStoreKey ).collect( Collectors.toSet() );
+            logger.trace( "Refreshing stores for {} event of: {}", event.getEventType(), keys );
+            ( (CassandraStoreDataManager) storeDataManager ).refreshFromPeer( keys );
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change.audit;
+
+import java.util.List;
+
+/**
+ * A page of audit records, with the token to read the next page. The token is null on the last page.
+ */
+public class AuditLogPage
+{
+    private final List<DtxRepoOpsAuditRecord> records;
+
+    private final String nextPage;
+
+    public AuditLogPage( final List<DtxRepoOpsAuditRecord> records, final String nextPage )
+    {
+        this.records = records;
+        this.nextPage = nextPage;
+    }
+
+    public List<DtxRepoOpsAuditRecord> getRecords()
+    {
+        return records;
+    }
+
+    public String getNextPage()
+    {
+        return nextPage;
+    }
+}
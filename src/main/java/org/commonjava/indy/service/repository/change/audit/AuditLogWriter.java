@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Writes audit records in the background, so recording one never waits for Cassandra. Records are queued in a bounded
+ * queue, and a writer thread drains it, grouping the records of one partition of the audit table, a repository and
+ * month bucket, to write them together. At most a fixed number of writes run at the same time, when they are all busy the queue fills
+ * up and new records overflow according to the {@link OverflowPolicy}.
+ */
+public class AuditLogWriter
+{
+    public enum OverflowPolicy
+    {
+        /**
+         * Discard the record, only counting it.
+         */
+        DROP,
+        /**
+         * Discard the record, spilling it to the application log so it can still be found.
+         */
+        LOG
+    }
+
+    private static final long POLL_MILLIS = 100;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final BlockingQueue<Pending> queue;
+
+    private final int batchSize;
+
+    private final int maxInFlight;
+
+    private final Semaphore inFlight;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final Function<List<DtxRepoOpsAuditRecord>, CompletionStage<?>> sink;
+
+    private final Thread writer;
+
+    private volatile boolean stopped;
+
+    private final LongAdder enqueued = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    private final AtomicLong lastLagNanos = new AtomicLong();
+
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    /**
+     * @param sink writes the records of one partition, completing once they are stored
+     */
+    public AuditLogWriter( final int queueSize, final int batchSize, final int maxInFlight,
+                           final OverflowPolicy overflowPolicy,
+                           final Function<List<DtxRepoOpsAuditRecord>, CompletionStage<?>> sink )
+    {
+        this.queue = new ArrayBlockingQueue<>( Math.max( 1, queueSize ) );
+        this.batchSize = Math.max( 1, batchSize );
+        this.maxInFlight = Math.max( 1, maxInFlight );
+        this.inFlight = new Semaphore( this.maxInFlight );
+        this.overflowPolicy = overflowPolicy;
+        this.sink = sink;
+        this.writer = new Thread( this::run, "audit-log-writer" );
+        this.writer.setDaemon( true );
+    }
+
+    public void start()
+    {
+        writer.start();
+    }
+
+    /**
+     * Queue the record to be written.
+     *
+     * @return false if the queue is full and the record was dropped
+     */
+    public boolean offer( final DtxRepoOpsAuditRecord record )
+    {
+        if ( !stopped && queue.offer( new Pending( record ) ) )
+        {
+            enqueued.increment();
+            return true;
+        }
+
+        dropped.increment();
+        if ( overflowPolicy == OverflowPolicy.LOG )
+        {
+            logger.warn( "Audit queue is full, record not written: {}", record );
+        }
+        return false;
+    }
+
+    private void run()
+    {
+        final List<Pending> drained = new ArrayList<>( batchSize );
+        while ( !stopped || !queue.isEmpty() )
+        {
+            try
+            {
+                final Pending first = queue.poll( POLL_MILLIS, TimeUnit.MILLISECONDS );
+                if ( first == null )
+                {
+                    continue;
+                }
+                drained.add( first );
+                queue.drainTo( drained, batchSize - 1 );
+
+                final Map<Map.Entry<String, Integer>, List<Pending>> byPartition = new LinkedHashMap<>();
+                drained.forEach( p -> byPartition.computeIfAbsent(
+                        Map.entry( p.record.getRepoName(), p.record.getBucket() ), k -> new ArrayList<>() ).add( p ) );
+                for ( List<Pending> group : byPartition.values() )
+                {
+                    inFlight.acquire();
+                    write( group );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                logger.warn( "Audit writer interrupted, {} records not written", queue.size() + drained.size() );
+                Thread.currentThread().interrupt();
+                return;
+            }
+            finally
+            {
+                drained.clear();
+            }
+        }
+    }
+
+    private void write( final List<Pending> group )
+    {
+        final List<DtxRepoOpsAuditRecord> records = new ArrayList<>( group.size() );
+        group.forEach( p -> records.add( p.record ) );
+        final long oldest = group.get( 0 ).enqueuedNanos;
+
+        CompletionStage<?> result;
+        try
+        {
+            result = sink.apply( records );
+        }
+        catch ( RuntimeException e )
+        {
+            inFlight.release();
+            failed( records, e );
+            return;
+        }
+
+        result.whenComplete( ( r, error ) -> {
+            inFlight.release();
+            if ( error != null )
+            {
+                failed( records, error );
+                return;
+            }
+            written.add( records.size() );
+            batches.increment();
+            final long lag = System.nanoTime() - oldest;
+            lastLagNanos.set( lag );
+            maxLagNanos.accumulateAndGet( lag, Math::max );
+        } );
+    }
+
+    private void failed( final List<DtxRepoOpsAuditRecord> records, final Throwable error )
+    {
+        failed.add( records.size() );
+        logger.error( String.format( "Failed to write %d audit records of: %s", records.size(),
+                                     records.get( 0 ).getRepoName() ), error );
+    }
+
+    /**
+     * Stop accepting records, then wait for the queued ones to be written.
+     *
+     * @return false if some records were still not written after the timeout
+     */
+    public boolean shutdown( final long timeout, final TimeUnit unit )
+    {
+        stopped = true;
+        final long deadline = System.nanoTime() + unit.toNanos( timeout );
+        try
+        {
+            writer.join( Math.max( 1, TimeUnit.NANOSECONDS.toMillis( deadline - System.nanoTime() ) ) );
+            if ( !writer.isAlive()
+                    && inFlight.tryAcquire( maxInFlight, deadline - System.nanoTime(), TimeUnit.NANOSECONDS ) )
+            {
+                inFlight.release( maxInFlight );
+                return true;
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        logger.warn( "Audit records not all written before shutdown, {} still queued", queue.size() );
+        return false;
+    }
+
+    public AuditWriterStats getStats()
+    {
+        final Pending oldest = queue.peek();
+        final long oldestQueuedMillis =
+                oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - oldest.enqueuedNanos );
+        return new AuditWriterStats( queue.size(), oldestQueuedMillis, maxInFlight - inFlight.availablePermits(),
+                                     enqueued.sum(), dropped.sum(), written.sum(), failed.sum(), batches.sum(),
+                                     TimeUnit.NANOSECONDS.toMillis( lastLagNanos.get() ),
+                                     TimeUnit.NANOSECONDS.toMillis( maxLagNanos.get() ) );
+    }
+
+    private static final class Pending
+    {
+        private final DtxRepoOpsAuditRecord record;
+
+        private final long enqueuedNanos = System.nanoTime();
+
+        private Pending( final DtxRepoOpsAuditRecord record )
+        {
+            this.record = record;
+        }
+    }
+}
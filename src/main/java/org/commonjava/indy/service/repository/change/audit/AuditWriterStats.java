@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change.audit;
+
+/**
+ * Snapshot of the statistics of the {@link AuditLogWriter}. The lag of a write is measured from the queuing of its
+ * oldest record to the end of the write.
+ */
+public class AuditWriterStats
+{
+    private final int queued;
+
+    private final long oldestQueuedMillis;
+
+    private final int inFlight;
+
+    private final long enqueued;
+
+    private final long dropped;
+
+    private final long written;
+
+    private final long failed;
+
+    private final long batches;
+
+    private final long lastLagMillis;
+
+    private final long maxLagMillis;
+
+    public AuditWriterStats( final int queued, final long oldestQueuedMillis, final int inFlight, final long enqueued,
+                             final long dropped, final long written, final long failed, final long batches,
+                             final long lastLagMillis, final long maxLagMillis )
+    {
+        this.queued = queued;
+        this.oldestQueuedMillis = oldestQueuedMillis;
+        this.inFlight = inFlight;
+        this.enqueued = enqueued;
+        this.dropped = dropped;
+        this.written = written;
+        this.failed = failed;
+        this.batches = batches;
+        this.lastLagMillis = lastLagMillis;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    public int getQueued()
+    {
+        return queued;
+    }
+
+    /**
+     * How long the oldest record still queued has been waiting.
+     */
+    public long getOldestQueuedMillis()
+    {
+        return oldestQueuedMillis;
+    }
+
+    public int getInFlight()
+    {
+        return inFlight;
+    }
+
+    public long getEnqueued()
+    {
+        return enqueued;
+    }
+
+    public long getDropped()
+    {
+        return dropped;
+    }
+
+    public long getWritten()
+    {
+        return written;
+    }
+
+    public long getFailed()
+    {
+        return failed;
+    }
+
+    public long getBatches()
+    {
+        return batches;
+    }
+
+    public long getLastLagMillis()
+    {
+        return lastLagMillis;
+    }
+
+    public long getMaxLagMillis()
+    {
+        return maxLagMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AuditWriterStats{" + "queued=" + queued + ", oldestQueuedMillis=" + oldestQueuedMillis
+                + ", inFlight=" + inFlight + ", enqueued=" + enqueued + ", dropped=" + dropped + ", written="
+                + written + ", failed=" + failed + ", batches=" + batches + ", lastLagMillis=" + lastLagMillis
+                + ", maxLagMillis=" + maxLagMillis + '}';
+    }
+}
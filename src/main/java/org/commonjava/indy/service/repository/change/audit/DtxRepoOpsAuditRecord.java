@@ -15,13 +15,18 @@
  */
 package org.commonjava.indy.service.repository.change.audit;
 
+import com.datastax.driver.mapping.annotations.ClusteringColumn;
 import com.datastax.driver.mapping.annotations.Column;
 import com.datastax.driver.mapping.annotations.PartitionKey;
 import com.datastax.driver.mapping.annotations.Table;
+import com.datastax.driver.mapping.annotations.Transient;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
-import static org.commonjava.indy.service.repository.change.audit.StoreAuditManager.TABLE_AUDIT;
+import java.util.UUID;
 
-@Table( name = TABLE_AUDIT, readConsistency = "QUORUM", writeConsistency = "QUORUM" )
+import static org.commonjava.indy.service.repository.change.audit.StoreAuditManager.TABLE_AUDIT_LOG;
+
+@Table( name = TABLE_AUDIT_LOG, readConsistency = "QUORUM", writeConsistency = "QUORUM" )
 public class DtxRepoOpsAuditRecord
 {
 
@@ -29,7 +34,21 @@ public class DtxRepoOpsAuditRecord
     @PartitionKey( 0 )
     private String repoName;
 
+    /**
+     * The month of the id, as yyyyMM, see {@link StoreAuditManager#getBucket}.
+     */
+    @Column
+    @PartitionKey( 1 )
+    private int bucket;
+
     @Column
+    @ClusteringColumn
+    private UUID id;
+
+    /**
+     * The time of the id, formatted for display.
+     */
+    @Transient
     private String time;
 
     @Column
@@ -38,6 +57,27 @@ public class DtxRepoOpsAuditRecord
     @Column
     private String changeContent;
 
+    @JsonIgnore
+    public int getBucket()
+    {
+        return bucket;
+    }
+
+    public void setBucket( int bucket )
+    {
+        this.bucket = bucket;
+    }
+
+    public UUID getId()
+    {
+        return id;
+    }
+
+    public void setId( UUID id )
+    {
+        this.id = id;
+    }
+
     public String getTime()
     {
         return time;
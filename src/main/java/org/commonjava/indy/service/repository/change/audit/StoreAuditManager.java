@@ -15,31 +15,49 @@
  */
 package org.commonjava.indy.service.repository.change.audit;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.PagingStateException;
+import com.datastax.driver.core.utils.UUIDs;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
 import org.apache.commons.lang3.StringUtils;
 import org.commonjava.indy.service.repository.config.IndyRepositoryConfiguration;
 import org.commonjava.indy.service.repository.data.cassandra.CassandraClient;
 import org.commonjava.indy.service.repository.data.cassandra.CassandraConfiguration;
+import org.commonjava.indy.service.repository.data.cassandra.CassandraStoreUtil;
 import org.commonjava.indy.service.repository.data.cassandra.SchemaUtils;
 import org.commonjava.indy.service.repository.model.StoreKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.TimeZone;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.String.format;
 
@@ -49,8 +67,33 @@ public class StoreAuditManager
 {
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
+    /**
+     * The legacy audit table, keyed by a formatted time string. Only read to migrate its records.
+     */
     public static final String TABLE_AUDIT = "repo_audit";
 
+    public static final String TABLE_AUDIT_LOG = "repo_audit_log";
+
+    /**
+     * Copy of the audit log partitioned by repository and operation, to read the records of one operation without
+     * filtering.
+     */
+    public static final String TABLE_AUDIT_LOG_BY_OPS = "repo_audit_log_by_ops";
+
+    /**
+     * The buckets holding audit records of each repository, so the reader only queries the months that have any.
+     */
+    public static final String TABLE_AUDIT_BUCKETS = "repo_audit_buckets";
+
+    private static final String MIGRATION_JOB = "audit-log-migration";
+
+    private static final String MIGRATION_DONE = "done";
+
+    private static final int MIGRATION_FETCH_SIZE = 500;
+
+    private static final DateTimeFormatter AUDIT_TIME_FORMAT =
+            DateTimeFormatter.ofPattern( "yyyy-MM-dd HH:mm:ss.SSS" ).withZone( ZoneOffset.UTC );
+
     @Inject
     CassandraClient client;
 
@@ -64,18 +107,30 @@ public class StoreAuditManager
 
     private Session session;
 
-    private PreparedStatement preparedStoreAuditQueryByRepo;
+    private String keySpace;
 
-    private PreparedStatement preparedStoreAuditQueryByRepoAndOps;
+    private PreparedStatement preparedAuditByOpsInsert;
+
+    private PreparedStatement preparedAuditBucketInsert;
+
+    private PreparedStatement preparedAuditBucketQuery;
+
+    private PreparedStatement preparedAuditQueryByRepo;
+
+    private PreparedStatement preparedAuditQueryByRepoAndOps;
+
+    private AuditLogWriter auditWriter;
 
     public StoreAuditManager()
     {
     }
 
-    public StoreAuditManager( CassandraClient client, CassandraConfiguration config )
+    public StoreAuditManager( CassandraClient client, CassandraConfiguration config,
+                              IndyRepositoryConfiguration repoConfig )
     {
         this.client = client;
         this.config = config;
+        this.repoConfig = repoConfig;
         init();
     }
 
@@ -84,43 +139,118 @@ public class StoreAuditManager
     {
         if ( repoConfig.repoAuditEnabled() )
         {
-            String keySpace = config.getKeyspace();
+            keySpace = config.getKeyspace();
             session = client.getSession( keySpace );
             session.execute( SchemaUtils.getSchemaCreateKeyspace( keySpace, config.getKeyspaceReplicas() ) );
-            session.execute( getSchemaCreateTableStore( keySpace ) );
+            session.execute( getSchemaCreateTableAuditLog( keySpace, TABLE_AUDIT_LOG, "(reponame, bucket)" ) );
+            session.execute( getSchemaCreateTableAuditLog( keySpace, TABLE_AUDIT_LOG_BY_OPS,
+                                                           "(reponame, operation, bucket)" ) );
+            session.execute( getSchemaCreateTableAuditBuckets( keySpace ) );
+            session.execute( CassandraStoreUtil.getSchemaCreateTableMaintenanceProgress( keySpace ) );
 
             MappingManager manager = new MappingManager( session );
 
             auditMapper = manager.mapper( DtxRepoOpsAuditRecord.class, keySpace );
-            preparedStoreAuditQueryByRepo = session.prepare(
-                    format( "SELECT time, reponame, operation, changecontent FROM %s.%s WHERE reponame=? ORDER BY time DESC limit ?",
-                            keySpace, TABLE_AUDIT ) );
+            // a TTL of 0 means no expiration
+            preparedAuditByOpsInsert = session.prepare(
+                    format( "INSERT INTO %s.%s (reponame, operation, bucket, id, changecontent) VALUES (?, ?, ?, ?, ?) USING TTL ?",
+                            keySpace, TABLE_AUDIT_LOG_BY_OPS ) );
+            preparedAuditBucketInsert = session.prepare(
+                    format( "INSERT INTO %s.%s (reponame, bucket) VALUES (?, ?) USING TTL ?", keySpace,
+                            TABLE_AUDIT_BUCKETS ) );
+            preparedAuditBucketQuery = session.prepare(
+                    format( "SELECT bucket FROM %s.%s WHERE reponame=? AND bucket>=? AND bucket<=?", keySpace,
+                            TABLE_AUDIT_BUCKETS ) );
+
+            // the time range bounds are timeuuids, see UUIDs.startOf() and UUIDs.endOf()
+            preparedAuditQueryByRepo = session.prepare(
+                    format( "SELECT reponame, bucket, id, operation, changecontent FROM %s.%s WHERE reponame=? AND bucket=? AND id>=? AND id<=?",
+                            keySpace, TABLE_AUDIT_LOG ) );
 
-            preparedStoreAuditQueryByRepoAndOps = session.prepare(
-                    format( "SELECT time, reponame, operation, changecontent FROM %s.%s WHERE reponame=? and operation=? ORDER BY time DESC limit ? ALLOW FILTERING",
-                            keySpace, TABLE_AUDIT ) );
+            preparedAuditQueryByRepoAndOps = session.prepare(
+                    format( "SELECT reponame, bucket, id, operation, changecontent FROM %s.%s WHERE reponame=? AND operation=? AND bucket=? AND id>=? AND id<=?",
+                            keySpace, TABLE_AUDIT_LOG_BY_OPS ) );
+
+            auditWriter = new AuditLogWriter( repoConfig.auditWriterQueueSize(), repoConfig.auditWriterBatchSize(),
+                                              repoConfig.auditWriterMaxInFlight(), repoConfig.auditWriterOverflow(),
+                                              this::saveRecords );
+            auditWriter.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( auditWriter != null )
+        {
+            auditWriter.shutdown( repoConfig.auditWriterDrainTimeoutSeconds(), TimeUnit.SECONDS );
         }
     }
 
-    private static String getSchemaCreateTableStore( String keySpace )
+    /**
+     * The records are partitioned by month and written once, expiring together with their TTL, so a time window
+     * compaction drops whole expired SSTables instead of rewriting them.
+     */
+    private static String getSchemaCreateTableAuditLog( String keySpace, String table, String partitionKey )
     {
         // @formatter:off
         return format("CREATE TABLE IF NOT EXISTS %s.%s ("
-                          + "time varchar,"
                           + "reponame varchar,"
+                          + "bucket int,"
+                          + "id timeuuid,"
                           + "operation varchar,"
                           + "changecontent varchar,"
-                          + "PRIMARY KEY ((reponame), time)"
-                          + ") WITH CLUSTERING ORDER BY (time DESC);",
-                      keySpace, TABLE_AUDIT);
+                          + "PRIMARY KEY (%s, id)"
+                          + ") WITH CLUSTERING ORDER BY (id DESC)"
+                          + " AND compaction = {'class': 'TimeWindowCompactionStrategy',"
+                          + " 'compaction_window_unit': 'DAYS', 'compaction_window_size': 30};",
+                      keySpace, table, partitionKey);
+        // @formatter:on
+    }
+
+    private static String getSchemaCreateTableAuditBuckets( String keySpace )
+    {
+        // @formatter:off
+        return format("CREATE TABLE IF NOT EXISTS %s.%s ("
+                          + "reponame varchar,"
+                          + "bucket int,"
+                          + "PRIMARY KEY (reponame, bucket)"
+                          + ") WITH CLUSTERING ORDER BY (bucket DESC);",
+                      keySpace, TABLE_AUDIT_BUCKETS);
         // @formatter:on
     }
 
+    /**
+     * Get the bucket of a time, its month in UTC as yyyyMM.
+     */
+    static int getBucket( final long millis )
+    {
+        final OffsetDateTime time = Instant.ofEpochMilli( millis ).atOffset( ZoneOffset.UTC );
+        return time.getYear() * 100 + time.getMonthValue();
+    }
+
+    private int getRetentionSeconds()
+    {
+        final int days = repoConfig.auditRetentionDays();
+        return days <= 0 ? 0 : (int) TimeUnit.DAYS.toSeconds( days );
+    }
+
+    private Statement getLogInsert( final DtxRepoOpsAuditRecord record, final int ttl )
+    {
+        return ttl > 0 ? auditMapper.saveQuery( record, Mapper.Option.ttl( ttl ) ) : auditMapper.saveQuery( record );
+    }
+
+    private Statement getByOpsInsert( final DtxRepoOpsAuditRecord record, final int ttl )
+    {
+        return preparedAuditByOpsInsert.bind( record.getRepoName(), record.getOperation(), record.getBucket(),
+                                              record.getId(), record.getChangeContent(), ttl );
+    }
+
     public void recordLog( final StoreKey storeKey, final String ops, final String content )
     {
         if ( repoConfig.repoAuditEnabled() )
         {
-            auditMapper.save( toDtxRepoOpsAuditRecord( storeKey, ops, content ) );
+            auditWriter.offer( toDtxRepoOpsAuditRecord( storeKey, ops, content ) );
         }
         else
         {
@@ -129,41 +259,296 @@ public class StoreAuditManager
 
     }
 
-    public List<DtxRepoOpsAuditRecord> getAuditLogByRepo( final String key, final int limit )
+    /**
+     * Write records of one partition of the audit log, a repository and bucket, in one unlogged batch. Their copies in
+     * the by-operation table go to one partition per operation, each written by its own batch, and the bucket marker
+     * by its own statement, all concurrently.
+     */
+    private CompletionStage<?> saveRecords( final List<DtxRepoOpsAuditRecord> records )
+    {
+        final int ttl = getRetentionSeconds();
+        final BatchStatement batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+        final Map<String, BatchStatement> byOps = new HashMap<>();
+        records.forEach( record -> {
+            batch.add( getLogInsert( record, ttl ) );
+            byOps.computeIfAbsent( record.getOperation(), o -> new BatchStatement( BatchStatement.Type.UNLOGGED ) )
+                 .add( getByOpsInsert( record, ttl ) );
+        } );
+
+        final List<CompletableFuture<ResultSet>> writes = new ArrayList<>();
+        writes.add( executeAsync( batch ) );
+        byOps.values().forEach( opsBatch -> writes.add( executeAsync( opsBatch ) ) );
+        // rewriting the bucket renews its TTL, it expires with the last record written to it
+        final DtxRepoOpsAuditRecord first = records.get( 0 );
+        writes.add( executeAsync( preparedAuditBucketInsert.bind( first.getRepoName(), first.getBucket(), ttl ) ) );
+        return CompletableFuture.allOf( writes.toArray( new CompletableFuture[0] ) );
+    }
+
+    private CompletableFuture<ResultSet> executeAsync( final Statement statement )
+    {
+        final ResultSetFuture future = session.executeAsync( statement );
+        final CompletableFuture<ResultSet> result = new CompletableFuture<>();
+        future.addListener( () -> {
+            try
+            {
+                result.complete( future.get() );
+            }
+            catch ( ExecutionException e )
+            {
+                result.completeExceptionally( e.getCause() );
+            }
+            catch ( InterruptedException | RuntimeException e )
+            {
+                result.completeExceptionally( e );
+            }
+        }, Runnable::run );
+        return result;
+    }
+
+    public AuditWriterStats getWriterStats()
+    {
+        return auditWriter == null ? null : auditWriter.getStats();
+    }
+
+    /**
+     * Get a page of the audit log of a repository, newest first. The records are read bucket by bucket, the page
+     * token is the bucket to continue with, the end of the time range and the paging state inside the bucket, as
+     * "bucket:to:pagingState". The end of the range is resolved once by the first page and kept by the token, the
+     * paging state of Cassandra being only valid for the same query values.
+     *
+     * @param ops only the records of this operation if not null
+     * @param fromMillis only the records at or after this time if not null
+     * @param toMillis only the records at or before this time if not null
+     * @param pageToken the next page token of the previous page, null for the first page
+     * @throws IllegalArgumentException if the page token is not valid, or not a page of the same query
+     */
+    public AuditLogPage getAuditLog( final String repoName, final String ops, final Long fromMillis,
+                                     final Long toMillis, final int limit, final String pageToken )
+    {
+        final long fromTime = fromMillis == null ? 0 : fromMillis;
+        final PageToken page;
+        if ( pageToken == null )
+        {
+            final long toTime = toMillis == null ? System.currentTimeMillis() : toMillis;
+            page = new PageToken( getBucket( toTime ), toTime, null );
+        }
+        else
+        {
+            page = PageToken.parse( pageToken );
+            if ( toMillis != null && toMillis != page.to )
+            {
+                throw new IllegalArgumentException( "Audit log page of another time range: " + pageToken );
+            }
+        }
+        final UUID from = UUIDs.startOf( fromTime );
+        final UUID to = UUIDs.endOf( page.to );
+
+        final List<Integer> buckets = new ArrayList<>();
+        session.execute( preparedAuditBucketQuery.bind( repoName, getBucket( fromTime ), page.bucket ) )
+               .forEach( row -> buckets.add( row.getInt( "bucket" ) ) );
+
+        final List<DtxRepoOpsAuditRecord> records = new ArrayList<>();
+        for ( int b = 0; b < buckets.size(); b++ )
+        {
+            final int bucket = buckets.get( b );
+            if ( records.size() >= limit )
+            {
+                // the page is full, start the next one with this bucket
+                return new AuditLogPage( records, new PageToken( bucket, page.to, null ).toString() );
+            }
+
+            final BoundStatement bound = ops == null ?
+                    preparedAuditQueryByRepo.bind( repoName, bucket, from, to ) :
+                    preparedAuditQueryByRepoAndOps.bind( repoName, ops, bucket, from, to );
+            bound.setFetchSize( limit - records.size() );
+            if ( bucket == page.bucket && page.pagingState != null )
+            {
+                try
+                {
+                    bound.setPagingState( page.pagingState );
+                }
+                catch ( PagingStateException e )
+                {
+                    throw new IllegalArgumentException( "Audit log page of another query: " + pageToken, e );
+                }
+            }
+
+            final ResultSet result = session.execute( bound );
+            // only read the fetched page, the rest of the bucket is read with the page token
+            for ( int i = result.getAvailableWithoutFetching(); i > 0; i-- )
+            {
+                records.add( toDtxRepoOpsAuditRecord( result.one() ) );
+            }
+
+            final PagingState next = result.getExecutionInfo().getPagingState();
+            if ( next != null )
+            {
+                return new AuditLogPage( records, new PageToken( bucket, page.to, next ).toString() );
+            }
+        }
+
+        return new AuditLogPage( records, null );
+    }
+
+    /**
+     * Where the next page of the audit log starts.
+     */
+    static final class PageToken
+    {
+        final int bucket;
+
+        final long to;
+
+        final PagingState pagingState;
+
+        PageToken( final int bucket, final long to, final PagingState pagingState )
+        {
+            this.bucket = bucket;
+            this.to = to;
+            this.pagingState = pagingState;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the token is not valid
+         */
+        static PageToken parse( final String token )
+        {
+            final String[] parts = token.split( ":", 3 );
+            if ( parts.length != 3 )
+            {
+                throw new IllegalArgumentException( "Invalid audit log page: " + token );
+            }
+            try
+            {
+                return new PageToken( Integer.parseInt( parts[0] ), Long.parseLong( parts[1] ),
+                                      parts[2].isEmpty() ? null : PagingState.fromString( parts[2] ) );
+            }
+            catch ( NumberFormatException | PagingStateException e )
+            {
+                throw new IllegalArgumentException( "Invalid audit log page: " + token, e );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return bucket + ":" + to + ":" + ( pagingState == null ? "" : pagingState.toString() );
+        }
+    }
+
+    /**
+     * Copy the records of the legacy audit table into the audit log tables, once. Records written again by an
+     * interrupted migration get the same ids, so it can simply be run again.
+     *
+     * @return the number of copied records
+     */
+    public long migrateLegacyAuditLog()
     {
-        BoundStatement bound = preparedStoreAuditQueryByRepo.bind( key, limit );
-        ResultSet result = session.execute( bound );
+        if ( session == null || getMigrationDone() )
+        {
+            return 0;
+        }
+
+        final KeyspaceMetadata keyspaceMetadata = session.getCluster().getMetadata().getKeyspace( keySpace );
+        if ( keyspaceMetadata != null && keyspaceMetadata.getTable( TABLE_AUDIT ) != null )
+        {
+            logger.info( "Migrate the audit records of {}.{}", keySpace, TABLE_AUDIT );
+            final Statement select = new SimpleStatement(
+                    format( "SELECT reponame, time, operation, changecontent FROM %s.%s", keySpace, TABLE_AUDIT ) );
+            select.setFetchSize( MIGRATION_FETCH_SIZE );
 
-        List<DtxRepoOpsAuditRecord> records = new ArrayList<>();
-        result.forEach( row -> records.add( toDtxRepoOpsAuditRecord( row ) ) );
+            final int retention = getRetentionSeconds();
+            long migrated = 0;
+            for ( Row row : session.execute( select ) )
+            {
+                final DtxRepoOpsAuditRecord record = toLegacyAuditRecord( row );
+                if ( record == null )
+                {
+                    continue;
+                }
 
-        return records;
+                // legacy records only keep what is left of the retention
+                int ttl = 0;
+                if ( retention > 0 )
+                {
+                    final long age = TimeUnit.MILLISECONDS.toSeconds(
+                            System.currentTimeMillis() - UUIDs.unixTimestamp( record.getId() ) );
+                    if ( age >= retention )
+                    {
+                        continue;
+                    }
+                    ttl = (int) ( retention - age );
+                }
+
+                session.execute( getLogInsert( record, ttl ) );
+                session.execute( getByOpsInsert( record, ttl ) );
+                session.execute( preparedAuditBucketInsert.bind( record.getRepoName(), record.getBucket(), ttl ) );
+                migrated++;
+            }
+            logger.info( "Migrated {} audit records, {}.{} can be dropped", migrated, keySpace, TABLE_AUDIT );
+            setMigrationDone();
+            return migrated;
+        }
+
+        setMigrationDone();
+        return 0;
     }
 
-    public List<DtxRepoOpsAuditRecord> getAuditLogByRepoAndOps( final String key, final String ops, final int limit )
+    private boolean getMigrationDone()
     {
-        BoundStatement bound = preparedStoreAuditQueryByRepoAndOps.bind( key, ops, limit );
-        ResultSet result = session.execute( bound );
+        return session.execute( format( "SELECT item FROM %s.%s WHERE job=? AND item=?", keySpace,
+                                        CassandraStoreUtil.TABLE_MAINTENANCE_PROGRESS ), MIGRATION_JOB,
+                                MIGRATION_DONE ).one() != null;
+    }
 
-        List<DtxRepoOpsAuditRecord> records = new ArrayList<>();
-        result.forEach( row -> records.add( toDtxRepoOpsAuditRecord( row ) ) );
+    private void setMigrationDone()
+    {
+        session.execute( format( "INSERT INTO %s.%s (job, item) VALUES (?, ?)", keySpace,
+                                 CassandraStoreUtil.TABLE_MAINTENANCE_PROGRESS ), MIGRATION_JOB, MIGRATION_DONE );
+    }
 
-        return records;
+    /**
+     * Convert a row of the legacy table. The id is the first timeuuid of the recorded millisecond, the legacy table
+     * held a single record per repository and millisecond.
+     */
+    private DtxRepoOpsAuditRecord toLegacyAuditRecord( final Row row )
+    {
+        final long millis;
+        try
+        {
+            millis = Instant.from( AUDIT_TIME_FORMAT.parse( row.getString( "time" ) ) ).toEpochMilli();
+        }
+        catch ( DateTimeParseException | NullPointerException e )
+        {
+            logger.warn( "Skip legacy audit record of {} with invalid time: {}", row.getString( "reponame" ),
+                         row.getString( "time" ) );
+            return null;
+        }
+
+        DtxRepoOpsAuditRecord record = new DtxRepoOpsAuditRecord();
+        record.setId( UUIDs.startOf( millis ) );
+        record.setBucket( getBucket( millis ) );
+        record.setTime( getAuditTime( millis ) );
+        record.setRepoName( row.getString( "reponame" ) );
+        record.setOperation( row.getString( "operation" ) );
+        record.setChangeContent( row.getString( "changecontent" ) );
+        return record;
     }
 
-    private String getAuditTime( Date date )
+    private String getAuditTime( long millis )
     {
-        final SimpleDateFormat format = new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss.SSS" );
-        format.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
-        return format.format( date );
+        return AUDIT_TIME_FORMAT.format( Instant.ofEpochMilli( millis ) );
     }
 
     private DtxRepoOpsAuditRecord toDtxRepoOpsAuditRecord( final StoreKey storeKey, final String ops,
                                                            final String changeContent )
     {
-        final long currentMillis = System.currentTimeMillis();
+        // the id is taken when the change is recorded, so the records are ordered by change, not by write
+        final UUID id = UUIDs.timeBased();
         DtxRepoOpsAuditRecord record = new DtxRepoOpsAuditRecord();
-        record.setTime( getAuditTime( new Date( currentMillis ) ) );
+        record.setId( id );
+        record.setBucket( getBucket( UUIDs.unixTimestamp( id ) ) );
+        record.setTime( getAuditTime( UUIDs.unixTimestamp( id ) ) );
         record.setRepoName( storeKey.toString() );
         record.setOperation( ops );
         if ( StringUtils.isNotBlank( changeContent ) )
@@ -181,7 +566,9 @@ public class StoreAuditManager
             return null;
         }
         DtxRepoOpsAuditRecord record = new DtxRepoOpsAuditRecord();
-        record.setTime( row.getString( "time" ) );
+        record.setId( row.getUUID( "id" ) );
+        record.setBucket( row.getInt( "bucket" ) );
+        record.setTime( getAuditTime( UUIDs.unixTimestamp( record.getId() ) ) );
         record.setRepoName( row.getString( "reponame" ) );
         record.setOperation( row.getString( "operation" ) );
         record.setChangeContent( row.getString( "changecontent" ) );
@@ -17,45 +17,42 @@ package org.commonjava.indy.service.repository.change.event;
 
 import io.vertx.mutiny.core.eventbus.EventBus;
 import org.commonjava.event.common.EventMetadata;
-import org.commonjava.event.store.EventStoreKey;
-import org.commonjava.event.store.StoreEnablementEvent;
-import org.commonjava.event.store.StorePostDeleteEvent;
-import org.commonjava.event.store.StorePostUpdateEvent;
-import org.commonjava.event.store.StorePreDeleteEvent;
-import org.commonjava.event.store.StorePreUpdateEvent;
 import org.commonjava.event.store.StoreUpdateType;
 import org.commonjava.indy.service.repository.change.audit.AuditOps;
 import org.commonjava.indy.service.repository.change.audit.StoreAuditManager;
-import org.commonjava.indy.service.repository.change.event.kafka.KafkaEventUtils;
+import org.commonjava.indy.service.repository.change.event.kafka.StoreEventBatcher;
+import org.commonjava.indy.service.repository.concurrent.DispatchStats;
+import org.commonjava.indy.service.repository.concurrent.KeyedDispatcher;
+import org.commonjava.indy.service.repository.config.IndyRepositoryConfiguration;
 import org.commonjava.indy.service.repository.model.ArtifactStore;
 import org.commonjava.indy.service.repository.model.Group;
-import org.commonjava.indy.service.repository.model.StoreDiffer;
 import org.commonjava.indy.service.repository.model.StoreKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Default;
 import jakarta.inject.Inject;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Arrays.asList;
-import static java.util.Arrays.stream;
 import static org.commonjava.indy.service.repository.model.StoreType.group;
 
 /**
- * Pre-events (deleting, updating, enabling) are single-threaded (inline to user thread) so there isn't a race
- * condition between their execution and the target action.
- * For post-events (deleted, updated, enabled), it's intended that those are less critical and can happen async.
+ * Pre-events (deleting, updating, enabling) and post-events (deleted, updated, enabled) are sent to Kafka by the
+ * {@link StoreEventBatcher} after the call returns, on lanes chosen by store key. The events of one store are sent in
+ * the order they were fired, the pre-event of a change before its post-event, but a pre-event may reach Kafka after
+ * the action it announces. An event of several stores is split into one event per lane, so it never overtakes or
+ * waits for the events of stores on other lanes, but the consumers may receive it as several events. Nothing of the
+ * event is computed on the thread holding the store lock but copies of the stores, and the post-events are coalesced.
  *
- * This also makes them in right order - pre before action and post after action.
+ * The audit records are written on lanes chosen by store key, so the records of one store are written in the order of
+ * the changes.
  */
 @ApplicationScoped
 @Default
@@ -66,129 +63,100 @@ public class DefaultStoreEventDispatcher
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
-    KafkaEventUtils kafkaEvent;
+    StoreEventBatcher eventBatcher;
 
     @Inject
     StoreAuditManager auditManager;
 
-    //    @Inject
-    //    @WeftManaged
-    //    @ExecutorConfig( named = CoreEventManagerConstants.DISPATCH_EXECUTOR_NAME,
-    //                     threads = CoreEventManagerConstants.DISPATCH_EXECUTOR_THREADS,
-    //                     priority = CoreEventManagerConstants.DISPATCH_EXECUTOR_PRIORITY )
-    private final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+    @Inject
+    IndyRepositoryConfiguration repoConfig;
+
+    private KeyedDispatcher<StoreKey> dispatcher;
+
+    @PostConstruct
+    public void init()
+    {
+        dispatcher = new KeyedDispatcher<>( "store-event-dispatch", repoConfig.eventDispatchLanes(),
+                                            repoConfig.eventDispatchQueueSize(), repoConfig.eventDispatchOverflow(),
+                                            repoConfig.eventDispatchBlockTimeoutMillis() );
+        logger.info( "Store events dispatched by: {}", dispatcher );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        logger.info( "Draining store events: {}", dispatcher.getStats() );
+        dispatcher.shutdown( repoConfig.eventDispatchDrainTimeoutSeconds(), TimeUnit.SECONDS );
+    }
+
+    public DispatchStats getDispatchStats()
+    {
+        return dispatcher.getStats();
+    }
 
     @Override
     public void deleting( final EventMetadata eventMetadata, final StoreKey... storeKeys )
     {
-        if ( kafkaEvent != null )
+        if ( eventBatcher != null )
         {
             logger.trace( "Dispatch pre-delete event for: {}", asList( storeKeys ) );
 
-            final StorePreDeleteEvent event = new StorePreDeleteEvent( eventMetadata, stream( storeKeys ).map(
-                    StoreKey::toEventStoreKey ).collect( Collectors.toSet() ) );
-
-            kafkaEvent.fireEvent( event );
+            eventBatcher.deleting( eventMetadata, storeKeys );
         }
     }
 
     @Override
     public void deleted( final EventMetadata eventMetadata, final StoreKey... storeKeys )
     {
-        if ( kafkaEvent != null )
+        if ( eventBatcher != null )
         {
-            final List<StoreKey> storeList = asList( storeKeys );
-
-            logger.trace( "Dispatch post-delete event for: {}", storeList );
-
-            final StorePostDeleteEvent event = new StorePostDeleteEvent( eventMetadata, stream( storeKeys ).map(
-                    StoreKey::toEventStoreKey ).collect( Collectors.toSet() ) );
+            logger.trace( "Dispatch post-delete event for: {}", asList( storeKeys ) );
 
-            kafkaEvent.fireEvent( event );
-        }
-        if ( auditManager != null )
-        {
-            executor.execute( () -> {
-                for ( StoreKey storeKey : storeKeys )
-                {
-                    auditManager.recordLog( storeKey, AuditOps.OPS_DEL, null );
-                }
-            } );
+            eventBatcher.deleted( eventMetadata, storeKeys );
         }
+        recordLogs( AuditOps.OPS_DEL, storeKeys );
     }
 
     @Override
     public void updating( final StoreUpdateType type, final EventMetadata eventMetadata,
                           final Map<ArtifactStore, ArtifactStore> changeMap )
     {
-        final Map<EventStoreKey, Map<String, List<Object>>> newChangeMap = new HashMap<>( changeMap.size() );
-        for ( Map.Entry<ArtifactStore, ArtifactStore> e : changeMap.entrySet() )
-        {
-            newChangeMap.put( e.getKey().getKey().toEventStoreKey(),
-                              StoreDiffer.instance().diffArtifactStores( e.getKey(), e.getValue() ) );
-        }
-        final StorePreUpdateEvent event = new StorePreUpdateEvent( type, eventMetadata, newChangeMap );
-        kafkaEvent.fireEvent( event );
+        eventBatcher.updating( type, eventMetadata, changeMap );
     }
 
     @Override
     public void updated( final StoreUpdateType type, final EventMetadata eventMetadata,
                          final Map<ArtifactStore, ArtifactStore> changeMap )
     {
-        final Map<EventStoreKey, Map<String, List<Object>>> newChangeMap = new HashMap<>( changeMap.size() );
-        for ( Map.Entry<ArtifactStore, ArtifactStore> e : changeMap.entrySet() )
-        {
-            newChangeMap.put( e.getKey().getKey().toEventStoreKey(),
-                              StoreDiffer.instance().diffArtifactStores( e.getKey(), e.getValue() ) );
-        }
-        executor.execute( () -> {
-            final StorePostUpdateEvent event = new StorePostUpdateEvent( type, eventMetadata, newChangeMap );
-            kafkaEvent.fireEvent( event );
-        } );
+        eventBatcher.updated( type, eventMetadata, changeMap );
 
         if ( auditManager != null )
         {
-            executor.execute( () -> {
-                for ( Map.Entry<ArtifactStore, ArtifactStore> entry : changeMap.entrySet() )
+            for ( Map.Entry<ArtifactStore, ArtifactStore> entry : changeMap.entrySet() )
+            {
+                ArtifactStore changed = entry.getKey();
+                if ( type == StoreUpdateType.ADD )
                 {
-                    ArtifactStore changed = entry.getKey();
-                    if ( type == StoreUpdateType.ADD )
-                    {
-                        auditManager.recordLog( changed.getKey(), AuditOps.OPS_ADD, null );
-                    }
-                    else if ( changed.getType() == group )
+                    dispatcher.dispatch( changed.getKey(),
+                                         () -> auditManager.recordLog( changed.getKey(), AuditOps.OPS_ADD, null ) );
+                }
+                else if ( changed.getType() == group )
+                {
+                    Set<StoreKey> changedCons = new HashSet<>( ( (Group) changed ).getConstituents() );
+                    Set<StoreKey> originalCons = new HashSet<>( ( (Group) entry.getValue() ).getConstituents() );
+                    if ( !changedCons.equals( originalCons ) )
                     {
-
-                        Set<StoreKey> changedCons = new HashSet<>( ( (Group) changed ).getConstituents() );
-                        Set<StoreKey> originalCons = new HashSet<>( ( (Group) entry.getValue() ).getConstituents() );
-                        if ( !changedCons.equals( originalCons ) )
-                        {
-                            final StoreKey gKey = changed.getKey();
-                            final String changedContent =
-                                    String.format( "Constituents in %s change from %s to %s",
-                                                   changed.getKey().toString(), originalCons, changedCons );
-                            auditManager.recordLog( gKey, AuditOps.OPS_UPDATE, changedContent );
-                        }
+                        final StoreKey gKey = changed.getKey();
+                        final String changedContent =
+                                String.format( "Constituents in %s change from %s to %s",
+                                               changed.getKey().toString(), originalCons, changedCons );
+                        dispatcher.dispatch( gKey,
+                                             () -> auditManager.recordLog( gKey, AuditOps.OPS_UPDATE,
+                                                                           changedContent ) );
                     }
                 }
-            } );
-        }
-    }
-
-    private Map<EventStoreKey, EventStoreKey> toEventChangeMap( final Map<StoreKey, StoreKey> changeMap )
-    {
-        final Map<EventStoreKey, EventStoreKey> eventChangeMap = new HashMap<>( changeMap.size() );
-        changeMap.forEach( ( key, value ) -> {
-            if ( value != null )
-            {
-                eventChangeMap.put( key.toEventStoreKey(), value.toEventStoreKey() );
             }
-            else
-            {
-                eventChangeMap.put( key.toEventStoreKey(), null );
-            }
-        } );
-        return eventChangeMap;
+        }
     }
 
     @Override
@@ -204,16 +172,8 @@ public class DefaultStoreEventDispatcher
     {
         logger.trace( "Dispatch post-enable event for: {}", asList( storeKeys ) );
 
-        executor.execute( () -> fireEnablement( false, eventMetadata, false, storeKeys ) );
-        if ( auditManager != null )
-        {
-            executor.execute( () -> {
-                for ( StoreKey storeKey : storeKeys )
-                {
-                    auditManager.recordLog( storeKey, AuditOps.OPS_ENABLE, null );
-                }
-            } );
-        }
+        fireEnablement( false, eventMetadata, false, storeKeys );
+        recordLogs( AuditOps.OPS_ENABLE, storeKeys );
     }
 
     @Override
@@ -225,36 +185,26 @@ public class DefaultStoreEventDispatcher
     @Override
     public void disabled( EventMetadata eventMetadata, StoreKey... storeKeys )
     {
-        executor.execute( () -> fireEnablement( false, eventMetadata, true, storeKeys ) );
-        if ( auditManager != null )
-        {
-            executor.execute( () -> {
-                for ( StoreKey storeKey : storeKeys )
-                {
-                    auditManager.recordLog( storeKey, AuditOps.OPS_DISABLE, null );
-                }
-            } );
-        }
+        fireEnablement( false, eventMetadata, true, storeKeys );
+        recordLogs( AuditOps.OPS_DISABLE, storeKeys );
     }
 
     private void fireEnablement( boolean preprocess, EventMetadata eventMetadata, boolean disabling,
                                  StoreKey... stores )
     {
-        if ( kafkaEvent != null )
+        if ( eventBatcher != null )
         {
-            final List<EventStoreKey> eventStoreKeys =
-                    stream( stores ).map( StoreKey::toEventStoreKey ).collect( Collectors.toList() );
-            final EventStoreKey[] eventStoreKeyArrs = eventStoreKeys.toArray( new EventStoreKey[] {} );
-            final StoreEnablementEvent event =
-                    new StoreEnablementEvent( eventMetadata, preprocess, disabling, eventStoreKeyArrs );
+            eventBatcher.enablement( preprocess, disabling, eventMetadata, stores );
+        }
+    }
 
-            if ( preprocess )
-            {
-                kafkaEvent.fireEvent( event );
-            }
-            else
+    private void recordLogs( final String ops, final StoreKey... storeKeys )
+    {
+        if ( auditManager != null )
+        {
+            for ( StoreKey storeKey : storeKeys )
             {
-                executor.execute( () -> kafkaEvent.fireEvent( event ) );
+                dispatcher.dispatch( storeKey, () -> auditManager.recordLog( storeKey, ops, null ) );
             }
         }
     }
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change.event.kafka;
+
+/**
+ * Snapshot of the statistics of the {@link StoreEventBatcher}: events fired by the data managers, and coalesced
+ * events sent to Kafka.
+ */
+public class EventPublishStats
+{
+    private final long received;
+
+    private final long coalesced;
+
+    private final long published;
+
+    private final long publishedStores;
+
+    private final long maxBatchStores;
+
+    private final int pendingStores;
+
+    private final long discarded;
+
+    public EventPublishStats( final long received, final long coalesced, final long published,
+                              final long publishedStores, final long maxBatchStores, final int pendingStores,
+                              final long discarded )
+    {
+        this.received = received;
+        this.coalesced = coalesced;
+        this.published = published;
+        this.publishedStores = publishedStores;
+        this.maxBatchStores = maxBatchStores;
+        this.pendingStores = pendingStores;
+        this.discarded = discarded;
+    }
+
+    /**
+     * Events fired by the data managers.
+     */
+    public long getReceived()
+    {
+        return received;
+    }
+
+    /**
+     * Store changes merged into a change of the same store already waiting.
+     */
+    public long getCoalesced()
+    {
+        return coalesced;
+    }
+
+    /**
+     * Events sent to Kafka.
+     */
+    public long getPublished()
+    {
+        return published;
+    }
+
+    public long getPublishedStores()
+    {
+        return publishedStores;
+    }
+
+    public long getAvgBatchStores()
+    {
+        return published == 0 ? 0 : publishedStores / published;
+    }
+
+    public long getMaxBatchStores()
+    {
+        return maxBatchStores;
+    }
+
+    public int getPendingStores()
+    {
+        return pendingStores;
+    }
+
+    /**
+     * Events dropped by the overflow policy as too many stores were waiting.
+     */
+    public long getDiscarded()
+    {
+        return discarded;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "EventPublishStats{" + "received=" + received + ", coalesced=" + coalesced + ", published="
+                + published + ", publishedStores=" + publishedStores + ", maxBatchStores=" + maxBatchStores
+                + ", pendingStores=" + pendingStores + ", discarded=" + discarded + '}';
+    }
+}
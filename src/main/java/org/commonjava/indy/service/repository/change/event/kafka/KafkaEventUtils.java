@@ -35,6 +35,11 @@ public class KafkaEventUtils
 
     public static final String CHANNEL_INTERNAL = "internal-store-stream";
 
+    /**
+     * Store events of all the nodes read back from the store-event topic, used to keep the local state in sync.
+     */
+    public static final String CHANNEL_STORE_SYNC = "store-event-sync";
+
     private final Logger logger = LoggerFactory.getLogger( KafkaEventUtils.class );
 
     @Channel( CHANNEL_STORE )
@@ -0,0 +1,683 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change.event.kafka;
+
+import org.commonjava.event.common.EventMetadata;
+import org.commonjava.event.store.EventStoreKey;
+import org.commonjava.event.store.IndyStoreEvent;
+import org.commonjava.event.store.StoreEnablementEvent;
+import org.commonjava.event.store.StorePostDeleteEvent;
+import org.commonjava.event.store.StorePostUpdateEvent;
+import org.commonjava.event.store.StorePreDeleteEvent;
+import org.commonjava.event.store.StorePreUpdateEvent;
+import org.commonjava.event.store.StoreUpdateType;
+import org.commonjava.indy.service.repository.concurrent.KeyedDispatcher;
+import org.commonjava.indy.service.repository.config.IndyRepositoryConfiguration;
+import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.StoreDiffer;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Sends the store events through {@link KafkaEventUtils} on lanes chosen by store key, each lane sending the events
+ * of its stores in the order they were fired from a single thread. An event of stores on several lanes is split into
+ * one event per lane. The stores are copied when the events are added, and the diffs computed on the lanes, not on the
+ * thread holding the store lock.
+ * <p>
+ * The post-events fired within a short window are coalesced into one event per kind, listing all the stores. Several
+ * updates of one store within the window become a single change from the first original to the last definition. Only
+ * the events with equal metadata are merged, so an event never carries the change summary or origin of another
+ * caller. Pre-events are sent as they are, as soon as the lane gets to them. A pre-update leaves a waiting post-update
+ * of its stores in place, so the post-update following it is merged into the waiting one: sequential updates of a
+ * store send a pre-update each and a single post-update. Any other waiting event of the stores is sent before the
+ * pre-event, and an event for a store waiting in an event of another kind is sent after it.
+ * <p>
+ * The stores waiting on a lane are bounded by its share of event.batch.maxPendingStores, beyond which
+ * event.dispatch.overflow applies as for the other store event dispatching.
+ */
+@ApplicationScoped
+public class StoreEventBatcher
+{
+    private enum Kind
+    {
+        PRE_UPDATE( true ), POST_UPDATE( false ), PRE_DELETE( true ), POST_DELETE( false ), PRE_ENABLEMENT(
+                true ), POST_ENABLEMENT( false );
+
+        private final boolean pre;
+
+        Kind( final boolean pre )
+        {
+            this.pre = pre;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    KafkaEventUtils kafkaEvent;
+
+    @Inject
+    IndyRepositoryConfiguration repoConfig;
+
+    private Lane[] lanes;
+
+    private long windowMillis;
+
+    private int maxStores;
+
+    private int maxLaneStores;
+
+    private KeyedDispatcher.OverflowPolicy overflowPolicy;
+
+    private long blockTimeoutMillis;
+
+    private final LongAdder received = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder publishedStores = new LongAdder();
+
+    private final LongAdder discarded = new LongAdder();
+
+    private final AtomicLong maxBatchStores = new AtomicLong();
+
+    @PostConstruct
+    public void init()
+    {
+        init( repoConfig.eventDispatchLanes(), repoConfig.eventBatchWindowMillis(), repoConfig.eventBatchMaxStores(),
+              repoConfig.eventBatchMaxPendingStores(), repoConfig.eventDispatchOverflow(),
+              repoConfig.eventDispatchBlockTimeoutMillis() );
+    }
+
+    void init( final int lanes, final long windowMillis, final int maxStores, final int maxPendingStores,
+               final KeyedDispatcher.OverflowPolicy overflowPolicy, final long blockTimeoutMillis )
+    {
+        this.lanes = new Lane[Math.max( 1, lanes )];
+        this.windowMillis = windowMillis;
+        this.maxStores = maxStores;
+        this.maxLaneStores = Math.max( 1, maxPendingStores / this.lanes.length );
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        for ( int i = 0; i < this.lanes.length; i++ )
+        {
+            this.lanes[i] = new Lane( i );
+        }
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        // the events added from now on are sent by their callers
+        for ( Lane lane : lanes )
+        {
+            lane.publisher.shutdown();
+        }
+        flush();
+
+        final long deadline =
+                System.nanoTime() + TimeUnit.SECONDS.toNanos( repoConfig.eventDispatchDrainTimeoutSeconds() );
+        try
+        {
+            for ( Lane lane : lanes )
+            {
+                if ( !lane.publisher.awaitTermination( deadline - System.nanoTime(), TimeUnit.NANOSECONDS ) )
+                {
+                    logger.warn( "Store events not all published before shutdown" );
+                    return;
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void updating( final StoreUpdateType type, final EventMetadata eventMetadata,
+                          final Map<ArtifactStore, ArtifactStore> changeMap )
+    {
+        add( new BatchKey( Kind.PRE_UPDATE, type, false, eventMetadata ),
+             new BatchKey( Kind.POST_UPDATE, type, false, eventMetadata ), eventMetadata, copyChanges( changeMap ) );
+    }
+
+    public void updated( final StoreUpdateType type, final EventMetadata eventMetadata,
+                         final Map<ArtifactStore, ArtifactStore> changeMap )
+    {
+        add( new BatchKey( Kind.POST_UPDATE, type, false, eventMetadata ), null, eventMetadata,
+             copyChanges( changeMap ) );
+    }
+
+    public void deleting( final EventMetadata eventMetadata, final StoreKey... storeKeys )
+    {
+        add( new BatchKey( Kind.PRE_DELETE, null, false, eventMetadata ), null, eventMetadata,
+             keyChanges( storeKeys ) );
+    }
+
+    public void deleted( final EventMetadata eventMetadata, final StoreKey... storeKeys )
+    {
+        add( new BatchKey( Kind.POST_DELETE, null, false, eventMetadata ), null, eventMetadata,
+             keyChanges( storeKeys ) );
+    }
+
+    public void enablement( final boolean preprocess, final boolean disabling, final EventMetadata eventMetadata,
+                            final StoreKey... storeKeys )
+    {
+        add( new BatchKey( preprocess ? Kind.PRE_ENABLEMENT : Kind.POST_ENABLEMENT, null, disabling, eventMetadata ),
+             null, eventMetadata, keyChanges( storeKeys ) );
+    }
+
+    /**
+     * Copy the stores, as the diffs are computed once the caller went on with them.
+     */
+    private static Map<StoreKey, ArtifactStore[]> copyChanges( final Map<ArtifactStore, ArtifactStore> changeMap )
+    {
+        final Map<StoreKey, ArtifactStore[]> changes = new LinkedHashMap<>();
+        changeMap.forEach( ( changed, original ) -> changes.put( changed.getKey(), new ArtifactStore[] {
+                changed.copyOf(), original == null ? null : original.copyOf() } ) );
+        return changes;
+    }
+
+    private static Map<StoreKey, ArtifactStore[]> keyChanges( final StoreKey... storeKeys )
+    {
+        final Map<StoreKey, ArtifactStore[]> changes = new LinkedHashMap<>();
+        for ( StoreKey key : storeKeys )
+        {
+            changes.put( key, null );
+        }
+        return changes;
+    }
+
+    /**
+     * Add the event to the lanes of its stores.
+     *
+     * @param mergedInto the post-event the waiting post-event of the stores is kept in for, if any
+     */
+    private void add( final BatchKey batchKey, final BatchKey mergedInto, final EventMetadata eventMetadata,
+                      final Map<StoreKey, ArtifactStore[]> changes )
+    {
+        received.increment();
+        if ( lanes.length == 1 )
+        {
+            lanes[0].add( batchKey, mergedInto, eventMetadata, changes );
+            return;
+        }
+
+        final Map<Lane, Map<StoreKey, ArtifactStore[]>> byLane = new LinkedHashMap<>();
+        changes.forEach( ( key, change ) -> byLane.computeIfAbsent( getLane( key ), l -> new LinkedHashMap<>() )
+                                                  .put( key, change ) );
+        byLane.forEach( ( lane, laneChanges ) -> lane.add( batchKey, mergedInto, eventMetadata, laneChanges ) );
+    }
+
+    private Lane getLane( final StoreKey key )
+    {
+        return lanes[Math.floorMod( key.hashCode(), lanes.length )];
+    }
+
+    /**
+     * Send all the waiting events from the calling thread.
+     */
+    void flush()
+    {
+        for ( Lane lane : lanes )
+        {
+            synchronized ( lane )
+            {
+                lane.seal();
+            }
+            lane.drain();
+        }
+    }
+
+    private void discard( final BatchKey batchKey, final Map<StoreKey, ArtifactStore[]> changes )
+    {
+        discarded.increment();
+        logger.warn( "Too many stores waiting in store events, discard the {} event of: {}", batchKey.kind,
+                     changes.keySet() );
+    }
+
+    private void publish( final List<Batch> batches )
+    {
+        for ( Batch batch : batches )
+        {
+            try
+            {
+                final IndyStoreEvent event = batch.toEvent();
+                logger.trace( "Publishing {} event of {} stores", batch.key.kind, batch.changes.size() );
+                kafkaEvent.fireEvent( event );
+                published.increment();
+                publishedStores.add( batch.changes.size() );
+                maxBatchStores.accumulateAndGet( batch.changes.size(), Math::max );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( String.format( "Failed to publish %s event of: %s", batch.key.kind,
+                                             batch.changes.keySet() ), e );
+            }
+        }
+    }
+
+    public EventPublishStats getStats()
+    {
+        int pendingStores = 0;
+        for ( Lane lane : lanes )
+        {
+            synchronized ( lane )
+            {
+                pendingStores += lane.readyStores + lane.pendingKeys.size();
+            }
+        }
+        return new EventPublishStats( received.sum(), coalesced.sum(), published.sum(), publishedStores.sum(),
+                                      maxBatchStores.get(), pendingStores, discarded.sum() );
+    }
+
+    /**
+     * The events of the stores of a lane, sent by its own publisher thread. The structures are guarded by the lane
+     * monitor.
+     */
+    private final class Lane
+    {
+        private final ScheduledExecutorService publisher;
+
+        /**
+         * Held while taking and sending the ready events, so they are sent in the order they were taken even when a
+         * caller sends them.
+         */
+        private final Object publishLock = new Object();
+
+        /**
+         * The events to send as they are, in order, ahead of the waiting ones.
+         */
+        private final List<Batch> ready = new ArrayList<>();
+
+        private int readyStores;
+
+        /**
+         * The post-events waiting for the end of the window to be sent, more events may be merged into them.
+         */
+        private final Map<BatchKey, Batch> pending = new LinkedHashMap<>();
+
+        private final Map<StoreKey, BatchKey> pendingKeys = new HashMap<>();
+
+        private boolean flushScheduled;
+
+        private boolean flushRequested;
+
+        private Lane( final int index )
+        {
+            publisher = Executors.newSingleThreadScheduledExecutor( r -> {
+                Thread t = new Thread( r, "store-event-batcher-" + index );
+                t.setDaemon( true );
+                return t;
+            } );
+        }
+
+        private void add( final BatchKey batchKey, final BatchKey mergedInto, final EventMetadata eventMetadata,
+                          final Map<StoreKey, ArtifactStore[]> changes )
+        {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( blockTimeoutMillis );
+            boolean added = false;
+            while ( !added )
+            {
+                synchronized ( this )
+                {
+                    if ( hasRoom( changes.keySet() ) )
+                    {
+                        if ( queue( batchKey, mergedInto, eventMetadata, changes ) )
+                        {
+                            return;
+                        }
+                        // the publisher is stopped, send the events from this thread
+                        seal();
+                        added = true;
+                    }
+                    else
+                    {
+                        seal();
+                        switch ( overflowPolicy )
+                        {
+                            case BLOCK:
+                                if ( requestFlush() && awaitRoom( deadline ) )
+                                {
+                                    continue;
+                                }
+                                if ( !publisher.isShutdown() )
+                                {
+                                    discard( batchKey, changes );
+                                    return;
+                                }
+                                break;
+                            case DISCARD:
+                                discard( batchKey, changes );
+                                return;
+                            default:
+                                break;
+                        }
+                    }
+                }
+                // make room, or send the event added while the publisher is stopped
+                drain();
+            }
+        }
+
+        /**
+         * Add the event to the ready or the waiting ones, must be called holding the monitor.
+         *
+         * @return false if the publisher is stopped
+         */
+        private boolean queue( final BatchKey batchKey, final BatchKey mergedInto, final EventMetadata eventMetadata,
+                               final Map<StoreKey, ArtifactStore[]> changes )
+        {
+            if ( batchKey.kind.pre )
+            {
+                if ( conflicts( mergedInto, changes.keySet() ) )
+                {
+                    seal();
+                }
+                final Batch batch = new Batch( batchKey, eventMetadata );
+                batch.add( changes );
+                ready.add( batch );
+                readyStores += batch.changes.size();
+                return requestFlush();
+            }
+
+            if ( conflicts( batchKey, changes.keySet() ) )
+            {
+                seal();
+            }
+            final Batch batch = pending.computeIfAbsent( batchKey, k -> new Batch( k, eventMetadata ) );
+            changes.keySet().forEach( k -> pendingKeys.put( k, batchKey ) );
+            coalesced.add( batch.add( changes ) );
+            if ( windowMillis <= 0 || batch.changes.size() >= maxStores )
+            {
+                seal();
+                return requestFlush();
+            }
+            if ( !flushScheduled )
+            {
+                try
+                {
+                    publisher.schedule( this::flushScheduled, windowMillis, TimeUnit.MILLISECONDS );
+                    flushScheduled = true;
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Whether some of the stores wait in an event other than the given one.
+         */
+        private boolean conflicts( final BatchKey batchKey, final Set<StoreKey> keys )
+        {
+            return keys.stream().anyMatch( k -> {
+                final BatchKey other = pendingKeys.get( k );
+                return other != null && !other.equals( batchKey );
+            } );
+        }
+
+        /**
+         * Whether the stores can be added to the lane, an event larger than the bound is taken alone.
+         */
+        private boolean hasRoom( final Set<StoreKey> keys )
+        {
+            final int queued = readyStores + pendingKeys.size();
+            return queued == 0 || queued + keys.size() <= maxLaneStores;
+        }
+
+        private boolean awaitRoom( final long deadline )
+        {
+            final long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 )
+            {
+                return false;
+            }
+            try
+            {
+                TimeUnit.NANOSECONDS.timedWait( this, remaining );
+                return true;
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Move the waiting events behind the ready ones, no more events are merged into them.
+         */
+        private void seal()
+        {
+            ready.addAll( pending.values() );
+            readyStores += pendingKeys.size();
+            pending.clear();
+            pendingKeys.clear();
+        }
+
+        /**
+         * Have the ready events sent now by the publisher, at most one request is queued.
+         *
+         * @return false if the publisher is stopped
+         */
+        private boolean requestFlush()
+        {
+            if ( !flushRequested )
+            {
+                try
+                {
+                    publisher.execute( this::flushRequested );
+                    flushRequested = true;
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void flushScheduled()
+        {
+            synchronized ( this )
+            {
+                flushScheduled = false;
+                seal();
+            }
+            drain();
+        }
+
+        private void flushRequested()
+        {
+            synchronized ( this )
+            {
+                flushRequested = false;
+            }
+            drain();
+        }
+
+        /**
+         * Send the ready events.
+         */
+        private void drain()
+        {
+            synchronized ( publishLock )
+            {
+                final List<Batch> batches;
+                synchronized ( this )
+                {
+                    batches = new ArrayList<>( ready );
+                    ready.clear();
+                    readyStores = 0;
+                    notifyAll();
+                }
+                publish( batches );
+            }
+        }
+    }
+
+    /**
+     * Identifies the events which can be merged. The metadata is compared by its entries, as {@link EventMetadata}
+     * has no equality of its own.
+     */
+    private static final class BatchKey
+    {
+        private final Kind kind;
+
+        private final StoreUpdateType updateType;
+
+        private final boolean disabling;
+
+        private final Map<Object, Object> metadata = new HashMap<>();
+
+        private BatchKey( final Kind kind, final StoreUpdateType updateType, final boolean disabling,
+                          final EventMetadata eventMetadata )
+        {
+            this.kind = kind;
+            this.updateType = updateType;
+            this.disabling = disabling;
+            if ( eventMetadata != null )
+            {
+                eventMetadata.forEach( e -> metadata.put( e.getKey(), e.getValue() ) );
+            }
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof BatchKey ) )
+            {
+                return false;
+            }
+            final BatchKey other = (BatchKey) o;
+            return kind == other.kind && updateType == other.updateType && disabling == other.disabling
+                    && metadata.equals( other.metadata );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( kind, updateType, disabling, metadata );
+        }
+    }
+
+    private static final class Batch
+    {
+        private final BatchKey key;
+
+        private final EventMetadata eventMetadata;
+
+        /**
+         * The stores of the event, mapped to their last definition and first original for the update events.
+         */
+        private final Map<StoreKey, ArtifactStore[]> changes = new LinkedHashMap<>();
+
+        private Batch( final BatchKey key, final EventMetadata eventMetadata )
+        {
+            this.key = key;
+            this.eventMetadata = eventMetadata;
+        }
+
+        /**
+         * @return the number of changes merged into a change of the same store already in the batch
+         */
+        private int add( final Map<StoreKey, ArtifactStore[]> added )
+        {
+            int merged = 0;
+            for ( Map.Entry<StoreKey, ArtifactStore[]> entry : added.entrySet() )
+            {
+                if ( !changes.containsKey( entry.getKey() ) )
+                {
+                    changes.put( entry.getKey(), entry.getValue() );
+                }
+                else
+                {
+                    // keep the first original, so the diff covers all the merged updates
+                    merged++;
+                    if ( entry.getValue() != null )
+                    {
+                        changes.get( entry.getKey() )[0] = entry.getValue()[0];
+                    }
+                }
+            }
+            return merged;
+        }
+
+        private IndyStoreEvent toEvent()
+        {
+            switch ( key.kind )
+            {
+                case PRE_UPDATE:
+                    return new StorePreUpdateEvent( key.updateType, eventMetadata, diffs() );
+                case POST_UPDATE:
+                    return new StorePostUpdateEvent( key.updateType, eventMetadata, diffs() );
+                case PRE_DELETE:
+                    return new StorePreDeleteEvent( eventMetadata, eventKeys() );
+                case POST_DELETE:
+                    return new StorePostDeleteEvent( eventMetadata, eventKeys() );
+                default:
+                    return new StoreEnablementEvent( eventMetadata, key.kind == Kind.PRE_ENABLEMENT,
+                                                     key.disabling, eventKeys().toArray( new EventStoreKey[0] ) );
+            }
+        }
+
+        private Map<EventStoreKey, Map<String, List<Object>>> diffs()
+        {
+            final Map<EventStoreKey, Map<String, List<Object>>> diffs = new HashMap<>( changes.size() );
+            changes.forEach( ( key, change ) -> diffs.put( key.toEventStoreKey(),
+                                                           StoreDiffer.instance()
+                                                                      .diffArtifactStores( change[0], change[1] ) ) );
+            return diffs;
+        }
+
+        private Set<EventStoreKey> eventKeys()
+        {
+            return changes.keySet()
+                          .stream()
+                          .map( StoreKey::toEventStoreKey )
+                          .collect( Collectors.toCollection( LinkedHashSet::new ) );
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.concurrent;
+
+/**
+ * Snapshot of the statistics of a {@link KeyedDispatcher}. Queue times are measured from the submission of a task to
+ * the start of its run, and include the tasks run by the submitting thread.
+ */
+public class DispatchStats
+{
+    private final int lanes;
+
+    private final int queued;
+
+    private final int maxLaneQueued;
+
+    private final int active;
+
+    private final long submitted;
+
+    private final long completed;
+
+    private final long failed;
+
+    private final long discarded;
+
+    private final long callerRuns;
+
+    private final long avgQueueMillis;
+
+    private final long maxQueueMillis;
+
+    public DispatchStats( final int lanes, final int queued, final int maxLaneQueued, final int active,
+                          final long submitted, final long completed, final long failed, final long discarded,
+                          final long callerRuns, final long avgQueueMillis, final long maxQueueMillis )
+    {
+        this.lanes = lanes;
+        this.queued = queued;
+        this.maxLaneQueued = maxLaneQueued;
+        this.active = active;
+        this.submitted = submitted;
+        this.completed = completed;
+        this.failed = failed;
+        this.discarded = discarded;
+        this.callerRuns = callerRuns;
+        this.avgQueueMillis = avgQueueMillis;
+        this.maxQueueMillis = maxQueueMillis;
+    }
+
+    public int getLanes()
+    {
+        return lanes;
+    }
+
+    /**
+     * Tasks currently waiting in all the lanes.
+     */
+    public int getQueued()
+    {
+        return queued;
+    }
+
+    /**
+     * Tasks currently waiting in the most loaded lane.
+     */
+    public int getMaxLaneQueued()
+    {
+        return maxLaneQueued;
+    }
+
+    public int getActive()
+    {
+        return active;
+    }
+
+    public long getSubmitted()
+    {
+        return submitted;
+    }
+
+    public long getCompleted()
+    {
+        return completed;
+    }
+
+    public long getFailed()
+    {
+        return failed;
+    }
+
+    public long getDiscarded()
+    {
+        return discarded;
+    }
+
+    public long getCallerRuns()
+    {
+        return callerRuns;
+    }
+
+    public long getAvgQueueMillis()
+    {
+        return avgQueueMillis;
+    }
+
+    public long getMaxQueueMillis()
+    {
+        return maxQueueMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DispatchStats{" + "lanes=" + lanes + ", queued=" + queued + ", maxLaneQueued=" + maxLaneQueued
+                + ", active=" + active + ", submitted=" + submitted + ", completed=" + completed + ", failed="
+                + failed + ", discarded=" + discarded + ", callerRuns=" + callerRuns + ", avgQueueMillis="
+                + avgQueueMillis + ", maxQueueMillis=" + maxQueueMillis + '}';
+    }
+}
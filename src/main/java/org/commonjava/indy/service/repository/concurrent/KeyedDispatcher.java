@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs tasks asynchronously on a fixed number of single-threaded lanes with bounded queues. The lane of a task is
+ * chosen from the hash of its key, so the tasks of one key run one after the other in submission order. When the queue
+ * of a lane is full, the {@link OverflowPolicy} decides what happens to the task.
+ */
+public class KeyedDispatcher<K>
+{
+    public enum OverflowPolicy
+    {
+        /**
+         * Wait for room in the queue, slowing down the submitter, and discard the task if the wait times out.
+         */
+        BLOCK,
+        /**
+         * Run the task on the submitting thread. It may then run before tasks of the same key which are still queued.
+         */
+        CALLER_RUNS,
+        /**
+         * Discard the task.
+         */
+        DISCARD
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final String name;
+
+    private final ThreadPoolExecutor[] lanes;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long blockTimeoutMillis;
+
+    private final LongAdder submitted = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder discarded = new LongAdder();
+
+    private final LongAdder callerRuns = new LongAdder();
+
+    private final LongAdder queueNanos = new LongAdder();
+
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    public KeyedDispatcher( final String name, final int lanes, final int queueSize,
+                            final OverflowPolicy overflowPolicy, final long blockTimeoutMillis )
+    {
+        this.name = name;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.lanes = new ThreadPoolExecutor[Math.max( 1, lanes )];
+        for ( int i = 0; i < this.lanes.length; i++ )
+        {
+            final String threadName = name + "-" + i;
+            this.lanes[i] = new ThreadPoolExecutor( 1, 1, 0, TimeUnit.MILLISECONDS,
+                                                    new ArrayBlockingQueue<>( Math.max( 1, queueSize ) ), r -> {
+                Thread t = new Thread( r, threadName );
+                t.setDaemon( true );
+                return t;
+            } );
+        }
+    }
+
+    /**
+     * Run the task on the lane of the key.
+     *
+     * @return false if the task was discarded
+     */
+    public boolean dispatch( final K key, final Runnable task )
+    {
+        submitted.increment();
+        final ThreadPoolExecutor lane = lanes[key == null ? 0 : Math.floorMod( key.hashCode(), lanes.length )];
+        final Runnable timed = timed( key, task, System.nanoTime() );
+        if ( lane.isShutdown() )
+        {
+            // late events of a stopping application are still delivered
+            callerRuns.increment();
+            timed.run();
+            return true;
+        }
+
+        try
+        {
+            lane.execute( timed );
+            return true;
+        }
+        catch ( RejectedExecutionException e )
+        {
+            return overflow( lane, key, timed );
+        }
+    }
+
+    private boolean overflow( final ThreadPoolExecutor lane, final K key, final Runnable timed )
+    {
+        switch ( overflowPolicy )
+        {
+            case CALLER_RUNS:
+                callerRuns.increment();
+                timed.run();
+                return true;
+            case BLOCK:
+                try
+                {
+                    if ( lane.getQueue().offer( timed, blockTimeoutMillis, TimeUnit.MILLISECONDS ) )
+                    {
+                        return true;
+                    }
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            default:
+                break;
+        }
+
+        discarded.increment();
+        logger.warn( "{} queue is full, discard the task of: {}", name, key );
+        return false;
+    }
+
+    private Runnable timed( final K key, final Runnable task, final long queuedAt )
+    {
+        return () -> {
+            final long waited = System.nanoTime() - queuedAt;
+            queueNanos.add( waited );
+            maxQueueNanos.accumulateAndGet( waited, Math::max );
+            try
+            {
+                task.run();
+                completed.increment();
+            }
+            catch ( RuntimeException e )
+            {
+                failed.increment();
+                logger.error( String.format( "%s task of: %s failed", name, key ), e );
+            }
+        };
+    }
+
+    /**
+     * Stop accepting tasks and wait for the queued ones to run.
+     *
+     * @return false if some tasks were still queued or running after the timeout
+     */
+    public boolean shutdown( final long timeout, final TimeUnit unit )
+    {
+        for ( ThreadPoolExecutor lane : lanes )
+        {
+            lane.shutdown();
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos( timeout );
+        try
+        {
+            for ( ThreadPoolExecutor lane : lanes )
+            {
+                if ( !lane.awaitTermination( deadline - System.nanoTime(), TimeUnit.NANOSECONDS ) )
+                {
+                    logger.warn( "{} not drained after {} {}, {} tasks left", name, timeout, unit,
+                                 getStats().getQueued() );
+                    return false;
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    public DispatchStats getStats()
+    {
+        int queued = 0;
+        int maxLaneQueued = 0;
+        int active = 0;
+        for ( ThreadPoolExecutor lane : lanes )
+        {
+            final int size = lane.getQueue().size();
+            queued += size;
+            maxLaneQueued = Math.max( maxLaneQueued, size );
+            active += lane.getActiveCount();
+        }
+
+        final long done = completed.sum() + failed.sum();
+        return new DispatchStats( lanes.length, queued, maxLaneQueued, active, submitted.sum(), completed.sum(),
+                                  failed.sum(), discarded.sum(), callerRuns.sum(),
+                                  done == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis( queueNanos.sum() / done ),
+                                  TimeUnit.NANOSECONDS.toMillis( maxQueueNanos.get() ) );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "KeyedDispatcher{" + "name='" + name + '\'' + ", lanes=" + lanes.length + ", overflowPolicy="
+                + overflowPolicy + '}';
+    }
+}
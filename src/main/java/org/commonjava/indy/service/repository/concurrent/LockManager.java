@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Per-key locks, held by reference-counted entries which are removed as soon as the last user of a key releases it,
+ * so the table only contains keys in use and needs no sweeping. The entries are only touched in the per-bin atomic
+ * operations of a {@link ConcurrentHashMap}, and waiting uses {@link ReentrantLock}, which does not pin virtual threads.
+ * <p>
+ * The manager keeps contention statistics, see {@link #getStats()}.
+ */
+public class LockManager<K>
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ConcurrentHashMap<K, Entry> locks = new ConcurrentHashMap<>();
+
+    private final LongAdder acquisitions = new LongAdder();
+
+    private final LongAdder contentions = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final AtomicInteger holders = new AtomicInteger();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    private static final class Entry
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // only read and written in the atomic operations of the map on the key
+        private int references;
+    }
+
+    /**
+     * Run the function holding the lock of the key, waiting for the lock up to the timeout. If the lock can't be
+     * acquired in time, the lockFailedFunction decides whether to wait again (true) or give up and return null.
+     */
+    public <T> T lockAnd( final K key, final long timeoutSeconds, final Function<K, T> function,
+                          final Function<K, Boolean> lockFailedFunction )
+    {
+        return lockAllAnd( Collections.singletonList( key ), null, timeoutSeconds,
+                           keys -> function.apply( key ), lockFailedFunction );
+    }
+
+    /**
+     * Run the function holding the locks of all the keys, see {@link #lockAnd}. The locks are taken in the given
+     * order (the iteration order of the keys if null), so callers locking overlapping keys in the same order can't
+     * deadlock. Each lock is waited for up to the timeout; if one can't be acquired in time, the ones already held are
+     * released before asking the lockFailedFunction whether to retry.
+     */
+    public <T> T lockAllAnd( final Collection<K> keys, final Comparator<? super K> order, final long timeoutSeconds,
+                             final Function<List<K>, T> function, final Function<K, Boolean> lockFailedFunction )
+    {
+        final Stream<K> distinct = keys.stream().distinct();
+        final List<K> sorted = ( order == null ? distinct : distinct.sorted( order ) ).collect( Collectors.toList() );
+        final List<Entry> entries = new ArrayList<>( sorted.size() );
+        sorted.forEach( key -> entries.add( locks.compute( key, ( k, e ) -> {
+            Entry result = e == null ? new Entry() : e;
+            result.references++;
+            return result;
+        } ) ) );
+
+        final Deque<ReentrantLock> held = new ArrayDeque<>();
+        try
+        {
+            boolean retry;
+            do
+            {
+                K failed = null;
+                for ( int i = 0; i < sorted.size() && failed == null; i++ )
+                {
+                    final ReentrantLock lock = entries.get( i ).lock;
+                    if ( tryLock( sorted.get( i ), lock, timeoutSeconds ) )
+                    {
+                        acquisitions.increment();
+                        holders.incrementAndGet();
+                        held.push( lock );
+                    }
+                    else
+                    {
+                        failed = sorted.get( i );
+                    }
+                }
+
+                if ( failed == null )
+                {
+                    return function.apply( sorted );
+                }
+
+                unlock( held );
+                timeouts.increment();
+                logger.warn( "Failed to lock: {} in {} seconds", failed, timeoutSeconds );
+                retry = Boolean.TRUE.equals( lockFailedFunction.apply( failed ) );
+                logger.debug( "Retry lock on: {}? {}", failed, retry );
+            }
+            while ( retry );
+        }
+        catch ( InterruptedException e )
+        {
+            logger.warn( "Interrupted waiting for lock on keys: {}", sorted );
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            unlock( held );
+            sorted.forEach( key -> locks.computeIfPresent( key, ( k, e ) -> --e.references == 0 ? null : e ) );
+        }
+
+        logger.debug( "No retries, return null for locked operation on keys: {}", sorted );
+        return null;
+    }
+
+    private void unlock( final Deque<ReentrantLock> held )
+    {
+        while ( !held.isEmpty() )
+        {
+            holders.decrementAndGet();
+            held.pop().unlock();
+        }
+    }
+
+    private boolean tryLock( final K key, final ReentrantLock lock, final long timeoutSeconds )
+            throws InterruptedException
+    {
+        if ( lock.tryLock() )
+        {
+            return true;
+        }
+
+        contentions.increment();
+        logger.debug( "Waiting for lock on: {} with timeout seconds: {}", key, timeoutSeconds );
+        final long start = System.nanoTime();
+        waiters.incrementAndGet();
+        try
+        {
+            return lock.tryLock( timeoutSeconds, TimeUnit.SECONDS );
+        }
+        finally
+        {
+            waiters.decrementAndGet();
+            final long waited = System.nanoTime() - start;
+            waitNanos.add( waited );
+            maxWaitNanos.accumulateAndGet( waited, Math::max );
+        }
+    }
+
+    public LockStats getStats()
+    {
+        return new LockStats( locks.size(), holders.get(), waiters.get(), acquisitions.sum(), contentions.sum(),
+                              timeouts.sum(), TimeUnit.NANOSECONDS.toMillis( waitNanos.sum() ),
+                              TimeUnit.NANOSECONDS.toMillis( maxWaitNanos.get() ) );
+    }
+}
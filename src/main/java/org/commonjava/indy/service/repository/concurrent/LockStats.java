@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.concurrent;
+
+/**
+ * Snapshot of the contention statistics of a {@link LockManager}. Wait times only count the acquisitions which had to
+ * wait for another holder.
+ */
+public class LockStats
+{
+    private final int keys;
+
+    private final int holders;
+
+    private final int waiters;
+
+    private final long acquisitions;
+
+    private final long contentions;
+
+    private final long timeouts;
+
+    private final long totalWaitMillis;
+
+    private final long maxWaitMillis;
+
+    public LockStats( final int keys, final int holders, final int waiters, final long acquisitions,
+                      final long contentions, final long timeouts, final long totalWaitMillis,
+                      final long maxWaitMillis )
+    {
+        this.keys = keys;
+        this.holders = holders;
+        this.waiters = waiters;
+        this.acquisitions = acquisitions;
+        this.contentions = contentions;
+        this.timeouts = timeouts;
+        this.totalWaitMillis = totalWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Keys currently locked or waited for.
+     */
+    public int getKeys()
+    {
+        return keys;
+    }
+
+    public int getHolders()
+    {
+        return holders;
+    }
+
+    public int getWaiters()
+    {
+        return waiters;
+    }
+
+    public long getAcquisitions()
+    {
+        return acquisitions;
+    }
+
+    public long getContentions()
+    {
+        return contentions;
+    }
+
+    public long getTimeouts()
+    {
+        return timeouts;
+    }
+
+    public long getTotalWaitMillis()
+    {
+        return totalWaitMillis;
+    }
+
+    public long getMaxWaitMillis()
+    {
+        return maxWaitMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LockStats{" + "keys=" + keys + ", holders=" + holders + ", waiters=" + waiters + ", acquisitions="
+                + acquisitions + ", contentions=" + contentions + ", timeouts=" + timeouts + ", totalWaitMillis="
+                + totalWaitMillis + ", maxWaitMillis=" + maxWaitMillis + '}';
+    }
+}
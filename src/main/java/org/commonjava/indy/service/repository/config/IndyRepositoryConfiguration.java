@@ -19,6 +19,8 @@ import io.quarkus.runtime.Startup;
 import io.smallrye.config.ConfigMapping;
 import io.smallrye.config.WithDefault;
 import io.smallrye.config.WithName;
+import org.commonjava.indy.service.repository.change.audit.AuditLogWriter;
+import org.commonjava.indy.service.repository.concurrent.KeyedDispatcher;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import java.util.List;
@@ -61,6 +63,90 @@ public interface IndyRepositoryConfiguration
     @WithDefault( "false" )
     Boolean repoAuditEnabled();
 
+    @WithName( "auditWriter.queueSize" )
+    @WithDefault( "10000" )
+    Integer auditWriterQueueSize();
+
+    @WithName( "auditWriter.batchSize" )
+    @WithDefault( "50" )
+    Integer auditWriterBatchSize();
+
+    @WithName( "auditWriter.maxInFlight" )
+    @WithDefault( "4" )
+    Integer auditWriterMaxInFlight();
+
+    @WithName( "auditWriter.overflow" )
+    @WithDefault( "LOG" )
+    AuditLogWriter.OverflowPolicy auditWriterOverflow();
+
+    @WithName( "auditWriter.drainTimeoutSeconds" )
+    @WithDefault( "30" )
+    Long auditWriterDrainTimeoutSeconds();
+
+    /**
+     * Days to keep the audit records, 0 to keep them forever.
+     */
+    @WithName( "auditRetentionDays" )
+    @WithDefault( "0" )
+    Integer auditRetentionDays();
+
     @WithName( "trace.skip-name-patterns" )
     Optional<List<String>> skipTracePatterns();
+
+    @WithName( "event.dispatch.lanes" )
+    @WithDefault( "8" )
+    Integer eventDispatchLanes();
+
+    @WithName( "event.dispatch.queueSize" )
+    @WithDefault( "1000" )
+    Integer eventDispatchQueueSize();
+
+    @WithName( "event.dispatch.overflow" )
+    @WithDefault( "BLOCK" )
+    KeyedDispatcher.OverflowPolicy eventDispatchOverflow();
+
+    @WithName( "event.dispatch.blockTimeoutMillis" )
+    @WithDefault( "5000" )
+    Long eventDispatchBlockTimeoutMillis();
+
+    @WithName( "event.dispatch.drainTimeoutSeconds" )
+    @WithDefault( "30" )
+    Long eventDispatchDrainTimeoutSeconds();
+
+    @WithName( "event.batch.windowMillis" )
+    @WithDefault( "50" )
+    Long eventBatchWindowMillis();
+
+    @WithName( "event.batch.maxStores" )
+    @WithDefault( "500" )
+    Integer eventBatchMaxStores();
+
+    /**
+     * Stores waiting in all the pending store events, beyond which event.dispatch.overflow applies.
+     */
+    @WithName( "event.batch.maxPendingStores" )
+    @WithDefault( "10000" )
+    Integer eventBatchMaxPendingStores();
+
+    /**
+     * Threads serializing the stores ahead of the repo bundle export, 0 to serialize them in the writer.
+     */
+    @WithName( "export.serializerThreads" )
+    @WithDefault( "0" )
+    Integer exportSerializerThreads();
+
+    /**
+     * Threads reading the store definitions of an imported repo bundle.
+     */
+    @WithName( "import.workerThreads" )
+    @WithDefault( "4" )
+    Integer importWorkerThreads();
+
+    /**
+     * Stores written together by the repo bundle import. Cassandra issues one conditional write per store
+     * concurrently, and a batch with a rejected write is reverted and retried store by store.
+     */
+    @WithName( "import.batchSize" )
+    @WithDefault( "100" )
+    Integer importBatchSize();
 }
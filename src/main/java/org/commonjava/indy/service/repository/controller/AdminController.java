@@ -40,6 +40,8 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static jakarta.ws.rs.core.Response.Status.FORBIDDEN;
 import static jakarta.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
@@ -94,8 +96,39 @@ public class AdminController
         }
         catch ( final IndyDataException e )
         {
-            throw new IndyWorkflowException( INTERNAL_SERVER_ERROR.getStatusCode(), "Failed to store: {}. Reason: {}",
-                                             e, store.getKey(), e.getMessage() );
+            int status = INTERNAL_SERVER_ERROR.getStatusCode();
+            if ( e.getStatus() > 0 )
+            {
+                status = e.getStatus();
+            }
+            throw new IndyWorkflowException( status, "Failed to store: {}. Reason: {}", e, store.getKey(),
+                                             e.getMessage() );
+        }
+    }
+
+    /**
+     * Store the given stores together: either all of them are stored, or none.
+     */
+    public void storeAll( final List<ArtifactStore> stores, final String user, final String changelog )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            final ChangeSummary summary =
+                    new ChangeSummary( user, changelog == null ? "Changelog not provided" : changelog );
+
+            logger.info( "Persisting {} artifact stores together using: {}", stores.size(), storeManager );
+            storeManager.storeArtifactStores( stores, summary, true, new EventMetadata() );
+        }
+        catch ( final IndyDataException e )
+        {
+            int status = INTERNAL_SERVER_ERROR.getStatusCode();
+            if ( e.getStatus() > 0 )
+            {
+                status = e.getStatus();
+            }
+            throw new IndyWorkflowException( status, "Failed to store {} stores together. Reason: {}", e,
+                                             stores.size(), e.getMessage() );
         }
     }
 
@@ -140,7 +173,10 @@ public class AdminController
     {
         try
         {
-            return new ArrayList<>( storeManager.getAllArtifactStores() );
+            try (Stream<ArtifactStore> stores = storeManager.streamArtifactStores())
+            {
+                return stores.collect( Collectors.toList() );
+            }
         }
         catch ( IndyDataException e )
         {
@@ -15,42 +15,58 @@
  */
 package org.commonjava.indy.service.repository.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipFile;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.io.IOUtils;
 import org.commonjava.event.common.EventMetadata;
 import org.commonjava.indy.service.repository.audit.ChangeSummary;
+import org.commonjava.indy.service.repository.config.IndyRepositoryConfiguration;
 import org.commonjava.indy.service.repository.data.StoreDataManager;
+import org.commonjava.indy.service.repository.data.cassandra.AffectedStoreMaintenance;
 import org.commonjava.indy.service.repository.exception.IndyDataException;
+import org.commonjava.indy.service.repository.exception.IndyWorkflowException;
 import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.Group;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.commonjava.indy.service.repository.model.dto.AffectedStoreJobDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Enumeration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import static jakarta.ws.rs.core.Response.Status.BAD_REQUEST;
+import static jakarta.ws.rs.core.Response.Status.CONFLICT;
 import static java.util.Map.of;
-import static org.apache.commons.io.IOUtils.toInputStream;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
 @ApplicationScoped
 public class MaintenanceController
@@ -59,121 +75,367 @@ public class MaintenanceController
 
     public static final String REPOS_DIR = "repos";
 
+    private static final int IMPORT_PROGRESS_INTERVAL = 1000;
+
     @Inject
     StoreDataManager storeDataManager;
 
     @Inject
     ObjectMapper serializer;
 
-    public File getRepoBundle()
+    @Inject
+    IndyRepositoryConfiguration repoConfig;
+
+    @Inject
+    AffectedStoreMaintenance affectedStoreMaintenance;
+
+    /**
+     * Write the zip of all repository definitions to the output as the stores are read, so the export holds neither
+     * the stores nor the zip. With export.serializerThreads, the definitions are serialized ahead of the writer, at
+     * most two per thread.
+     */
+    public void writeRepoBundle( final OutputStream out )
             throws IOException
     {
-        File out = createTempFile();
-        logger.info( "Writing repo bundle to: '{}'", out );
+        final ObjectWriter writer = serializer.writer().without( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+        final int threads = repoConfig.exportSerializerThreads();
+        final ExecutorService executor = threads > 0 ? Executors.newFixedThreadPool( threads, r -> {
+            Thread t = new Thread( r, "repo-bundle-serializer" );
+            t.setDaemon( true );
+            return t;
+        } ) : null;
 
-        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( out ) ))
+        final ZipOutputStream zip = new ZipOutputStream( out );
+        long count = 0;
+        try (Stream<ArtifactStore> stores = storeDataManager.streamArtifactStores())
         {
-            final Set<ArtifactStore> stores;
-            try
+            final Deque<Map.Entry<String, Future<byte[]>>> ahead = new ArrayDeque<>();
+            for ( Iterator<ArtifactStore> it = stores.iterator(); it.hasNext(); count++ )
             {
-                stores = storeDataManager.getAllArtifactStores();
+                final ArtifactStore store = it.next();
+                final String path = getBundlePath( store );
+                if ( executor == null )
+                {
+                    logger.debug( "Adding {} to repo zip", path );
+                    zip.putNextEntry( new ZipEntry( path ) );
+                    writer.writeValue( zip, store );
+                    zip.closeEntry();
+                    continue;
+                }
+
+                if ( ahead.size() >= threads * 2 )
+                {
+                    writeBundleEntry( zip, ahead.poll() );
+                }
+                ahead.add( new AbstractMap.SimpleEntry<>( path,
+                                                          executor.submit( () -> writer.writeValueAsBytes( store ) ) ) );
             }
-            catch ( IndyDataException e )
+
+            while ( !ahead.isEmpty() )
             {
-                logger.error( "Failed to get stores definition", e );
-                throw new IOException( e );
+                writeBundleEntry( zip, ahead.poll() );
             }
-
-            for ( ArtifactStore store : stores )
+            // the container closes the response output
+            zip.finish();
+        }
+        catch ( IndyDataException e )
+        {
+            logger.error( "Failed to get stores definition", e );
+            throw new IOException( e );
+        }
+        finally
+        {
+            if ( executor != null )
             {
-                String path = Paths.get( REPOS_DIR, store.getPackageType(), store.getType().singularEndpointName(),
-                                         store.getName() ).toString() + ".json";
-                logger.debug( "Adding {} to repo zip", path );
-                zip.putNextEntry( new ZipEntry( path ) );
-                String json = serializer.writeValueAsString( store );
-                IOUtils.copy( toInputStream( json, Charset.defaultCharset() ), zip );
+                executor.shutdownNow();
             }
         }
-        return out;
+        logger.info( "Wrote {} stores to repo bundle", count );
     }
 
+    private void writeBundleEntry( final ZipOutputStream zip, final Map.Entry<String, Future<byte[]>> entry )
+            throws IOException
+    {
+        final byte[] json;
+        try
+        {
+            json = entry.getValue().get();
+        }
+        catch ( ExecutionException e )
+        {
+            throw new IOException( "Failed to serialize " + entry.getKey(), e.getCause() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while writing " + entry.getKey() );
+        }
+
+        logger.debug( "Adding {} to repo zip", entry.getKey() );
+        zip.putNextEntry( new ZipEntry( entry.getKey() ) );
+        zip.write( json );
+        zip.closeEntry();
+    }
+
+    private static String getBundlePath( final ArtifactStore store )
+    {
+        return Paths.get( REPOS_DIR, store.getPackageType(), store.getType().singularEndpointName(), store.getName() )
+                    .toString() + ".json";
+    }
+
+    /**
+     * Import the repository definitions of a bundle as its entries arrive. The definitions are read by
+     * import.workerThreads workers, at most two per worker ahead of the writer, and the new stores are written
+     * import.batchSize at a time. The affected-by mapping of the imported groups is added once all of them are in.
+     */
     public Map<String, List<String>> importRepoBundle( final InputStream zipStream )
             throws IOException
     {
-        File tempRepoZip = createTempFile();
-        logger.info( "Saving repo file to {}", tempRepoZip.getPath() );
-        try (zipStream)
+        final int threads = Math.max( 1, repoConfig.importWorkerThreads() );
+        final ExecutorService workers = Executors.newFixedThreadPool( threads, r -> {
+            Thread t = new Thread( r, "repo-bundle-importer" );
+            t.setDaemon( true );
+            return t;
+        } );
+
+        final BundleImport bundleImport = new BundleImport( Math.max( 1, repoConfig.importBatchSize() ) );
+        logger.info( "Start importing repos definitions to data store." );
+        try (zipStream; ZipArchiveInputStream zip = new ZipArchiveInputStream( zipStream ))
         {
-            try (OutputStream out = new FileOutputStream( tempRepoZip ))
+            final Deque<Map.Entry<String, Future<ArtifactStore>>> ahead = new ArrayDeque<>();
+            for ( ZipArchiveEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry() )
             {
-                IOUtils.copy( zipStream, out );
+                if ( entry.isDirectory() )
+                {
+                    continue;
+                }
+
+                final byte[] json = IOUtils.toByteArray( zip );
+                if ( ahead.size() >= threads * 2 )
+                {
+                    bundleImport.add( ahead.poll() );
+                }
+                final Future<ArtifactStore> store = workers.submit( () -> readStore( json ) );
+                ahead.add( new AbstractMap.SimpleEntry<>( entry.getName(), store ) );
+            }
+
+            while ( !ahead.isEmpty() )
+            {
+                bundleImport.add( ahead.poll() );
             }
         }
+        finally
+        {
+            workers.shutdownNow();
+            // the stores read so far are kept when the bundle breaks, and the imported groups need their mapping
+            bundleImport.flush();
+            bundleImport.finish();
+        }
+
+        logger.info( "Repository importing process done. result as below:\n skipped: {}\n\n failed: {}\n\n",
+                     bundleImport.skipped, bundleImport.failed );
 
-        final List<String> skipped = new ArrayList<>();
-        final List<String> failed = new ArrayList<>();
-        final Map<String, String> payload = new HashMap<>();
+        return of( "skipped", bundleImport.skipped, "failed", bundleImport.failed );
+    }
 
-        try (ZipFile zipFile = ZipFile.builder().setFile( tempRepoZip ).get())
+    private ArtifactStore readStore( final byte[] json )
+            throws IOException, IndyDataException
+    {
+        final ArtifactStore store = serializer.readerFor( ArtifactStore.class )
+                                              .with( JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS )
+                                              .readValue( json );
+        if ( store == null || isBlank( store.getPackageType() ) || isBlank( store.getName() ) )
         {
-            Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
-            while ( entries.hasMoreElements() )
+            throw new IndyDataException( BAD_REQUEST.getStatusCode(), "Not a store definition" );
+        }
+        return store;
+    }
+
+    /**
+     * State of a running bundle import, only used by the thread reading the bundle.
+     */
+    private final class BundleImport
+    {
+        private final int batchSize;
+
+        private final Map<StoreKey, ArtifactStore> batch = new LinkedHashMap<>();
+
+        private final Map<StoreKey, String> batchEntries = new HashMap<>();
+
+        private final List<String> skipped = new ArrayList<>();
+
+        private final List<String> failed = new ArrayList<>();
+
+        private final List<Group> groups = new ArrayList<>();
+
+        private final long start = System.currentTimeMillis();
+
+        private long read;
+
+        private long imported;
+
+        private BundleImport( final int batchSize )
+        {
+            this.batchSize = batchSize;
+        }
+
+        private void add( final Map.Entry<String, Future<ArtifactStore>> entry )
+                throws IOException
+        {
+            final String name = entry.getKey();
+            read++;
+            try
+            {
+                final ArtifactStore store = entry.getValue().get();
+                if ( batch.containsKey( store.getKey() ) )
+                {
+                    skipped.add( name );
+                }
+                else
+                {
+                    batch.put( store.getKey(), store );
+                    batchEntries.put( store.getKey(), name );
+                }
+            }
+            catch ( ExecutionException e )
+            {
+                logger.warn( "Cannot persist store definition for {}, Reason: {} : {}", name,
+                             e.getCause().getClass().getName(), e.getCause().getMessage() );
+                failed.add( name );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted while importing " + name );
+            }
+
+            if ( batch.size() >= batchSize )
+            {
+                flush();
+            }
+            if ( read % IMPORT_PROGRESS_INTERVAL == 0 )
+            {
+                logger.info( "Repo bundle import: read {} definitions, imported {}, skipped {}, failed {}, {}/s", read,
+                             imported, skipped.size(), failed.size(), getRate() );
+            }
+        }
+
+        private void flush()
+        {
+            if ( batch.isEmpty() )
+            {
+                return;
+            }
+
+            try
+            {
+                stored( batch.keySet(), store( batch.values() ) );
+            }
+            catch ( IndyDataException | RuntimeException e )
             {
-                ZipArchiveEntry entry = entries.nextElement();
-                if ( !entry.isDirectory() )
+                logger.warn( "Cannot persist {} store definitions, storing them one by one. Reason: {}", batch.size(),
+                             e.getMessage() );
+                for ( ArtifactStore store : batch.values() )
                 {
-                    try (InputStream in = zipFile.getInputStream( entry ))
+                    final StoreKey key = store.getKey();
+                    try
                     {
-                        payload.put( entry.getName(), IOUtils.toString( in, Charset.defaultCharset() ) );
+                        stored( Collections.singleton( key ), store( Collections.singletonList( store ) ) );
+                    }
+                    catch ( IndyDataException | RuntimeException se )
+                    {
+                        logger.warn( "Cannot persist store definition for {}, Reason: {}", batchEntries.get( key ),
+                                     se.getMessage() );
+                        failed.add( batchEntries.get( key ) );
                     }
                 }
             }
+            batch.clear();
+            batchEntries.clear();
         }
-        finally
+
+        private Set<StoreKey> store( final Collection<ArtifactStore> stores )
+                throws IndyDataException
         {
-            FileUtils.deleteQuietly( tempRepoZip );
+            return storeDataManager.storeNewArtifactStores( stores, new ChangeSummary( ChangeSummary.SYSTEM_USER,
+                                                                                       "Import artifact store" ),
+                                                            false, new EventMetadata() );
         }
 
-        logger.info( "Repos definitions extraction from bundle finished.\n\n" );
-        logger.info( "Start importing repos definitions to data store." );
-        for ( Map.Entry<String, String> entry : payload.entrySet() )
+        /**
+         * Count the stores of the batch as imported, or skipped when they already existed.
+         */
+        private void stored( final Collection<StoreKey> keys, final Set<StoreKey> stored )
         {
-            try
+            for ( StoreKey key : keys )
             {
-                ArtifactStore store = serializer.readerFor( ArtifactStore.class )
-                                                .with( JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS )
-                                                .readValue( entry.getValue() );
-                if ( storeDataManager.hasArtifactStore( store.getKey() ) )
+                if ( stored.contains( key ) )
                 {
-                    skipped.add( entry.getKey() );
+                    imported++;
+                    final ArtifactStore store = batch.get( key );
+                    if ( store instanceof Group )
+                    {
+                        groups.add( (Group) store );
+                    }
                 }
                 else
                 {
-                    storeDataManager.storeArtifactStore( store, new ChangeSummary( ChangeSummary.SYSTEM_USER,
-                                                                                   "Import artifact store" ), true,
-                                                         false, new EventMetadata() );
+                    skipped.add( batchEntries.get( key ) );
                 }
             }
-            catch ( Exception e )
-            {
-                logger.warn( "Cannot persist store definition for {}, Reason: {} : {}", entry.getKey(),
-                             e.getClass().getName(), e.getMessage() );
-                failed.add( entry.getKey() );
-            }
         }
-        logger.info( "Repos definitions importing finished.\n\n" );
 
-        logger.info( "Repository importing process done. result as below:\n skipped: {}\n\n failed: {}\n\n", skipped,
-                     failed );
+        private void finish()
+        {
+            logger.info( "Repos definitions importing finished, {} definitions imported in {} ms, {}/s", imported,
+                         System.currentTimeMillis() - start, getRate() );
+
+            logger.info( "Adding the affected-by mapping of {} imported groups", groups.size() );
+            storeDataManager.initAffectedBy( groups );
+        }
+
+        private long getRate()
+        {
+            return read * 1000 / Math.max( 1, System.currentTimeMillis() - start );
+        }
+    }
+
+    public AffectedStoreJobDTO rebuildAffectedStores( final boolean restart )
+            throws IndyWorkflowException
+    {
+        checkAffectedStoreSupported();
+        if ( !affectedStoreMaintenance.startRebuild( restart ) )
+        {
+            throw new IndyWorkflowException( CONFLICT.getStatusCode(), "An affected_store job is already running" );
+        }
+        return affectedStoreMaintenance.getStatus();
+    }
 
-        return of( "skipped", skipped, "failed", failed );
+    public AffectedStoreJobDTO verifyAffectedStores( final boolean repair )
+            throws IndyWorkflowException
+    {
+        checkAffectedStoreSupported();
+        if ( !affectedStoreMaintenance.startVerify( repair ) )
+        {
+            throw new IndyWorkflowException( CONFLICT.getStatusCode(), "An affected_store job is already running" );
+        }
+        return affectedStoreMaintenance.getStatus();
     }
 
-    private File createTempFile()
-            throws IOException
+    public AffectedStoreJobDTO getAffectedStoreJobStatus()
+            throws IndyWorkflowException
     {
-        return File.createTempFile(
-                "indy-repos." + new SimpleDateFormat( "yyyy-MM-dd-hh-mm-ss.SSSZ" ).format( new Date() ), ".zip" );
+        checkAffectedStoreSupported();
+        return affectedStoreMaintenance.getStatus();
+    }
 
+    private void checkAffectedStoreSupported()
+            throws IndyWorkflowException
+    {
+        if ( !IndyRepositoryConfiguration.STORAGE_CASSANDRA.equals( repoConfig.storageType().orElse( "" ) ) )
+        {
+            throw new IndyWorkflowException( BAD_REQUEST.getStatusCode(),
+                                             "The affected_store index only exists with the cassandra storage" );
+        }
     }
 }
@@ -37,12 +37,16 @@ import jakarta.inject.Inject;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -82,25 +86,29 @@ public class QueryController
         }
         final List<StoreType> typeList = typesLs;
         return generateQueryResult( () -> {
-            Set<ArtifactStore> stores = Collections.emptySet();
+            Stream<ArtifactStore> storeStream = null;
             if ( isValidPackageType( packageType ) && typeList.size() == 1 )
             {
                 // when packageType and type are all unique value, use storeManager.getArtifactStoresByPkgAndType to improve performance
-                stores = storeManager.getArtifactStoresByPkgAndType( packageType, typeList.get( 0 ) );
+                Set<ArtifactStore> stores = storeManager.getArtifactStoresByPkgAndType( packageType, typeList.get( 0 ) );
+                if ( !stores.isEmpty() )
+                {
+                    storeStream = stores.stream();
+                }
             }
             else if ( !isValidPackageType( packageType ) && typeList.isEmpty() )
             {
-                stores = storeManager.getAllArtifactStores();
+                // stream the stores so that only the (filtered) result list is materialized
+                storeStream = storeManager.streamArtifactStores();
             }
-            if ( !stores.isEmpty() )
+            if ( storeStream != null )
             {
-                Stream<ArtifactStore> storeStream = stores.stream();
-                boolean isEnabled = Boolean.parseBoolean( enabled );
-                if ( isEnabled )
+                try (Stream<ArtifactStore> filtered = storeStream)
                 {
-                    storeStream = storeStream.filter( store -> !store.isDisabled() );
+                    boolean isEnabled = Boolean.parseBoolean( enabled );
+                    return filtered.filter( store -> !isEnabled || !store.isDisabled() )
+                                   .collect( Collectors.toList() );
                 }
-                return storeStream.collect( Collectors.toList() );
             }
             ArtifactStoreQuery<ArtifactStore> query = storeManager.query().noPackageType();
             if ( isValidPackageType( packageType ) )
@@ -253,9 +261,77 @@ public class QueryController
                 "Failed to get all groups for package type {}", packageType );
     }
 
+    public CompletionStage<List<RemoteRepository>> getAllRemoteRepositoriesAsync( final String packageType,
+                                                                                final String enabled )
+    {
+        final boolean isEnabled =
+                enabled == null || enabled.equalsIgnoreCase( "yes" ) || Boolean.parseBoolean( enabled );
+        return generateQueryResultAsync( () -> storeManager.query()
+                                                           .getAllRemoteRepositoriesAsync(
+                                                                   packageType == null ? MAVEN_PKG_KEY : packageType,
+                                                                   isEnabled ),
+                                         "Failed to get all remote repos for package type {}", packageType );
+    }
+
+    public CompletionStage<List<HostedRepository>> getAllHostedRepositoriesAsync( final String packageType,
+                                                                                final String enabled )
+    {
+        final boolean isEnabled =
+                enabled == null || enabled.equalsIgnoreCase( "yes" ) || Boolean.parseBoolean( enabled );
+        return generateQueryResultAsync( () -> storeManager.query()
+                                                           .getAllHostedRepositoriesAsync(
+                                                                   packageType == null ? MAVEN_PKG_KEY : packageType,
+                                                                   isEnabled ),
+                                         "Failed to get all hosted repos for package type {}", packageType );
+    }
+
+    public CompletionStage<List<Group>> getAllGroupsAsync( final String packageType, final String enabled )
+    {
+        final boolean isEnabled =
+                enabled == null || enabled.equalsIgnoreCase( "yes" ) || Boolean.parseBoolean( enabled );
+        return generateQueryResultAsync( () -> storeManager.query()
+                                                           .getAllGroupsAsync(
+                                                                   packageType == null ? MAVEN_PKG_KEY : packageType,
+                                                                   isEnabled ),
+                                         "Failed to get all groups for package type {}", packageType );
+    }
+
+    public CompletionStage<List<ArtifactStore>> getOrderedConcreteStoresInGroupAsync( final String storeKey,
+                                                                                    final String enabled )
+    {
+        final boolean isEnabled =
+                enabled == null || enabled.equalsIgnoreCase( "yes" ) || Boolean.parseBoolean( enabled );
+        logger.debug( "Searching Concrete repos in group {} with enabled {}", storeKey, isEnabled );
+        return generateQueryResultAsync( () -> {
+            final StoreKey key = validateStoreKey( storeKey );
+            if ( key.getType() != StoreType.group )
+            {
+                throw new IndyWorkflowException( BAD_REQUEST.getStatusCode(), "Illegal storeKey {}: not a group",
+                                                 storeKey );
+            }
+            return storeManager.query()
+                               .getOrderedConcreteStoresInGroupAsync( key.getPackageType(), key.getName(),
+                                                                      isEnabled );
+        }, "Failed to get stores in group {}", storeKey );
+    }
+
     public List<Group> getGroupsAffectedBy( final String[] keys )
             throws IndyWorkflowException
     {
+        return getGroupsAffectedBy( keys, null );
+    }
+
+    /**
+     * @param maxDepth how many levels of group membership to follow, null for all of them
+     */
+    public List<Group> getGroupsAffectedBy( final String[] keys, final Integer maxDepth )
+            throws IndyWorkflowException
+    {
+        if ( maxDepth != null && maxDepth < 1 )
+        {
+            throw new IndyWorkflowException( BAD_REQUEST.getStatusCode(), "Illegal maxDepth: {}, must be positive",
+                                             maxDepth );
+        }
         return generateQueryResult( () -> {
             final Set<StoreKey> storeKeys = new HashSet<>();
             for ( String s : keys )
@@ -263,7 +339,11 @@ public class QueryController
                 StoreKey storeKey = validateStoreKey( s.trim() );
                 storeKeys.add( storeKey );
             }
-            return new ArrayList<>( storeManager.query().getGroupsAffectedBy( storeKeys ) );
+            if ( maxDepth == null )
+            {
+                return new ArrayList<>( storeManager.query().getGroupsAffectedBy( storeKeys ) );
+            }
+            return new ArrayList<>( storeManager.query().getGroupsAffectedBy( storeKeys, maxDepth ) );
         }, "Failed to get groups affected by keys: {}", (Object[]) keys );
     }
 
@@ -287,16 +367,19 @@ public class QueryController
                                                     final JaxRsUriFormatter uriFormatter )
             throws IndyWorkflowException
     {
-        List<ArtifactStore> stores;
-        try
+        final boolean filterPkg = isNotBlank( pkgType ) && !"all".equals( pkgType ) && isValidPackageType( pkgType );
+
+        // stream the stores and keep only the views, de-duplicated by resource URI in encounter order
+        final Set<EndpointView> points = new LinkedHashSet<>();
+        try (Stream<ArtifactStore> stores = storeManager.streamArtifactStores())
         {
-            stores = new ArrayList<>( storeManager.getAllArtifactStores() );
-            if ( isNotBlank( pkgType ) && !"all".equals( pkgType ) && isValidPackageType( pkgType ) )
-            {
-                stores = stores.stream()
-                               .filter( s -> pkgType.equals( s.getPackageType() ) )
-                               .collect( Collectors.toList() );
-            }
+            stores.filter( s -> !filterPkg || pkgType.equals( s.getPackageType() ) ).forEach( store -> {
+                final StoreKey key = store.getKey();
+                final String resourceUri =
+                        uriFormatter.formatAbsolutePathTo( baseUri, "content", key.getPackageType(),
+                                                           key.getType().singularEndpointName(), key.getName() );
+                points.add( new EndpointView( store, resourceUri ) );
+            } );
         }
         catch ( final IndyDataException e )
         {
@@ -304,53 +387,25 @@ public class QueryController
                                              "Failed to retrieve all endpoints: {}", e, e.getMessage() );
         }
 
-        final List<EndpointView> points = new ArrayList<>();
-        for ( final ArtifactStore store : stores )
-        {
-            final StoreKey key = store.getKey();
-            final String resourceUri = uriFormatter.formatAbsolutePathTo( baseUri, "content", key.getPackageType(),
-                                                                          key.getType().singularEndpointName(),
-                                                                          key.getName() );
-
-            final EndpointView point = new EndpointView( store, resourceUri );
-            if ( !points.contains( point ) )
-            {
-                points.add( point );
-            }
-        }
-
-        return new EndpointViewListing( points );
+        return new EndpointViewListing( new ArrayList<>( points ) );
     }
 
     public Map<String, List<String>> getStoreKeysByPackageType( final String pkgType )
             throws IndyWorkflowException
     {
-        final List<ArtifactStore> stores;
-
-        try
+        final Map<String, List<String>> result = new HashMap<>();
+        // key-only listings, the store definitions are never loaded
+        try (Stream<StoreKey> keys = isNotBlank( pkgType ) && !"all".equals( pkgType ) && isValidPackageType(
+                pkgType ) ? storeManager.getStoreKeysByPkg( pkgType ).stream() : storeManager.streamArtifactStoreKeys())
         {
-            final Map<String, List<String>> result = new HashMap<>();
-            stores = new ArrayList<>( storeManager.getAllArtifactStores() );
-            List<String> items;
-            if ( isNotBlank( pkgType ) && !"all".equals( pkgType ) && isValidPackageType( pkgType ) )
-            {
-                items = stores.stream()
-                              .filter( s -> pkgType.equals( s.getPackageType() ) )
-                              .map( s -> s.getKey().toString() )
-                              .collect( Collectors.toList() );
-            }
-            else
-            {
-                items = stores.stream().map( s -> s.getKey().toString() ).collect( Collectors.toList() );
-            }
-            result.put( "items", items );
-            return result;
+            result.put( "items", keys.map( StoreKey::toString ).collect( Collectors.toList() ) );
         }
-        catch ( final IndyDataException e )
+        catch ( final RuntimeException e )
         {
             throw new IndyWorkflowException( INTERNAL_SERVER_ERROR.getStatusCode(),
                                              "Failed to retrieve all store keys: {}", e, e.getMessage() );
         }
+        return result;
     }
 
     private StoreKey validateStoreKey( final String storeKey )
@@ -397,6 +452,45 @@ public class QueryController
         }
     }
 
+    /**
+     * Same as {@link #generateQueryResult(QuerySupplier, String, Object...)}, but the errors are delivered through
+     * the returned stage, always as {@link IndyWorkflowException}.
+     */
+    private <R> CompletionStage<R> generateQueryResultAsync( final QuerySupplier<CompletionStage<R>> t,
+                                                             final String message, final Object... params )
+    {
+        CompletionStage<R> stage;
+        try
+        {
+            stage = t.get();
+        }
+        catch ( IndyDataException | IndyWorkflowException e )
+        {
+            stage = CompletableFuture.failedFuture( e );
+        }
+
+        return stage.handle( ( result, error ) -> {
+            if ( error == null )
+            {
+                return CompletableFuture.completedFuture( result );
+            }
+
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ?
+                    error.getCause() :
+                    error;
+            if ( cause instanceof IndyWorkflowException )
+            {
+                return CompletableFuture.<R>failedFuture( cause );
+            }
+
+            final Object[] newParams = Arrays.copyOf( params, params.length + 1 );
+            newParams[params.length] = cause.getMessage();
+            return CompletableFuture.<R>failedFuture(
+                    new IndyWorkflowException( INTERNAL_SERVER_ERROR.getStatusCode(), message + ", Reason: {}",
+                                               cause, newParams ) );
+        } ).thenCompose( Function.identity() );
+    }
+
     private interface QuerySupplier<T>
     {
         T get()
@@ -15,6 +15,13 @@
  */
 package org.commonjava.indy.service.repository.controller;
 
+import org.commonjava.indy.service.repository.change.audit.AuditWriterStats;
+import org.commonjava.indy.service.repository.change.audit.StoreAuditManager;
+import org.commonjava.indy.service.repository.change.event.DefaultStoreEventDispatcher;
+import org.commonjava.indy.service.repository.change.event.kafka.EventPublishStats;
+import org.commonjava.indy.service.repository.change.event.kafka.StoreEventBatcher;
+import org.commonjava.indy.service.repository.concurrent.DispatchStats;
+import org.commonjava.indy.service.repository.concurrent.LockStats;
 import org.commonjava.indy.service.repository.data.StoreDataManager;
 import org.commonjava.indy.service.repository.exception.IndyDataException;
 import org.commonjava.indy.service.repository.exception.IndyWorkflowException;
@@ -30,9 +37,12 @@ import org.commonjava.indy.service.repository.util.JaxRsUriFormatter;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static jakarta.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 
@@ -46,6 +56,15 @@ public class StatsController
     @Inject
     StoreDataManager dataManager;
 
+    @Inject
+    DefaultStoreEventDispatcher eventDispatcher;
+
+    @Inject
+    StoreEventBatcher eventBatcher;
+
+    @Inject
+    StoreAuditManager auditManager;
+
     public StatsController( final StoreDataManager dataManager, final Versioning versioning )
     {
         this.dataManager = dataManager;
@@ -60,10 +79,17 @@ public class StatsController
     public EndpointViewListing getEndpointsListing( final String baseUri, final JaxRsUriFormatter uriFormatter )
             throws IndyWorkflowException
     {
-        final List<ArtifactStore> stores;
-        try
+        // stream the stores and keep only the views, de-duplicated by resource URI in encounter order
+        final Set<EndpointView> points = new LinkedHashSet<>();
+        try (Stream<ArtifactStore> stores = dataManager.streamArtifactStores())
         {
-            stores = new ArrayList<>( dataManager.getAllArtifactStores() );
+            stores.forEach( store -> {
+                final StoreKey key = store.getKey();
+                final String resourceUri =
+                        uriFormatter.formatAbsolutePathTo( baseUri, "content", key.getPackageType(),
+                                                           key.getType().singularEndpointName(), key.getName() );
+                points.add( new EndpointView( store, resourceUri ) );
+            } );
         }
         catch ( final IndyDataException e )
         {
@@ -71,42 +97,47 @@ public class StatsController
                                              "Failed to retrieve all endpoints: {}", e, e.getMessage() );
         }
 
-        final List<EndpointView> points = new ArrayList<>();
-        for ( final ArtifactStore store : stores )
-        {
-            final StoreKey key = store.getKey();
-            final String resourceUri = uriFormatter.formatAbsolutePathTo( baseUri, "content", key.getPackageType(),
-                                                                          key.getType().singularEndpointName(),
-                                                                          key.getName() );
-
-            final EndpointView point = new EndpointView( store, resourceUri );
-            if ( !points.contains( point ) )
-            {
-                points.add( point );
-            }
-        }
+        return new EndpointViewListing( new ArrayList<>( points ) );
+    }
 
-        return new EndpointViewListing( points );
+    public LockStats getStoreLockStats()
+    {
+        return dataManager.getLockStats();
+    }
+
+    public DispatchStats getEventDispatchStats()
+    {
+        return eventDispatcher.getDispatchStats();
+    }
+
+    public EventPublishStats getEventPublishStats()
+    {
+        return eventBatcher.getStats();
+    }
+
+    /**
+     * Null if the repository audit is not enabled.
+     */
+    public AuditWriterStats getAuditWriterStats()
+    {
+        return auditManager.getWriterStats();
     }
 
     public Map<String, List<String>> getAllStoreKeys()
             throws IndyWorkflowException
     {
-        final List<ArtifactStore> stores;
-        try
+        final Map<String, List<String>> result = new HashMap<>();
+        // key-only listing, the store definitions are never loaded
+        try (Stream<StoreKey> keys = dataManager.streamArtifactStoreKeys())
         {
-            final Map<String, List<String>> result = new HashMap<>();
-            stores = new ArrayList<>( dataManager.getAllArtifactStores() );
-            List<String> items = stores.stream().map( s-> s.getKey().toString() ).collect( Collectors.toList() );
-            result.put("items", items);
-            return result;
+            result.put( "items", keys.map( StoreKey::toString ).collect( Collectors.toList() ) );
         }
-        catch ( final IndyDataException e )
+        catch ( final RuntimeException e )
         {
             throw new IndyWorkflowException( INTERNAL_SERVER_ERROR.getStatusCode(),
                                              "Failed to retrieve all store keys: {}", e, e.getMessage() );
         }
-
+        return result;
     }
 
 }
@@ -19,8 +19,10 @@ import org.commonjava.event.common.EventMetadata;
 import org.commonjava.event.store.StoreUpdateType;
 import org.commonjava.indy.service.repository.audit.ChangeSummary;
 import org.commonjava.indy.service.repository.change.event.StoreEventDispatcher;
-import org.commonjava.indy.service.repository.concurrent.Locker;
+import org.commonjava.indy.service.repository.concurrent.LockManager;
+import org.commonjava.indy.service.repository.concurrent.LockStats;
 import org.commonjava.indy.service.repository.config.IndyRepositoryConfiguration;
+import org.commonjava.indy.service.repository.data.infinispan.BasicCacheHandle;
 import org.commonjava.indy.service.repository.data.infinispan.CacheProducer;
 import org.commonjava.indy.service.repository.exception.IndyDataException;
 import org.commonjava.indy.service.repository.model.ArtifactStore;
@@ -33,23 +35,32 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.inject.Inject;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.BiFunction;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.Collections.emptySet;
 import static java.util.Collections.singletonMap;
+import static jakarta.ws.rs.core.Response.Status.BAD_REQUEST;
+import static jakarta.ws.rs.core.Response.Status.CONFLICT;
 import static jakarta.ws.rs.core.Response.Status.METHOD_NOT_ALLOWED;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -66,7 +77,14 @@ public abstract class AbstractStoreDataManager
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
-    protected final Locker<StoreKey> opLocks = new Locker<>(); // used internally
+    protected final LockManager<StoreKey> opLocks = new LockManager<>(); // used internally
+
+    protected final ArtifactStoreIndex storeIndex =
+            new ArtifactStoreIndex( this::streamArtifactStores, this::isLocalIndexSynced );
+
+    protected final FlattenedGroupIndex groupIndex = new FlattenedGroupIndex( storeIndex );
+
+    protected final QueryCacheDependencies queryCacheDependencies = new QueryCacheDependencies();
 
     abstract protected StoreEventDispatcher getStoreEventDispatcher();
 
@@ -86,7 +104,9 @@ public abstract class AbstractStoreDataManager
         boolean queryCacheEnabled = repoConfig != null && repoConfig.queryCacheEnabled();
         return new DefaultArtifactStoreQuery<>( this,
                                                 new DefaultArtifactStoreQuery.QueryCacheWrapper( queryCacheEnabled,
-                                                                                                 getCacheProducer() ) );
+                                                                                                 getCacheProducer(),
+                                                                                                 queryCacheDependencies ),
+                                                storeIndex, groupIndex );
     }
 
     protected abstract Optional<ArtifactStore> getArtifactStoreInternal( final StoreKey key );
@@ -98,6 +118,48 @@ public abstract class AbstractStoreDataManager
         return getArtifactStoreInternal( key );
     }
 
+    @Override
+    public Map<StoreKey, ArtifactStore> getArtifactStores( final Collection<StoreKey> keys )
+    {
+        final Map<StoreKey, ArtifactStore> result = new HashMap<>();
+        new HashSet<>( keys ).forEach( k -> getArtifactStoreInternal( k ).ifPresent( s -> result.put( k, s ) ) );
+        return result;
+    }
+
+    /**
+     * By default the lookup runs synchronously, data managers backed by a remote store should override it.
+     */
+    @Override
+    public CompletionStage<Optional<ArtifactStore>> getArtifactStoreAsync( final StoreKey key )
+    {
+        return supplyCompleted( () -> getArtifactStoreInternal( key ) );
+    }
+
+    @Override
+    public CompletionStage<Map<StoreKey, ArtifactStore>> getArtifactStoresAsync( final Collection<StoreKey> keys )
+    {
+        return supplyCompleted( () -> getArtifactStores( keys ) );
+    }
+
+    @Override
+    public CompletionStage<Set<ArtifactStore>> getArtifactStoresByPkgAndTypeAsync( final String packageType,
+                                                                                   final StoreType storeType )
+    {
+        return supplyCompleted( () -> getArtifactStoresByPkgAndType( packageType, storeType ) );
+    }
+
+    private static <R> CompletionStage<R> supplyCompleted( final Supplier<R> supplier )
+    {
+        try
+        {
+            return CompletableFuture.completedFuture( supplier.get() );
+        }
+        catch ( RuntimeException e )
+        {
+            return CompletableFuture.failedFuture( e );
+        }
+    }
+
     @Override
     //    @WithSpan
     public boolean storeArtifactStore( final ArtifactStore store, final ChangeSummary summary,
@@ -111,53 +173,103 @@ public abstract class AbstractStoreDataManager
     protected void preStore( final ArtifactStore store, final ArtifactStore original, final ChangeSummary summary,
                              final boolean exists, final boolean fireEvents, final EventMetadata eventMetadata )
     {
+        preStore( singletonMap( store, original ), summary, fireEvents, eventMetadata );
+    }
+
+    /**
+     * Pre-store actions of stores changed together, mapped to their original definitions (null for new stores). The
+     * events of the same kind are fired once for all the stores.
+     */
+    protected void preStore( final Map<ArtifactStore, ArtifactStore> changes, final ChangeSummary summary,
+                             final boolean fireEvents, final EventMetadata eventMetadata )
+    {
+        changes.forEach( this::evictQueryCache );
+
         StoreEventDispatcher dispatcher = getStoreEventDispatcher();
         if ( dispatcher != null && isStarted() && fireEvents )
         {
-            logger.debug( "Firing store pre-update event for: {} (originally: {})", store, original );
-            dispatcher.updating( exists ? StoreUpdateType.UPDATE : StoreUpdateType.ADD, eventMetadata,
-                                 singletonMap( store, original ) );
-
-            if ( exists )
-            {
-                if ( store.isDisabled() && !original.isDisabled() )
-                {
-                    dispatcher.disabling( eventMetadata, store.getKey() );
-                }
-                else if ( !store.isDisabled() && original.isDisabled() )
-                {
-                    dispatcher.enabling( eventMetadata, store.getKey() );
-                }
-            }
+            logger.debug( "Firing store pre-update event for: {}", changes );
+            fireByUpdateType( changes, ( type, stores ) -> dispatcher.updating( type, eventMetadata, stores ) );
+            fireIfAny( disablingKeys( changes, true ), keys -> dispatcher.disabling( eventMetadata, keys ) );
+            fireIfAny( disablingKeys( changes, false ), keys -> dispatcher.enabling( eventMetadata, keys ) );
         }
     }
 
     protected void postStore( final ArtifactStore store, final ArtifactStore original, final ChangeSummary summary,
                               final boolean exists, final boolean fireEvents, final EventMetadata eventMetadata )
     {
+        postStore( singletonMap( store, original ), summary, fireEvents, eventMetadata );
+    }
+
+    /**
+     * Post-store actions of stores changed together, see {@link #preStore(Map, ChangeSummary, boolean, EventMetadata)}.
+     */
+    protected void postStore( final Map<ArtifactStore, ArtifactStore> changes, final ChangeSummary summary,
+                              final boolean fireEvents, final EventMetadata eventMetadata )
+    {
+        postStore( changes, summary, fireEvents, eventMetadata, true );
+    }
+
+    private void postStore( final Map<ArtifactStore, ArtifactStore> changes, final ChangeSummary summary,
+                            final boolean fireEvents, final EventMetadata eventMetadata,
+                            final boolean refreshAffectedBy )
+    {
+        changes.keySet().forEach( store -> groupIndex.invalidate( store.getKey() ) );
+        changes.forEach( this::evictQueryCache );
+
         StoreEventDispatcher dispatcher = getStoreEventDispatcher();
         if ( dispatcher != null && isStarted() && fireEvents )
         {
-            logger.debug( "Firing store post-update event for: {} (originally: {})", store, original );
-            dispatcher.updated( exists ? StoreUpdateType.UPDATE : StoreUpdateType.ADD, eventMetadata,
-                                singletonMap( store, original ) );
+            logger.debug( "Firing store post-update event for: {}", changes );
+            fireByUpdateType( changes, ( type, stores ) -> dispatcher.updated( type, eventMetadata, stores ) );
+            fireIfAny( disablingKeys( changes, true ), keys -> dispatcher.disabled( eventMetadata, keys ) );
+            fireIfAny( disablingKeys( changes, false ), keys -> dispatcher.enabled( eventMetadata, keys ) );
+        }
 
-            if ( exists )
+        // Hosted or Remote update does not change affectedBy relationships
+        changes.forEach( ( store, original ) -> {
+            if ( refreshAffectedBy && store instanceof Group )
             {
-                if ( store.isDisabled() && !original.isDisabled() )
-                {
-                    dispatcher.disabled( eventMetadata, store.getKey() );
-                }
-                else if ( !store.isDisabled() && original.isDisabled() )
-                {
-                    dispatcher.enabled( eventMetadata, store.getKey() );
-                }
+                refreshAffectedBy( store, original, STORE );
             }
+        } );
+    }
+
+    private static void fireByUpdateType( final Map<ArtifactStore, ArtifactStore> changes,
+                                          final BiConsumer<StoreUpdateType, Map<ArtifactStore, ArtifactStore>> fire )
+    {
+        final Map<ArtifactStore, ArtifactStore> added = new LinkedHashMap<>();
+        final Map<ArtifactStore, ArtifactStore> updated = new LinkedHashMap<>();
+        changes.forEach( ( store, original ) -> ( original == null ? added : updated ).put( store, original ) );
+        if ( !added.isEmpty() )
+        {
+            fire.accept( StoreUpdateType.ADD, added );
         }
-        // Hosted or Remote update does not change affectedBy relationships
-        if ( store instanceof Group )
+        if ( !updated.isEmpty() )
+        {
+            fire.accept( StoreUpdateType.UPDATE, updated );
+        }
+    }
+
+    /**
+     * Get the keys of the existing stores being disabled, or being enabled if disabling is false.
+     */
+    private static StoreKey[] disablingKeys( final Map<ArtifactStore, ArtifactStore> changes,
+                                             final boolean disabling )
+    {
+        return changes.entrySet()
+                      .stream()
+                      .filter( e -> e.getValue() != null && e.getKey().isDisabled() == disabling
+                              && e.getValue().isDisabled() != disabling )
+                      .map( e -> e.getKey().getKey() )
+                      .toArray( StoreKey[]::new );
+    }
+
+    private static void fireIfAny( final StoreKey[] keys, final Consumer<StoreKey[]> fire )
+    {
+        if ( keys.length > 0 )
         {
-            refreshAffectedBy( store, original, STORE );
+            fire.accept( keys );
         }
     }
 
@@ -175,6 +287,9 @@ public abstract class AbstractStoreDataManager
     protected void postDelete( final ArtifactStore store, final ChangeSummary summary, final boolean fireEvents,
                                final EventMetadata eventMetadata )
     {
+        groupIndex.invalidate( store.getKey() );
+        evictQueryCache( store, null );
+
         StoreEventDispatcher dispatcher = getStoreEventDispatcher();
         if ( dispatcher != null && isStarted() && fireEvents )
         {
@@ -184,6 +299,36 @@ public abstract class AbstractStoreDataManager
         refreshAffectedBy( store, null, StoreUpdateAction.DELETE );
     }
 
+    /**
+     * Evict the artifact-store-query cache entries depending on the changed store. For groups, entries depending on any
+     * old or new constituent are evicted too, since membership changes affect queries like getGroupsAffectedBy.
+     */
+    protected void evictQueryCache( final ArtifactStore store, final ArtifactStore original )
+    {
+        final CacheProducer cacheProducer = getCacheProducer();
+        if ( cacheProducer == null || repoConfig == null || !repoConfig.queryCacheEnabled() )
+        {
+            return;
+        }
+
+        final Set<StoreKey> changed = new HashSet<>();
+        for ( ArtifactStore s : Arrays.asList( store, original ) )
+        {
+            if ( s != null )
+            {
+                changed.add( s.getKey() );
+                if ( s instanceof Group && ( (Group) s ).getConstituents() != null )
+                {
+                    changed.addAll( ( (Group) s ).getConstituents() );
+                }
+            }
+        }
+
+        BasicCacheHandle<Object, Object> cache =
+                cacheProducer.getCache( DefaultArtifactStoreQuery.QueryCacheWrapper.ARTIFACT_STORE_QUERY );
+        queryCacheDependencies.evict( changed, cache::remove );
+    }
+
     //    @WithSpan
     protected void refreshAffectedBy( final ArtifactStore store, final ArtifactStore original,
                                       StoreUpdateAction action )
@@ -205,7 +350,7 @@ public abstract class AbstractStoreDataManager
             {
                 Group grp = (Group) store;
 
-                new HashSet<>( grp.getConstituents() ).forEach( ( key ) -> removeAffectedBy( key, store.getKey() ) );
+                removeAffectedBy( new HashSet<>( grp.getConstituents() ), store.getKey() );
 
                 logger.info( "Removed affected-by reverse mapping for: {} in {} member stores", store.getKey(),
                              grp.getConstituents().size() );
@@ -249,12 +394,12 @@ public abstract class AbstractStoreDataManager
                     }
                 }
 
-                removed.forEach( ( key ) -> removeAffectedBy( key, store.getKey() ) );
+                removeAffectedBy( removed, store.getKey() );
 
                 logger.info( "Removed affected-by reverse mapping for: {} in {} member stores", store.getKey(),
                              removed.size() );
 
-                added.forEach( ( key ) -> addAffectedBy( key, store.getKey() ) );
+                addAffectedBy( added, store.getKey() );
 
                 logger.info( "Added affected-by reverse mapping for: {} in {} member stores", store.getKey(),
                              added.size() );
@@ -262,9 +407,16 @@ public abstract class AbstractStoreDataManager
         }
     }
 
-    protected abstract void removeAffectedBy( StoreKey key, StoreKey affected );
+    /**
+     * Remove the affected store from the reverse mapping of all the given keys. Implementations should apply the
+     * changes together, as this runs under the store lock.
+     */
+    protected abstract void removeAffectedBy( Collection<StoreKey> keys, StoreKey affected );
 
-    protected abstract void addAffectedBy( StoreKey key, StoreKey affected );
+    /**
+     * Add the affected store to the reverse mapping of all the given keys, see {@link #removeAffectedBy}.
+     */
+    protected abstract void addAffectedBy( Collection<StoreKey> keys, StoreKey affected );
 
     protected abstract void removeAffectedStore( StoreKey key );
 
@@ -298,6 +450,7 @@ public abstract class AbstractStoreDataManager
                 preDelete( store, summary, true, eventMetadata );
 
                 ArtifactStore removed = removeArtifactStoreInternal( k );
+                storeIndex.remove( k );
                 logger.info( "REMOVED store: {}", removed );
 
                 postDelete( store, summary, true, eventMetadata );
@@ -308,7 +461,7 @@ public abstract class AbstractStoreDataManager
             }
 
             return null;
-        }, ( k, lock ) -> {
+        }, k -> {
             error.set( new IndyDataException( "Failed to lock: %s for DELETE after %d seconds.", k,
                                               LOCK_TIMEOUT_SECONDS ) );
             return false;
@@ -321,6 +474,12 @@ public abstract class AbstractStoreDataManager
         }
     }
 
+    @Override
+    public LockStats getLockStats()
+    {
+        return opLocks.getStats();
+    }
+
     /**
      * TODO: currently we only check hosted readonly to prevent unexpected removing of both files and repo itself.
      * We may expand to remote or group in the future to support functions like remote repo "deploy-through".
@@ -367,12 +526,89 @@ public abstract class AbstractStoreDataManager
     @Override
     public void reload()
     {
+        storeIndex.invalidate();
+        groupIndex.clear();
+        clearQueryCache();
+    }
+
+    /**
+     * Bring the in-memory indexes and the query cache in line with a change made by another node, which did not go
+     * through {@link #store} or {@link #deleteArtifactStore} here. A null current store means it was deleted.
+     */
+    protected void refreshLocalIndexes( final StoreKey key, final ArtifactStore current,
+                                        final ArtifactStore previous )
+    {
+        if ( current == null )
+        {
+            storeIndex.remove( key );
+        }
+        else
+        {
+            storeIndex.put( current );
+        }
+        groupIndex.invalidate( key );
+        evictQueryCache( current, previous );
+    }
+
+    /**
+     * Whether the in-memory indexes see every change of the stores: the writes of this node, and the changes of other
+     * nodes applied by {@link #refreshLocalIndexes}. The queries only use the indexes while it is true.
+     */
+    protected boolean isLocalIndexSynced()
+    {
+        return true;
+    }
+
+    protected void clearQueryCache()
+    {
+        final CacheProducer cacheProducer = getCacheProducer();
+        if ( cacheProducer != null && repoConfig != null && repoConfig.queryCacheEnabled() )
+        {
+            BasicCacheHandle<Object, Object> cache =
+                    cacheProducer.getCache( DefaultArtifactStoreQuery.QueryCacheWrapper.ARTIFACT_STORE_QUERY );
+            queryCacheDependencies.clear( cache::remove );
+        }
     }
 
     @Override
     public abstract boolean isStarted();
 
-    protected abstract ArtifactStore putArtifactStoreInternal( final StoreKey storeKey, ArtifactStore store );
+    /**
+     * Write the store, whose version was already set to the one following the original. Implementations sharing the
+     * storage with other nodes must only write if the stored definition is still the original one, and fail with a
+     * CONFLICT status otherwise: writing anyway would drop the change of the other node, or bring back a store it
+     * deleted, and the events and affected-by updates would be computed from the wrong original.
+     */
+    protected abstract ArtifactStore putArtifactStoreInternal( final StoreKey storeKey, ArtifactStore store,
+                                                               ArtifactStore original )
+            throws IndyDataException;
+
+    /**
+     * Get the current definition of a store about to be updated, which the update is checked against. By default it is
+     * the same as {@link #getArtifactStoreInternal(StoreKey)}, data managers caching stores shared with other nodes
+     * should read the storage instead.
+     */
+    protected Optional<ArtifactStore> getArtifactStoreForUpdate( final StoreKey key )
+    {
+        return getArtifactStoreInternal( key );
+    }
+
+    /**
+     * Called when an update is rejected as the version it is based on is not the current one anymore, so the store the
+     * caller reloads before retrying is the current one. Nothing to do by default, the stores being read from where
+     * they are updated.
+     */
+    protected void refreshStaleStores( final Collection<StoreKey> keys )
+    {
+    }
+
+    /**
+     * Get the version of a stored definition, 0 for definitions stored before versioning.
+     */
+    protected static long versionOf( final ArtifactStore stored )
+    {
+        return stored.getVersion() == null ? 0 : stored.getVersion();
+    }
 
     protected boolean store( final ArtifactStore store, final ChangeSummary summary, final boolean skipIfExists,
                              final boolean fireEvents, final EventMetadata eventMetadata )
@@ -391,6 +627,34 @@ public abstract class AbstractStoreDataManager
 
         logger.warn( "Storing {} using operation lock: {}", store, opLocks );
 
+        addValidationMetadata( store );
+
+        Function<StoreKey, Boolean> lockHandler =
+                k -> doStore( k, store, summary, error, skipIfExists, fireEvents, eventMetadata );
+
+        Function<StoreKey, Boolean> lockFailedHandler = k -> {
+            error.set( new IndyDataException( "Failed to lock: %s for STORE after %d seconds.", k,
+                                              LOCK_TIMEOUT_SECONDS ) );
+            return false;
+        };
+
+        Boolean result = opLocks.lockAnd( storeKey, LOCK_TIMEOUT_SECONDS, lockHandler, lockFailedHandler );
+        if ( result == null )
+        {
+            throw new IndyDataException( "Store failed due to tryLock timeout." );
+        }
+
+        IndyDataException ex = error.get();
+        if ( ex != null )
+        {
+            throw ex;
+        }
+
+        return result;
+    }
+
+    private void addValidationMetadata( final ArtifactStore store )
+    {
         if ( repoConfig != null && repoConfig.storeValidationEnabled() && store.getType() != group )
         {
             ArtifactStoreValidateData validateData = storeValidator.validate( store );
@@ -409,36 +673,187 @@ public abstract class AbstractStoreDataManager
                 }
             }
         }
+    }
 
-        Function<StoreKey, Boolean> lockHandler =
-                k -> doStore( k, store, summary, error, skipIfExists, fireEvents, eventMetadata );
+    @Override
+    public void storeArtifactStores( final Collection<ArtifactStore> stores, final ChangeSummary summary,
+                                     final boolean fireEvents, final EventMetadata eventMetadata )
+            throws IndyDataException
+    {
+        storeAll( stores, summary, false, fireEvents, eventMetadata );
+    }
 
-        BiFunction<StoreKey, ReentrantLock, Boolean> lockFailedHandler = ( k, lock ) -> {
-            error.set( new IndyDataException( "Failed to lock: %s for STORE after %d seconds.", k,
-                                              LOCK_TIMEOUT_SECONDS ) );
-            return false;
-        };
+    @Override
+    public Set<StoreKey> storeNewArtifactStores( final Collection<ArtifactStore> stores, final ChangeSummary summary,
+                                                 final boolean fireEvents, final EventMetadata eventMetadata )
+            throws IndyDataException
+    {
+        return storeAll( stores, summary, true, fireEvents, eventMetadata );
+    }
 
-        Boolean result = opLocks.lockAnd( storeKey, LOCK_TIMEOUT_SECONDS, lockHandler, lockFailedHandler );
-        if ( result == null )
+    @Override
+    public void initAffectedBy( final Collection<Group> groups )
+    {
+        groups.forEach( g -> refreshAffectedBy( g, null, STORE ) );
+    }
+
+    /**
+     * Store the stores as one unit, see {@link #storeArtifactStores}. With newOnly, the existing stores are skipped
+     * and the affected-by mapping of the stored groups is left to {@link #initAffectedBy(Collection)}.
+     *
+     * @return the keys of the stored stores
+     */
+    private Set<StoreKey> storeAll( final Collection<ArtifactStore> stores, final ChangeSummary summary,
+                                    final boolean newOnly, final boolean fireEvents,
+                                    final EventMetadata eventMetadata )
+            throws IndyDataException
+    {
+        // check everything before taking any lock
+        final Map<StoreKey, ArtifactStore> byKey = new LinkedHashMap<>();
+        for ( ArtifactStore store : stores )
         {
-            throw new IndyDataException( "Store failed due to tryLock timeout." );
+            if ( store == null )
+            {
+                throw new IndyDataException( BAD_REQUEST.getStatusCode(), "Tried to store null ArtifactStore!" );
+            }
+            if ( byKey.put( store.getKey(), store ) != null )
+            {
+                throw new IndyDataException( BAD_REQUEST.getStatusCode(), "Store {} is given more than once",
+                                             store.getKey() );
+            }
+        }
+        if ( byKey.isEmpty() )
+        {
+            return Collections.emptySet();
         }
+        byKey.values().forEach( this::addValidationMetadata );
+
+        logger.info( "Storing {} stores together: {}", byKey.size(), byKey.keySet() );
+
+        AtomicReference<IndyDataException> error = new AtomicReference<>();
+        final Set<StoreKey> stored = new HashSet<>();
+        Boolean result = opLocks.lockAllAnd( byKey.keySet(), Comparator.naturalOrder(), LOCK_TIMEOUT_SECONDS,
+                                             keys -> doStoreAll( keys, byKey, summary, error, newOnly, stored,
+                                                                 fireEvents, eventMetadata ), k -> {
+                    error.set( new IndyDataException( "Failed to lock: %s for STORE after %d seconds.", k,
+                                                      LOCK_TIMEOUT_SECONDS ) );
+                    return false;
+                } );
 
         IndyDataException ex = error.get();
         if ( ex != null )
         {
             throw ex;
         }
+        if ( result == null )
+        {
+            throw new IndyDataException( "Store failed due to tryLock timeout." );
+        }
+        return stored;
+    }
 
+    private Boolean doStoreAll( List<StoreKey> keys, Map<StoreKey, ArtifactStore> stores, ChangeSummary summary,
+                                AtomicReference<IndyDataException> error, boolean newOnly, Set<StoreKey> stored,
+                                boolean fireEvents, EventMetadata eventMetadata )
+    {
+        // check all the versions before changing anything
+        final Map<StoreKey, ArtifactStore> originals = getArtifactStoresForUpdate( keys );
+        final Map<ArtifactStore, ArtifactStore> changes = new LinkedHashMap<>();
+        for ( StoreKey k : keys )
+        {
+            final ArtifactStore store = stores.get( k );
+            final ArtifactStore original = originals.get( k );
+            if ( newOnly && original != null )
+            {
+                logger.debug( "Skip storing for {} (repo exists)", k );
+                continue;
+            }
+            final IndyDataException conflict = checkVersion( k, store, original );
+            if ( conflict != null )
+            {
+                refreshStaleStores( Collections.singleton( k ) );
+                error.set( conflict );
+                return false;
+            }
+            changes.put( store, original );
+        }
+        if ( changes.isEmpty() )
+        {
+            return true;
+        }
+
+        if ( eventMetadata != null && summary != null )
+        {
+            eventMetadata.set( StoreDataManager.CHANGE_SUMMARY, summary );
+        }
+        preStore( changes, summary, fireEvents, eventMetadata );
+
+        final Map<ArtifactStore, Long> requestedVersions = new HashMap<>();
+        changes.forEach( ( store, original ) -> {
+            requestedVersions.put( store, store.getVersion() );
+            store.setVersion( original == null ? 1 : versionOf( original ) + 1 );
+        } );
+        try
+        {
+            putArtifactStoresInternal( changes );
+        }
+        catch ( IndyDataException e )
+        {
+            requestedVersions.forEach( ArtifactStore::setVersion );
+            error.set( e );
+            return false;
+        }
+        changes.keySet().forEach( storeIndex::put );
+        changes.keySet().forEach( store -> stored.add( store.getKey() ) );
+
+        postStore( changes, summary, fireEvents, eventMetadata, !newOnly );
+        return true;
+    }
+
+    /**
+     * Get the current definitions of stores about to be updated together, see {@link #getArtifactStoreForUpdate}.
+     */
+    protected Map<StoreKey, ArtifactStore> getArtifactStoresForUpdate( final Collection<StoreKey> keys )
+    {
+        final Map<StoreKey, ArtifactStore> result = new HashMap<>();
+        keys.forEach( k -> getArtifactStoreForUpdate( k ).ifPresent( s -> result.put( k, s ) ) );
         return result;
     }
 
+    /**
+     * Write stores changed together, mapped to their original definitions, whose versions were already checked under
+     * the store locks. By default they are written one by one as conditional updates. Data managers sharing their
+     * storage with other nodes must fail the whole write if any of the stores was changed there meanwhile.
+     */
+    protected void putArtifactStoresInternal( final Map<ArtifactStore, ArtifactStore> changes )
+            throws IndyDataException
+    {
+        for ( Map.Entry<ArtifactStore, ArtifactStore> change : changes.entrySet() )
+        {
+            putArtifactStoreInternal( change.getKey().getKey(), change.getKey(), change.getValue() );
+        }
+    }
+
+    /**
+     * Check the version of a store carrying one is still the version stored, returning the conflict otherwise.
+     */
+    private IndyDataException checkVersion( final StoreKey k, final ArtifactStore store, final ArtifactStore original )
+    {
+        final Long expectedVersion = store.getVersion();
+        if ( expectedVersion != null && ( original == null || expectedVersion != versionOf( original ) ) )
+        {
+            return new IndyDataException( CONFLICT.getStatusCode(),
+                                          "Store {} was modified concurrently, expected version: {}, current: {}", k,
+                                          expectedVersion, original == null ? "deleted" : versionOf( original ) );
+        }
+        return null;
+    }
+
     private Boolean doStore( StoreKey k, ArtifactStore store, ChangeSummary summary,
                              AtomicReference<IndyDataException> error, boolean skipIfExists, boolean fireEvents,
                              EventMetadata eventMetadata )
     {
-        ArtifactStore original = getArtifactStoreInternal( k ).orElse( null );
+        ArtifactStore original = getArtifactStoreForUpdate( k ).orElse( null );
         if ( original == store )
         {
             // if they're the same instance, preUpdate events may not work correctly!
@@ -452,6 +867,16 @@ public abstract class AbstractStoreDataManager
             return true;
         }
 
+        // a store carrying a version is an update of that version, which must still be the stored one
+        final Long expectedVersion = store.getVersion();
+        final IndyDataException conflict = checkVersion( k, store, original );
+        if ( conflict != null )
+        {
+            refreshStaleStores( Collections.singleton( k ) );
+            error.set( conflict );
+            return false;
+        }
+
         if ( eventMetadata != null && summary != null )
         {
             eventMetadata.set( StoreDataManager.CHANGE_SUMMARY, summary );
@@ -461,7 +886,18 @@ public abstract class AbstractStoreDataManager
         logger.debug( "Pre-store actions complete for {}", k );
 
         logger.debug( "Put {} to stores map", k );
-        final ArtifactStore old = putArtifactStoreInternal( store.getKey(), store );
+        store.setVersion( original == null ? 1 : versionOf( original ) + 1 );
+        try
+        {
+            putArtifactStoreInternal( store.getKey(), store, original );
+        }
+        catch ( IndyDataException e )
+        {
+            store.setVersion( expectedVersion );
+            error.set( e );
+            return false;
+        }
+        storeIndex.put( store );
 
         logger.debug( "Starting post-store actions for {}", k );
         postStore( store, original, summary, original != null, fireEvents, eventMetadata );
@@ -522,58 +958,66 @@ public abstract class AbstractStoreDataManager
 
     public Set<Group> affectedBy( final Collection<StoreKey> keys )
     {
-        return affectedByFromStores( keys );
+        return affectedBy( keys, Integer.MAX_VALUE );
+    }
+
+    @Override
+    public Set<Group> affectedBy( final Collection<StoreKey> keys, final int maxDepth )
+    {
+        return affectedByFromStores( keys, maxDepth );
+    }
+
+    protected Set<Group> affectedByFromStores( final Collection<StoreKey> keys, final int maxDepth )
+    {
+        return affectedByFromStores( keys, maxDepth, false );
     }
 
-    protected Set<Group> affectedByFromStores( final Collection<StoreKey> keys )
+    /**
+     * @param skipDisabled leave out the disabled groups, and the groups only affected through them
+     */
+    protected Set<Group> affectedByFromStores( final Collection<StoreKey> keys, final int maxDepth,
+                                               final boolean skipDisabled )
     {
         Logger logger = LoggerFactory.getLogger( getClass() );
-        logger.debug( "Getting groups affected by: {}", keys );
+        logger.debug( "Getting groups affected by: {}, max depth: {}", keys, maxDepth );
 
-        List<StoreKey> toProcess = new ArrayList<>( new HashSet<>( keys ) );
+        Set<StoreKey> level = keys.stream().filter( Objects::nonNull ).collect( Collectors.toSet() );
 
         Set<Group> groups = new HashSet<>();
-        if ( toProcess.isEmpty() )
+        if ( level.isEmpty() )
         {
             return groups;
         }
 
+        // use this to avoid reprocessing groups we've already encountered via another branch of the membership tree
         Set<StoreKey> processed = new HashSet<>();
-        final String packageType = toProcess.get( 0 ).getPackageType();
+        final String packageType = level.iterator().next().getPackageType();
 
-        Set<ArtifactStore> all = this.getStoreKeysByPkgAndType( packageType, group )
-                                     .stream()
-                                     .map( k -> this.getArtifactStoreInternal( k ).orElse( null ) )
-                                     .filter( Objects::nonNull )
-                                     .collect( Collectors.toSet() );
+        Collection<ArtifactStore> all = getArtifactStores( getStoreKeysByPkgAndType( packageType, group ) ).values();
 
-        while ( !toProcess.isEmpty() )
+        // walk up the membership one level at a time, so each level costs a single pass over the groups
+        int depth = 0;
+        while ( !level.isEmpty() && depth++ < maxDepth )
         {
-            // as long as we have another key to process, pop it off the list (remove it) and process it.
-            StoreKey next = toProcess.remove( 0 );
-            if ( processed.contains( next ) )
-            {
-                // if we've already handled this group (via another branch in the group membership tree, etc. then don't bother.
-                continue;
-            }
-
-            // use this to avoid reprocessing groups we've already encountered.
-            processed.add( next );
+            processed.addAll( level );
 
+            final Set<StoreKey> nextLevel = new HashSet<>();
             for ( ArtifactStore store : all )
             {
-                if ( ( store instanceof Group ) && !processed.contains( store.getKey() ) )
+                if ( ( store instanceof Group ) && !processed.contains( store.getKey() ) && !( skipDisabled
+                        && store.isDisabled() ) )
                 {
                     Group g = (Group) store;
-                    if ( g.getConstituents() != null && g.getConstituents().contains( next ) )
+                    if ( g.getConstituents() != null && g.getConstituents().stream().anyMatch( level::contains ) )
                     {
                         groups.add( g );
 
-                        // add this group as another one to process for groups that contain it...and recurse upwards
-                        toProcess.add( g.getKey() );
+                        // process this group in next level for groups that contain it
+                        nextLevel.add( g.getKey() );
                     }
                 }
             }
+            level = nextLevel;
         }
 
         return filterAffectedGroups( groups );
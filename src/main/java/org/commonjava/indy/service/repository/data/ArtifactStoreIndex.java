@@ -0,0 +1,275 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data;
+
+import org.commonjava.indy.service.repository.exception.IndyDataException;
+import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.Group;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.commonjava.indy.service.repository.model.StoreType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Secondary in-memory index of the stores held by a {@link StoreDataManager}, keyed by package type, store type, name
+ * and disabled flag, plus a reverse index from member store to the groups directly containing it. It only keeps
+ * {@link StoreKey}s (plus the disabled flag), so the stores themselves are still resolved through
+ * {@link StoreDataManager#getArtifactStore(StoreKey)}, which lets {@link DefaultArtifactStoreQuery} answer listing
+ * queries in O(result) instead of scanning every store.
+ * <p>
+ * The index is loaded lazily from the data manager on first use and then maintained by
+ * {@link AbstractStoreDataManager} on every store and delete. Writes that race with the initial load win over the
+ * loaded snapshot. It is only used, and maintained, while the data manager sees every change of the stores, see
+ * {@link AbstractStoreDataManager#isLocalIndexSynced()}; queries fall back to the data manager otherwise.
+ */
+public class ArtifactStoreIndex
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    /**
+     * Loads the full store set used to build the index.
+     */
+    @FunctionalInterface
+    public interface Loader
+    {
+        Stream<ArtifactStore> load()
+                throws IndyDataException;
+    }
+
+    private final Loader loader;
+
+    private final BooleanSupplier synced;
+
+    // packageType -> store type -> name -> disabled
+    private final Map<String, Map<StoreType, Map<String, Boolean>>> disabledByKey = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<StoreKey>> keysByName = new ConcurrentHashMap<>();
+
+    // group -> constituents, and the reverse member -> groups containing it
+    private final Map<StoreKey, Set<StoreKey>> membersByGroup = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Set<StoreKey>> groupsByMember = new ConcurrentHashMap<>();
+
+    private final Set<StoreKey> touchedWhileLoading = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean loaded;
+
+    public ArtifactStoreIndex( final Loader loader, final BooleanSupplier synced )
+    {
+        this.loader = loader;
+        this.synced = synced;
+    }
+
+    /**
+     * Make sure the index is loaded. Returns false if it could not be loaded, or may miss changes, in which case the
+     * caller should fall back to a full scan.
+     */
+    public boolean isAvailable()
+    {
+        if ( !synced.getAsBoolean() )
+        {
+            return false;
+        }
+        if ( loaded )
+        {
+            return true;
+        }
+
+        synchronized ( this )
+        {
+            if ( !loaded )
+            {
+                touchedWhileLoading.clear();
+                try
+                {
+                    final AtomicInteger size = new AtomicInteger();
+                    try (Stream<ArtifactStore> stores = loader.load())
+                    {
+                        stores.peek( s -> size.incrementAndGet() )
+                              .filter( s -> !touchedWhileLoading.contains( s.getKey() ) )
+                              .forEach( this::doPut );
+                    }
+                    loaded = true;
+                    logger.info( "Store index loaded, size: {}", size.get() );
+                }
+                catch ( IndyDataException | RuntimeException e )
+                {
+                    logger.warn( "Failed to load store index, fall back to full scan. Reason: {}", e.getMessage() );
+                }
+                finally
+                {
+                    touchedWhileLoading.clear();
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public void put( final ArtifactStore store )
+    {
+        if ( !synced.getAsBoolean() )
+        {
+            return;
+        }
+        if ( !loaded )
+        {
+            touchedWhileLoading.add( store.getKey() );
+        }
+        doPut( store );
+    }
+
+    public void remove( final StoreKey key )
+    {
+        if ( !synced.getAsBoolean() )
+        {
+            return;
+        }
+        if ( !loaded )
+        {
+            touchedWhileLoading.add( key );
+        }
+
+        Map<StoreType, Map<String, Boolean>> byType = disabledByKey.get( key.getPackageType() );
+        if ( byType != null )
+        {
+            Map<String, Boolean> byName = byType.get( key.getType() );
+            if ( byName != null )
+            {
+                byName.remove( key.getName() );
+            }
+        }
+
+        keysByName.computeIfPresent( key.getName(), ( n, keys ) -> {
+            keys.remove( key );
+            return keys.isEmpty() ? null : keys;
+        } );
+
+        if ( key.getType() == StoreType.group )
+        {
+            updateMembers( key, Collections.emptySet() );
+        }
+    }
+
+    /**
+     * Drop the index content, it will be reloaded on next use.
+     */
+    public synchronized void invalidate()
+    {
+        loaded = false;
+        disabledByKey.clear();
+        keysByName.clear();
+        membersByGroup.clear();
+        groupsByMember.clear();
+    }
+
+    /**
+     * Stream keys matching the given criteria. A null argument means no restriction on that criteria.
+     */
+    public Stream<StoreKey> keys( final String packageType, final Set<StoreType> types, final Boolean enabled )
+    {
+        Stream<Map.Entry<String, Map<StoreType, Map<String, Boolean>>>> pkgs;
+        if ( packageType != null )
+        {
+            Map<StoreType, Map<String, Boolean>> byType = disabledByKey.get( packageType );
+            if ( byType == null )
+            {
+                return Stream.empty();
+            }
+            pkgs = Stream.of( Map.entry( packageType, byType ) );
+        }
+        else
+        {
+            pkgs = disabledByKey.entrySet().stream();
+        }
+
+        return pkgs.flatMap( pe -> pe.getValue()
+                                     .entrySet()
+                                     .stream()
+                                     .filter( te -> types == null || types.isEmpty() || types.contains( te.getKey() ) )
+                                     .flatMap( te -> te.getValue()
+                                                       .entrySet()
+                                                       .stream()
+                                                       .filter( ne -> enabled == null
+                                                               || enabled != ne.getValue().booleanValue() )
+                                                       .map( ne -> new StoreKey( pe.getKey(), te.getKey(),
+                                                                                 ne.getKey() ) ) ) );
+    }
+
+    /**
+     * Get all keys, of any package and type, which have the given store name.
+     */
+    public Set<StoreKey> keysByName( final String name )
+    {
+        Set<StoreKey> keys = keysByName.get( name );
+        return keys == null ? Collections.emptySet() : new HashSet<>( keys );
+    }
+
+    /**
+     * Get the keys of the groups which directly list the given store as a constituent.
+     */
+    public Set<StoreKey> groupsContaining( final StoreKey member )
+    {
+        Set<StoreKey> groups = groupsByMember.get( member );
+        return groups == null ? Collections.emptySet() : new HashSet<>( groups );
+    }
+
+    private synchronized void updateMembers( final StoreKey groupKey, final Set<StoreKey> members )
+    {
+        Set<StoreKey> old = members.isEmpty() ? membersByGroup.remove( groupKey ) : membersByGroup.put( groupKey,
+                                                                                                       members );
+        if ( old != null )
+        {
+            for ( StoreKey member : old )
+            {
+                if ( !members.contains( member ) )
+                {
+                    groupsByMember.computeIfPresent( member, ( k, groups ) -> {
+                        groups.remove( groupKey );
+                        return groups.isEmpty() ? null : groups;
+                    } );
+                }
+            }
+        }
+
+        members.forEach(
+                member -> groupsByMember.computeIfAbsent( member, k -> ConcurrentHashMap.newKeySet() ).add( groupKey ) );
+    }
+
+    private void doPut( final ArtifactStore store )
+    {
+        final StoreKey key = store.getKey();
+        disabledByKey.computeIfAbsent( key.getPackageType(), p -> new ConcurrentHashMap<>() )
+                     .computeIfAbsent( key.getType(), t -> new ConcurrentHashMap<>() )
+                     .put( key.getName(), store.isDisabled() );
+        keysByName.computeIfAbsent( key.getName(), n -> ConcurrentHashMap.newKeySet() ).add( key );
+
+        if ( store instanceof Group )
+        {
+            List<StoreKey> constituents = ( (Group) store ).getConstituents();
+            updateMembers( key, constituents == null ? Collections.emptySet() : new HashSet<>( constituents ) );
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.commonjava.indy.service.repository.exception.IndyDataException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -115,6 +116,13 @@ public interface ArtifactStoreQuery<T extends ArtifactStore>
     Set<Group> getGroupsAffectedBy( Collection<StoreKey> keys )
             throws IndyDataException;
 
+    /**
+     * Get the groups affected by the keys up to the given depth of group membership, see
+     * {@link StoreDataManager#affectedBy(Collection, int)}.
+     */
+    Set<Group> getGroupsAffectedBy( Collection<StoreKey> keys, int maxDepth )
+            throws IndyDataException;
+
     RemoteRepository getRemoteRepository( String packageType, String name )
             throws IndyDataException;
 
@@ -143,4 +151,25 @@ public interface ArtifactStoreQuery<T extends ArtifactStore>
 
     List<Group> getAllGroups( String packageType, Boolean enabled )
             throws IndyDataException;
+
+    /**
+     * Non-blocking variant of {@link #getAllRemoteRepositories(String, Boolean)}.
+     */
+    CompletionStage<List<RemoteRepository>> getAllRemoteRepositoriesAsync( String packageType, Boolean enabled );
+
+    /**
+     * Non-blocking variant of {@link #getAllHostedRepositories(String, Boolean)}.
+     */
+    CompletionStage<List<HostedRepository>> getAllHostedRepositoriesAsync( String packageType, Boolean enabled );
+
+    /**
+     * Non-blocking variant of {@link #getAllGroups(String, Boolean)}.
+     */
+    CompletionStage<List<Group>> getAllGroupsAsync( String packageType, Boolean enabled );
+
+    /**
+     * Non-blocking variant of {@link #getOrderedConcreteStoresInGroup(String, String, Boolean)}.
+     */
+    CompletionStage<List<ArtifactStore>> getOrderedConcreteStoresInGroupAsync( String packageType, String groupName,
+                                                                               Boolean enabled );
 }
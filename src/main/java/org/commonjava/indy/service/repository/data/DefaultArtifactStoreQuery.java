@@ -40,7 +40,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
@@ -82,16 +85,34 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
     private final QueryCacheWrapper cacheWrapper;
 
+    private ArtifactStoreIndex storeIndex;
+
+    private FlattenedGroupIndex groupIndex;
+
     public DefaultArtifactStoreQuery( StoreDataManager dataManager, QueryCacheWrapper cacheWrapper )
+    {
+        this( dataManager, cacheWrapper, null, null );
+    }
+
+    public DefaultArtifactStoreQuery( StoreDataManager dataManager, QueryCacheWrapper cacheWrapper,
+                                      ArtifactStoreIndex storeIndex, FlattenedGroupIndex groupIndex )
     {
         logger.debug( "CREATE new default store query with data manager only" );
         this.dataManager = dataManager;
         this.cacheWrapper = cacheWrapper;
+        this.storeIndex = storeIndex;
+        this.groupIndex = groupIndex;
     }
 
     @Override
     public ArtifactStoreQuery<T> rewrap( final StoreDataManager manager )
     {
+        if ( manager != this.dataManager )
+        {
+            // the indexes belong to the original data manager
+            this.storeIndex = null;
+            this.groupIndex = null;
+        }
         this.dataManager = manager;
         return this;
     }
@@ -172,44 +193,75 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     //    @WithSpan
     public Stream<T> stream( Predicate<ArtifactStore> filter )
             throws IndyDataException
+    {
+        if ( isIndexAvailable() )
+        {
+            return resolveIndexed( storeIndex.keys( packageType, types, enabled ), filter ).stream();
+        }
+
+        return dataManager.streamArtifactStores()
+                          .filter( store -> isIncluded( store, filter ) )
+                          .map( store -> (T) store );
+    }
+
+    private boolean isIndexAvailable()
+    {
+        return storeIndex != null && storeIndex.isAvailable();
+    }
+
+    /**
+     * Resolve the stores for the keys found in the index. The stores are checked against the query criteria again, as
+     * the index may have been updated between the key lookup and the resolution of the store.
+     */
+    private List<T> resolveIndexed( final Stream<StoreKey> keys, final Predicate<ArtifactStore> filter )
+            throws IndyDataException
+    {
+        final List<T> result = new ArrayList<>();
+        for ( StoreKey key : keys.collect( Collectors.toList() ) )
+        {
+            ArtifactStore store = dataManager.getArtifactStore( key ).orElse( null );
+            if ( store != null && isIncluded( store, filter ) )
+            {
+                result.add( (T) store );
+            }
+        }
+        return result;
+    }
+
+    private boolean isIncluded( final ArtifactStore store, final Predicate<ArtifactStore> filter )
     {
         /* @formatter:off */
-        return dataManager.
-                  streamArtifactStores()
-                      .filter( ( store ) ->
-                      {
-                          logger.debug( "Checking whether {} is included in stream...", store.getKey() );
-
-                          // Tricky condition here: The flag in the store we're checking is true when DISABLED, while the
-                          // condition we're checking against in this query is true when it's ENABLED. If the two flags equal on another
-                          // that actually means they DISAGREE about the state vs. desired state of the store.
-                          if ( enabled != null && enabled == store.isDisabled() )
-                          {
-                              logger.debug( "Rejected. Store is {}, and we're only looking for enabled state of: {}", store.isDisabled(), enabled );
-                              return false;
-                          }
-
-                          if ( packageType != null && !packageType.equals( store.getPackageType() ) )
-                          {
-                              logger.debug( "Rejected. Store package type is: {}, and we're only looking for package type of: {}", store.getPackageType(), packageType );
-                              return false;
-                          }
-
-                          if ( types != null && !types.contains( store.getType() ) )
-                          {
-                              logger.debug( "Rejected. Store is of type: {}, and we're only looking for: {}", store.getType(), types );
-                              return false;
-                          }
-
-                          if ( filter != null && !filter.test( store ))
-                          {
-                              logger.debug( "Rejected. Additional filtering failed for store: {}", store.getKey() );
-                              return false;
-                          }
-
-                          logger.debug( "Store accepted for stream: {}", store.getKey() );
-                          return true;
-                      } ).map( store -> (T) store );
+        logger.debug( "Checking whether {} is included in stream...", store.getKey() );
+
+        // Tricky condition here: The flag in the store we're checking is true when DISABLED, while the
+        // condition we're checking against in this query is true when it's ENABLED. If the two flags equal on another
+        // that actually means they DISAGREE about the state vs. desired state of the store.
+        if ( enabled != null && enabled == store.isDisabled() )
+        {
+            logger.debug( "Rejected. Store is {}, and we're only looking for enabled state of: {}", store.isDisabled(), enabled );
+            return false;
+        }
+
+        if ( packageType != null && !packageType.equals( store.getPackageType() ) )
+        {
+            logger.debug( "Rejected. Store package type is: {}, and we're only looking for package type of: {}", store.getPackageType(), packageType );
+            return false;
+        }
+
+        if ( types != null && !types.contains( store.getType() ) )
+        {
+            logger.debug( "Rejected. Store is of type: {}, and we're only looking for: {}", store.getType(), types );
+            return false;
+        }
+
+        if ( filter != null && !filter.test( store ))
+        {
+            logger.debug( "Rejected. Additional filtering failed for store: {}", store.getKey() );
+            return false;
+        }
+
+        logger.debug( "Store accepted for stream: {}", store.getKey() );
+        return true;
         /* @formatter:on */
     }
 
@@ -241,6 +293,10 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     public T getByName( String name )
             throws IndyDataException
     {
+        if ( isIndexAvailable() )
+        {
+            return resolveIndexed( storeIndex.keysByName( name ).stream(), null ).stream().findFirst().orElse( null );
+        }
         return stream( store -> name.equals( store.getName() ) ).findFirst().orElse( null );
     }
 
@@ -262,6 +318,28 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     //    @WithSpan
     public Set<Group> getGroupsContaining( StoreKey storeKey, Boolean enabled )
     {
+        if ( isIndexAvailable() )
+        {
+            try
+            {
+                final Set<Group> result = new HashSet<>();
+                for ( StoreKey key : storeIndex.groupsContaining( storeKey ) )
+                {
+                    Group g = (Group) dataManager.getArtifactStore( key ).orElse( null );
+                    if ( g != null && enabled.equals( !g.isDisabled() ) && g.getConstituents().contains( storeKey ) )
+                    {
+                        result.add( g );
+                    }
+                }
+                return result;
+            }
+            catch ( IndyDataException e )
+            {
+                logger.warn( "Failed to resolve indexed groups containing {}, fall back to query. Reason: {}",
+                             storeKey, e.getMessage() );
+            }
+        }
+
         return getAllGroups( storeKey.getPackageType(), enabled ).stream()
                                                                  .filter(
                                                                          g -> g.getConstituents().contains( storeKey ) )
@@ -390,12 +468,19 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
                                                                 final Boolean enabled )
             throws IndyDataException
     {
+        if ( packageType != null && groupIndex != null && groupIndex.isAvailable() )
+        {
+            return groupIndex.get( new StoreKey( packageType, group, groupName ), enabled,
+                                   () -> getGroupOrdering( packageType, groupName, enabled, false, true, null ) );
+        }
+
         AtomicReference<IndyDataException> holder = new AtomicReference<>();
+        final Set<StoreKey> dependencies = new HashSet<>();
         Supplier<Collection<? extends ArtifactStore>> storeProvider = () -> {
             logger.trace( "START: default store-query ordered-concrete-stores-in-group" );
             try
             {
-                return getGroupOrdering( packageType, groupName, enabled, false, true );
+                return getGroupOrdering( packageType, groupName, enabled, false, true, dependencies );
             }
             catch ( IndyDataException e )
             {
@@ -414,7 +499,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
         try
         {
             stores = cacheWrapper.computeIfAbsent( queryKey, storeProvider, STORE_QUERY_EXPIRATION_IN_MINS,
-                                                   Boolean.FALSE );
+                                                   Boolean.FALSE, dependencies );
         }
         catch ( IllegalStateException e )
         {
@@ -443,7 +528,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
                                                         final Boolean enabled )
             throws IndyDataException
     {
-        return getGroupOrdering( packageType, groupName, enabled, true, false );
+        return getGroupOrdering( packageType, groupName, enabled, true, false, null );
     }
 
     @Override
@@ -477,7 +562,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
         try
         {
             stores = cacheWrapper.computeIfAbsent( queryKeys, storeProvider, STORE_QUERY_EXPIRATION_IN_MINS,
-                                                   Boolean.FALSE );
+                                                   Boolean.FALSE, queryKeys );
         }
         catch ( IllegalStateException e )
         {
@@ -491,6 +576,17 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
         return stores.stream().map( g -> (Group) g ).collect( Collectors.toSet() );
     }
 
+    /**
+     * Depth limited results are not cached, the query cache entries of getGroupsAffectedBy are keyed by the store keys
+     * only.
+     */
+    @Override
+    public Set<Group> getGroupsAffectedBy( Collection<StoreKey> keys, int maxDepth )
+            throws IndyDataException
+    {
+        return dataManager.affectedBy( keys, maxDepth );
+    }
+
     public Stream<StoreKey> keyStream()
     {
         return keyStream( null );
@@ -499,7 +595,12 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     public Stream<StoreKey> keyStream( Predicate<StoreKey> filterPredicate )
     {
         final Stream<StoreKey> storeKeys;
-        if ( StringUtils.isNotBlank( this.packageType ) )
+        if ( isIndexAvailable() )
+        {
+            storeKeys = storeIndex.keys( StringUtils.isNotBlank( this.packageType ) ? this.packageType : null, null,
+                                         null );
+        }
+        else if ( StringUtils.isNotBlank( this.packageType ) )
         {
             storeKeys = dataManager.getStoreKeysByPkg( this.packageType ).stream();
         }
@@ -556,11 +657,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     @Override
     public List<RemoteRepository> getAllRemoteRepositories( String packageType, Boolean enabled )
     {
-        return dataManager.getArtifactStoresByPkgAndType( packageType, StoreType.remote )
-                          .stream()
-                          .filter( item -> enabled.equals( !item.isDisabled() ) )
-                          .map( item -> (RemoteRepository) item )
-                          .collect( Collectors.toList() );
+        return getAllByPkgAndType( packageType, StoreType.remote, enabled );
     }
 
     @Override
@@ -572,11 +669,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     @Override
     public List<HostedRepository> getAllHostedRepositories( String packageType, Boolean enabled )
     {
-        return dataManager.getArtifactStoresByPkgAndType( packageType, StoreType.hosted )
-                          .stream()
-                          .filter( item -> enabled.equals( !item.isDisabled() ) )
-                          .map( item -> (HostedRepository) item )
-                          .collect( Collectors.toList() );
+        return getAllByPkgAndType( packageType, StoreType.hosted, enabled );
     }
 
     @Override
@@ -588,16 +681,158 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     @Override
     public List<Group> getAllGroups( String packageType, Boolean enabled )
     {
-        return dataManager.getArtifactStoresByPkgAndType( packageType, group )
+        return getAllByPkgAndType( packageType, group, enabled );
+    }
+
+    private <S extends ArtifactStore> List<S> getAllByPkgAndType( final String packageType, final StoreType type,
+                                                                  final Boolean enabled )
+    {
+        if ( isIndexAvailable() )
+        {
+            try
+            {
+                final List<S> result = new ArrayList<>();
+                for ( StoreKey key : storeIndex.keys( packageType, Collections.singleton( type ), enabled )
+                                               .collect( Collectors.toList() ) )
+                {
+                    ArtifactStore store = dataManager.getArtifactStore( key ).orElse( null );
+                    if ( store != null && enabled.equals( !store.isDisabled() ) )
+                    {
+                        result.add( (S) store );
+                    }
+                }
+                return result;
+            }
+            catch ( IndyDataException e )
+            {
+                logger.warn( "Failed to resolve indexed stores for {}:{}, fall back to query. Reason: {}", packageType,
+                             type, e.getMessage() );
+            }
+        }
+
+        return dataManager.getArtifactStoresByPkgAndType( packageType, type )
                           .stream()
                           .filter( item -> enabled.equals( !item.isDisabled() ) )
-                          .map( item -> (Group) item )
+                          .map( item -> (S) item )
                           .collect( Collectors.toList() );
     }
 
+    @Override
+    public CompletionStage<List<RemoteRepository>> getAllRemoteRepositoriesAsync( String packageType, Boolean enabled )
+    {
+        return getAllByPkgAndTypeAsync( packageType, StoreType.remote, enabled );
+    }
+
+    @Override
+    public CompletionStage<List<HostedRepository>> getAllHostedRepositoriesAsync( String packageType, Boolean enabled )
+    {
+        return getAllByPkgAndTypeAsync( packageType, StoreType.hosted, enabled );
+    }
+
+    @Override
+    public CompletionStage<List<Group>> getAllGroupsAsync( String packageType, Boolean enabled )
+    {
+        return getAllByPkgAndTypeAsync( packageType, group, enabled );
+    }
+
+    private <S extends ArtifactStore> CompletionStage<List<S>> getAllByPkgAndTypeAsync( final String packageType,
+                                                                                       final StoreType type,
+                                                                                       final Boolean enabled )
+    {
+        final CompletionStage<? extends Collection<ArtifactStore>> stores;
+        if ( isIndexAvailable() )
+        {
+            stores = dataManager.getArtifactStoresAsync(
+                                        storeIndex.keys( packageType, Collections.singleton( type ), enabled )
+                                                  .collect( Collectors.toSet() ) )
+                                .thenApply( Map::values );
+        }
+        else
+        {
+            stores = dataManager.getArtifactStoresByPkgAndTypeAsync( packageType, type );
+        }
+
+        return stores.thenApply( found -> found.stream()
+                                               .filter( item -> enabled.equals( !item.isDisabled() ) )
+                                               .map( item -> (S) item )
+                                               .collect( Collectors.toList() ) );
+    }
+
+    /**
+     * Without the flattened group index this falls back to the cached synchronous lookup.
+     */
+    @Override
+    public CompletionStage<List<ArtifactStore>> getOrderedConcreteStoresInGroupAsync( final String packageType,
+                                                                                      final String groupName,
+                                                                                      final Boolean enabled )
+    {
+        if ( packageType == null || groupIndex == null || !groupIndex.isAvailable() )
+        {
+            try
+            {
+                return CompletableFuture.completedFuture(
+                        getOrderedConcreteStoresInGroup( packageType, groupName, enabled ) );
+            }
+            catch ( IndyDataException e )
+            {
+                return CompletableFuture.failedFuture( e );
+            }
+        }
+
+        final StoreKey groupKey = new StoreKey( packageType, group, groupName );
+        return groupIndex.getAsync( groupKey, enabled, () -> dataManager.getArtifactStoreAsync( groupKey )
+                                                                        .thenCompose( master -> getMembersOrderingAsync(
+                                                                                (Group) master.orElse( null ),
+                                                                                enabled, new ArrayList<>(),
+                                                                                new HashSet<>() ) ) );
+    }
+
+    /**
+     * Async counterpart of {@link #getMembersOrdering(Group, Boolean, List, boolean, boolean, Set)} for concrete
+     * stores with group recursion: each level is loaded with one batch lookup, and nested groups are walked in member
+     * order so the result ordering is the same.
+     */
+    private CompletionStage<List<ArtifactStore>> getMembersOrderingAsync( final Group groupRepo, final Boolean enabled,
+                                                                          final List<ArtifactStore> result,
+                                                                          final Set<StoreKey> seen )
+    {
+        if ( groupRepo == null || groupRepo.isDisabled() && enabled )
+        {
+            return CompletableFuture.completedFuture( result );
+        }
+
+        final List<StoreKey> members = new ArrayList<>( groupRepo.getConstituents() );
+        return dataManager.getArtifactStoresAsync(
+                members.stream().filter( key -> !seen.contains( key ) ).collect( Collectors.toSet() ) )
+                          .thenCompose( loaded -> {
+                              CompletionStage<List<ArtifactStore>> chain = CompletableFuture.completedFuture( result );
+                              for ( StoreKey key : members )
+                              {
+                                  chain = chain.thenCompose( r -> {
+                                      if ( !seen.add( key ) )
+                                      {
+                                          return CompletableFuture.completedFuture( r );
+                                      }
+
+                                      final ArtifactStore store = loaded.get( key );
+                                      if ( key.getType() == group )
+                                      {
+                                          return getMembersOrderingAsync( (Group) store, enabled, r, seen );
+                                      }
+                                      if ( store != null && ( store.isDisabled() != enabled ) )
+                                      {
+                                          r.add( store );
+                                      }
+                                      return CompletableFuture.completedFuture( r );
+                                  } );
+                              }
+                              return chain;
+                          } );
+    }
+
     private List<ArtifactStore> getGroupOrdering( final String packageType, final String groupName,
                                                   final Boolean enabled, final boolean includeGroups,
-                                                  final boolean recurseGroups )
+                                                  final boolean recurseGroups, final Set<StoreKey> visited )
             throws IndyDataException
     {
         if ( packageType == null )
@@ -605,8 +840,13 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
             throw new IndyDataException( "packageType must be set on the query before calling this method!" );
         }
 
-        final Group master =
-                (Group) dataManager.getArtifactStore( new StoreKey( packageType, group, groupName ) ).orElse( null );
+        final StoreKey masterKey = new StoreKey( packageType, group, groupName );
+        if ( visited != null )
+        {
+            visited.add( masterKey );
+        }
+
+        final Group master = (Group) dataManager.getArtifactStore( masterKey ).orElse( null );
         if ( master == null )
         {
             return emptyList();
@@ -614,12 +854,13 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
         final List<ArtifactStore> result = new ArrayList<>();
 
-        return getMembersOrdering( master, enabled, result, includeGroups, recurseGroups );
+        return getMembersOrdering( master, enabled, result, includeGroups, recurseGroups, visited );
     }
 
     private List<ArtifactStore> getMembersOrdering( final Group groupRepo, final Boolean enabled,
                                                     @Nonnull final List<ArtifactStore> result,
-                                                    final boolean includeGroups, final boolean recurseGroups )
+                                                    final boolean includeGroups, final boolean recurseGroups,
+                                                    final Set<StoreKey> visited )
             throws IndyDataException
     {
 
@@ -632,47 +873,42 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
                 new HashSet<>() :
                 result.stream().map( ArtifactStore::getKey ).collect( Collectors.toSet() );
 
-        AtomicReference<IndyDataException> errorRef = new AtomicReference<>();
-
         List<StoreKey> members = new ArrayList<>( groupRepo.getConstituents() );
+        if ( visited != null )
+        {
+            // record every member looked at, so the result depends on missing and disabled members as well
+            visited.addAll( members );
+        }
         if ( includeGroups )
         {
             result.add( groupRepo );
         }
 
-        members.forEach( ( key ) -> {
+        // load all the members of this level in one batch
+        final Map<StoreKey, ArtifactStore> loaded = dataManager.getArtifactStores(
+                members.stream().filter( key -> !seen.contains( key ) ).collect( Collectors.toSet() ) );
+
+        for ( StoreKey key : members )
+        {
             if ( !seen.contains( key ) )
             {
                 seen.add( key );
                 final StoreType type = key.getType();
-                try
+                if ( recurseGroups && type == group )
                 {
-                    if ( recurseGroups && type == group )
-                    {
-                        // if we're here, we're definitely recursing groups...
-                        Group group = (Group) dataManager.getArtifactStore( key ).orElse( null );
-                        getMembersOrdering( group, enabled, result, includeGroups, true );
-                    }
-                    else
-                    {
-                        final ArtifactStore store = dataManager.getArtifactStore( key ).orElse( null );
-                        if ( store != null && ( store.isDisabled() != enabled ) )
-                        {
-                            result.add( store );
-                        }
-                    }
+                    // if we're here, we're definitely recursing groups...
+                    Group group = (Group) loaded.get( key );
+                    getMembersOrdering( group, enabled, result, includeGroups, true, visited );
                 }
-                catch ( IndyDataException e )
+                else
                 {
-                    errorRef.set( e );
+                    final ArtifactStore store = loaded.get( key );
+                    if ( store != null && ( store.isDisabled() != enabled ) )
+                    {
+                        result.add( store );
+                    }
                 }
             }
-        } );
-
-        IndyDataException error = errorRef.get();
-        if ( error != null )
-        {
-            throw error;
         }
 
         return result;
@@ -682,14 +918,25 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     {
         final static Integer STORE_QUERY_EXPIRATION_IN_MINS = 15;
 
+        final static String ARTIFACT_STORE_QUERY = "artifact-store-query";
+
         private final boolean cacheEnabled;
 
         private final CacheProducer cacheProducer;
 
+        private final QueryCacheDependencies dependencies;
+
         QueryCacheWrapper( final boolean cacheEnabled, final CacheProducer cacheProducer )
+        {
+            this( cacheEnabled, cacheProducer, null );
+        }
+
+        QueryCacheWrapper( final boolean cacheEnabled, final CacheProducer cacheProducer,
+                           final QueryCacheDependencies dependencies )
         {
             this.cacheEnabled = cacheEnabled;
             this.cacheProducer = cacheProducer;
+            this.dependencies = dependencies;
         }
 
         boolean isCacheEnabled()
@@ -697,22 +944,25 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
             return cacheEnabled;
         }
 
+        /**
+         * @param queryDependencies store keys the result was computed from, filled in by the storeProvider. The keys of
+         * the returned stores are always tracked as dependencies as well.
+         */
         @SuppressWarnings( "SameParameterValue" )
         Collection<? extends ArtifactStore> computeIfAbsent( Object key,
                                                              Supplier<Collection<? extends ArtifactStore>> storeProvider,
-                                                             int expirationMins, boolean forceQuery )
+                                                             int expirationMins, boolean forceQuery,
+                                                             Set<StoreKey> queryDependencies )
         {
             if ( !isCacheEnabled() )
             {
                 logger.trace( "Store query cache is not enabled." );
                 return storeProvider.get();
             }
-            //            TODO: As here introduced a the query cache, we need to think about update this cache when store event happen.
             if ( cacheProducer == null )
             {
                 throw new IllegalStateException( "No cache producer, so need to bypass caching" );
             }
-            final String ARTIFACT_STORE_QUERY = "artifact-store-query";
 
             logger.debug( "computeIfAbsent, cache: {}, key: {}", ARTIFACT_STORE_QUERY, key );
 
@@ -723,17 +973,38 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
             {
                 logger.trace( "Entry not found, run put, expirationMins: {}", expirationMins );
 
+                final long generation = dependencies == null ? 0 : dependencies.generation();
+
                 stores = storeProvider.get();
 
                 if ( stores != null )
                 {
-                    if ( expirationMins > 0 )
+                    final Collection<? extends ArtifactStore> result = stores;
+                    Runnable cachePut = () -> {
+                        if ( expirationMins > 0 )
+                        {
+                            cache.put( key, result, expirationMins, TimeUnit.MINUTES );
+                        }
+                        else
+                        {
+                            cache.put( key, result );
+                        }
+                    };
+
+                    if ( dependencies == null )
                     {
-                        cache.put( key, stores, expirationMins, TimeUnit.MINUTES );
+                        cachePut.run();
                     }
                     else
                     {
-                        cache.put( key, stores );
+                        final Set<StoreKey> deps =
+                                queryDependencies == null ? new HashSet<>() : new HashSet<>( queryDependencies );
+                        result.forEach( s -> deps.add( s.getKey() ) );
+                        if ( !dependencies.register( key, deps, generation, Math.max( expirationMins, 0 ),
+                                                    TimeUnit.MINUTES, cachePut ) )
+                        {
+                            logger.debug( "Stores changed while computing {}, result is not cached", key );
+                        }
                     }
                 }
             }
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data;
+
+import org.commonjava.indy.service.repository.exception.IndyDataException;
+import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Materialized, flattened membership (ordered concrete stores) of groups. Entries are computed on first request and
+ * dropped by {@link #invalidate(StoreKey)} whenever the changed store is the group itself or any store reachable
+ * from it through nested groups, which {@link AbstractStoreDataManager} calls from postStore / postDelete. The
+ * ancestors of a changed store are found through the reverse index in {@link ArtifactStoreIndex}, so this is only
+ * usable while that index is available.
+ */
+public class FlattenedGroupIndex
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    /**
+     * Computes the flattened membership of a group.
+     */
+    @FunctionalInterface
+    public interface Flattener
+    {
+        List<ArtifactStore> flatten()
+                throws IndyDataException;
+    }
+
+    private final ArtifactStoreIndex storeIndex;
+
+    // group -> enabled state -> ordered concrete stores
+    private final Map<StoreKey, Map<Boolean, List<ArtifactStore>>> flattened = new ConcurrentHashMap<>();
+
+    private long generation;
+
+    public FlattenedGroupIndex( final ArtifactStoreIndex storeIndex )
+    {
+        this.storeIndex = storeIndex;
+    }
+
+    public boolean isAvailable()
+    {
+        return storeIndex.isAvailable();
+    }
+
+    /**
+     * Get the flattened membership for the group, computing it if it is not materialized yet. A result computed while
+     * an invalidation happened is returned but not kept.
+     */
+    public List<ArtifactStore> get( final StoreKey groupKey, final Boolean enabled, final Flattener flattener )
+            throws IndyDataException
+    {
+        if ( enabled == null )
+        {
+            return flattener.flatten();
+        }
+
+        Map<Boolean, List<ArtifactStore>> byState = flattened.get( groupKey );
+        List<ArtifactStore> result = byState == null ? null : byState.get( enabled );
+        if ( result != null )
+        {
+            return new ArrayList<>( result );
+        }
+
+        final long gen;
+        synchronized ( this )
+        {
+            gen = generation;
+        }
+
+        result = Collections.unmodifiableList( new ArrayList<>( flattener.flatten() ) );
+
+        synchronized ( this )
+        {
+            if ( gen == generation )
+            {
+                flattened.computeIfAbsent( groupKey, k -> new ConcurrentHashMap<>() ).put( enabled, result );
+            }
+        }
+
+        return new ArrayList<>( result );
+    }
+
+    /**
+     * Non-blocking variant of {@link #get(StoreKey, Boolean, Flattener)}.
+     */
+    public CompletionStage<List<ArtifactStore>> getAsync( final StoreKey groupKey, final Boolean enabled,
+                                                          final Supplier<CompletionStage<List<ArtifactStore>>> flattener )
+    {
+        if ( enabled == null )
+        {
+            return flattener.get();
+        }
+
+        Map<Boolean, List<ArtifactStore>> byState = flattened.get( groupKey );
+        List<ArtifactStore> cached = byState == null ? null : byState.get( enabled );
+        if ( cached != null )
+        {
+            return CompletableFuture.completedFuture( new ArrayList<>( cached ) );
+        }
+
+        final long gen;
+        synchronized ( this )
+        {
+            gen = generation;
+        }
+
+        return flattener.get().thenApply( stores -> {
+            List<ArtifactStore> result = Collections.unmodifiableList( new ArrayList<>( stores ) );
+            synchronized ( this )
+            {
+                if ( gen == generation )
+                {
+                    flattened.computeIfAbsent( groupKey, k -> new ConcurrentHashMap<>() ).put( enabled, result );
+                }
+            }
+            return new ArrayList<>( result );
+        } );
+    }
+
+    /**
+     * Drop the flattened membership of the given store (if it is a group) and of every group containing it, directly
+     * or through nested groups.
+     */
+    public synchronized void invalidate( final StoreKey changed )
+    {
+        generation++;
+
+        final Set<StoreKey> processed = new HashSet<>();
+        final LinkedList<StoreKey> toProcess = new LinkedList<>();
+        toProcess.add( changed );
+        while ( !toProcess.isEmpty() )
+        {
+            StoreKey key = toProcess.removeFirst();
+            if ( processed.add( key ) )
+            {
+                flattened.remove( key );
+                toProcess.addAll( storeIndex.groupsContaining( key ) );
+            }
+        }
+
+        logger.trace( "Invalidated flattened membership for change of {}, {} store(s) checked", changed,
+                      processed.size() );
+    }
+
+    public synchronized void clear()
+    {
+        generation++;
+        flattened.clear();
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data;
+
+import org.commonjava.indy.service.repository.model.StoreKey;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks which store keys each entry of the artifact-store-query cache was computed from, so that a store change
+ * evicts exactly the dependent entries. A generation counter is bumped on every eviction, and results computed
+ * across an eviction are not cached, so a query racing with a store update can not put a stale entry back.
+ * Entries put with an expiration are forgotten once it passes, as the cache drops them by then.
+ */
+public class QueryCacheDependencies
+{
+    private final Map<StoreKey, Set<Object>> dependents = new HashMap<>();
+
+    private final Map<Object, Registration> registrations = new HashMap<>();
+
+    private final PriorityQueue<Registration> expirations =
+            new PriorityQueue<>( Comparator.comparingLong( r -> r.expiresAt ) );
+
+    private final LongSupplier clock;
+
+    private long generation;
+
+    public QueryCacheDependencies()
+    {
+        this( System::currentTimeMillis );
+    }
+
+    QueryCacheDependencies( final LongSupplier clock )
+    {
+        this.clock = clock;
+    }
+
+    public synchronized long generation()
+    {
+        return generation;
+    }
+
+    /**
+     * Run the cache put and record its dependencies, unless an eviction happened since the given generation.
+     *
+     * @return true if the entry was cached
+     */
+    public synchronized boolean register( final Object cacheKey, final Collection<StoreKey> dependencies,
+                                          final long computedAt, final Runnable cachePut )
+    {
+        return register( cacheKey, dependencies, computedAt, 0, TimeUnit.MILLISECONDS, cachePut );
+    }
+
+    /**
+     * Same as {@link #register(Object, Collection, long, Runnable)} for a cache put expiring after the given time,
+     * 0 if it does not expire.
+     */
+    public synchronized boolean register( final Object cacheKey, final Collection<StoreKey> dependencies,
+                                          final long computedAt, final long expiration, final TimeUnit unit,
+                                          final Runnable cachePut )
+    {
+        final long now = clock.getAsLong();
+        purgeExpired( now );
+
+        if ( computedAt != generation )
+        {
+            return false;
+        }
+
+        cachePut.run();
+
+        unlink( cacheKey );
+        final Registration registration = new Registration( cacheKey, new HashSet<>( dependencies ),
+                                                            expiration > 0 ? now + unit.toMillis( expiration ) : 0 );
+        registrations.put( cacheKey, registration );
+        registration.dependencies.forEach( k -> dependents.computeIfAbsent( k, d -> new HashSet<>() ).add( cacheKey ) );
+        if ( registration.expiresAt > 0 )
+        {
+            expirations.add( registration );
+        }
+        return true;
+    }
+
+    /**
+     * Evict the cache entries depending on any of the changed store keys.
+     */
+    public synchronized void evict( final Collection<StoreKey> changed, final Consumer<Object> cacheRemove )
+    {
+        generation++;
+        purgeExpired( clock.getAsLong() );
+
+        final Set<Object> toEvict = new HashSet<>();
+        changed.forEach( k -> {
+            Set<Object> keys = dependents.get( k );
+            if ( keys != null )
+            {
+                toEvict.addAll( keys );
+            }
+        } );
+        toEvict.forEach( this::unlink );
+        toEvict.forEach( cacheRemove );
+    }
+
+    public synchronized void clear( final Consumer<Object> cacheRemove )
+    {
+        generation++;
+
+        final Set<Object> toEvict = new HashSet<>( registrations.keySet() );
+        dependents.clear();
+        registrations.clear();
+        expirations.clear();
+        toEvict.forEach( cacheRemove );
+    }
+
+    synchronized int size()
+    {
+        return registrations.size();
+    }
+
+    private void purgeExpired( final long now )
+    {
+        while ( !expirations.isEmpty() && expirations.peek().expiresAt <= now )
+        {
+            final Registration expired = expirations.poll();
+            // only if the entry was not put again since
+            if ( registrations.get( expired.cacheKey ) == expired )
+            {
+                unlink( expired.cacheKey );
+            }
+        }
+    }
+
+    private void unlink( final Object cacheKey )
+    {
+        final Registration registration = registrations.remove( cacheKey );
+        if ( registration == null )
+        {
+            return;
+        }
+
+        registration.dependencies.forEach( k -> {
+            Set<Object> keys = dependents.get( k );
+            if ( keys != null )
+            {
+                keys.remove( cacheKey );
+                if ( keys.isEmpty() )
+                {
+                    dependents.remove( k );
+                }
+            }
+        } );
+    }
+
+    private static final class Registration
+    {
+        private final Object cacheKey;
+
+        private final Set<StoreKey> dependencies;
+
+        private final long expiresAt;
+
+        private Registration( final Object cacheKey, final Set<StoreKey> dependencies, final long expiresAt )
+        {
+            this.cacheKey = cacheKey;
+            this.dependencies = dependencies;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
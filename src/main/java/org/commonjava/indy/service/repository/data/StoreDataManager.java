@@ -22,12 +22,14 @@ import org.commonjava.indy.service.repository.model.Group;
 import org.commonjava.indy.service.repository.model.StoreKey;
 import org.commonjava.indy.service.repository.model.StoreType;
 import org.commonjava.indy.service.repository.audit.ChangeSummary;
+import org.commonjava.indy.service.repository.concurrent.LockStats;
 import org.commonjava.indy.service.repository.exception.IndyDataException;
 
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Stream;
 
 /**
@@ -75,6 +77,28 @@ public interface StoreDataManager
     Optional<ArtifactStore> getArtifactStore( StoreKey key )
             throws IndyDataException;
 
+    /**
+     * Return the {@link ArtifactStore} instances corresponding to the given keys, fetched in one batch. Keys without
+     * a store are absent from the result.
+     */
+    Map<StoreKey, ArtifactStore> getArtifactStores( Collection<StoreKey> keys )
+            throws IndyDataException;
+
+    /**
+     * Non-blocking variant of {@link #getArtifactStore(StoreKey)}.
+     */
+    CompletionStage<Optional<ArtifactStore>> getArtifactStoreAsync( StoreKey key );
+
+    /**
+     * Non-blocking variant of {@link #getArtifactStores(Collection)}.
+     */
+    CompletionStage<Map<StoreKey, ArtifactStore>> getArtifactStoresAsync( Collection<StoreKey> keys );
+
+    /**
+     * Non-blocking variant of {@link #getArtifactStoresByPkgAndType(String, StoreType)}.
+     */
+    CompletionStage<Set<ArtifactStore>> getArtifactStoresByPkgAndTypeAsync( String packageType, StoreType storeType );
+
     /**
      * Return the full list of {@link ArtifactStore} instances of a given {@link StoreType} (hosted, remote, or group) available on the system.
      */
@@ -102,6 +126,31 @@ public interface StoreDataManager
                                 boolean fireEvents, EventMetadata eventMetadata )
             throws IndyDataException;
 
+    /**
+     * Store several modified or new {@link ArtifactStore} instances as one unit: their locks are taken in key order,
+     * all the stores are checked before any is written, and the change events are fired once for all of them. If one
+     * of the stores fails its version check, none is stored.
+     */
+    void storeArtifactStores( Collection<ArtifactStore> stores, ChangeSummary summary, boolean fireEvents,
+                              EventMetadata eventMetadata )
+            throws IndyDataException;
+
+    /**
+     * Store new {@link ArtifactStore} instances together like {@link #storeArtifactStores}, skipping the ones which
+     * already exist. The affected-by mapping of the stored groups is not refreshed, which is left to
+     * {@link #initAffectedBy(Collection)} once all the stores are in.
+     *
+     * @return the keys of the stores actually stored
+     */
+    Set<StoreKey> storeNewArtifactStores( Collection<ArtifactStore> stores, ChangeSummary summary, boolean fireEvents,
+                                          EventMetadata eventMetadata )
+            throws IndyDataException;
+
+    /**
+     * Add the affected-by mapping of groups stored by {@link #storeNewArtifactStores}.
+     */
+    void initAffectedBy( Collection<Group> groups );
+
     /**
      * Delete the {@link ArtifactStore} corresponding to the given {@link StoreKey}. If the store doesn't exist, simply return (don't fail).
      * @param eventMetadata TODO
@@ -137,6 +186,11 @@ public interface StoreDataManager
      */
     boolean isStarted();
 
+    /**
+     * Get the contention statistics of the locks serializing the store updates on this node.
+     */
+    LockStats getLockStats();
+
     /**
      * Check if store is a readonly hosted repository. Return true only when store is a readonly {@link HostedRepository}
      */
@@ -156,6 +210,13 @@ public interface StoreDataManager
     Set<Group> affectedBy( Collection<StoreKey> keys )
             throws IndyDataException;
 
+    /**
+     * Get affected-by groups, following the group membership up to the given depth only: 1 returns the groups
+     * directly containing the keys, 2 adds the groups containing those, and so on.
+     */
+    Set<Group> affectedBy( Collection<StoreKey> keys, int maxDepth )
+            throws IndyDataException;
+
     /**
      * Get affected-by groups from event metadata if provided.
      * @param keys -
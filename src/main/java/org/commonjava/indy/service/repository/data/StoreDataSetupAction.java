@@ -18,7 +18,9 @@ package org.commonjava.indy.service.repository.data;
 import io.quarkus.runtime.Startup;
 import org.commonjava.event.common.EventMetadata;
 import org.commonjava.indy.service.repository.audit.ChangeSummary;
+import org.commonjava.indy.service.repository.change.audit.StoreAuditManager;
 import org.commonjava.indy.service.repository.config.IndyRepositoryConfiguration;
+import org.commonjava.indy.service.repository.data.cassandra.AffectedStoreMaintenance;
 import org.commonjava.indy.service.repository.data.cassandra.CassandraStoreDataManager;
 import org.commonjava.indy.service.repository.exception.IndyDataException;
 import org.commonjava.indy.service.repository.exception.IndyLifecycleException;
@@ -33,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.util.concurrent.CompletableFuture;
 
 import static org.commonjava.indy.service.repository.model.pkg.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
 
@@ -50,6 +53,12 @@ public class StoreDataSetupAction
     @Inject
     IndyRepositoryConfiguration repoConfig;
 
+    @Inject
+    AffectedStoreMaintenance affectedStoreMaintenance;
+
+    @Inject
+    StoreAuditManager auditManager;
+
     @PostConstruct
     public void start()
     {
@@ -73,9 +82,32 @@ public class StoreDataSetupAction
 
             if ( storeManager instanceof CassandraStoreDataManager )
             {
+                ( (CassandraStoreDataManager) storeManager ).initSnapshot();
+
                 logger.info( "Init the cache of remote stores based on the store data" );
 
                 ( (CassandraStoreDataManager) storeManager ).initRemoteStoresCache();
+
+                CompletableFuture.runAsync( ( (CassandraStoreDataManager) storeManager )::migrateLegacyAttributes )
+                                 .exceptionally( e -> {
+                                     logger.error( "Failed to migrate store attributes", e );
+                                     return null;
+                                 } );
+
+                // only one node of the cluster gets to resume it
+                if ( affectedStoreMaintenance.hasUnfinishedRebuild() && affectedStoreMaintenance.startRebuild(
+                        false ) )
+                {
+                    logger.info( "Resumed the interrupted rebuild of the affected_store index" );
+                }
+            }
+
+            if ( repoConfig.repoAuditEnabled() )
+            {
+                CompletableFuture.runAsync( auditManager::migrateLegacyAuditLog ).exceptionally( e -> {
+                    logger.error( "Failed to migrate the audit log", e );
+                    return null;
+                } );
             }
 
             if ( storeManager.query().getRemoteRepository( MAVEN_PKG_KEY, "central" ) == null )
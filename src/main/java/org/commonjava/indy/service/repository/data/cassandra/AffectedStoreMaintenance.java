@@ -0,0 +1,416 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data.cassandra;
+
+import org.commonjava.indy.service.repository.data.annotations.ClusterStoreDataManager;
+import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.Group;
+import org.commonjava.indy.service.repository.model.PackageTypes;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.commonjava.indy.service.repository.model.StoreType;
+import org.commonjava.indy.service.repository.model.dto.AffectedStoreJobDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.commonjava.indy.service.repository.data.cassandra.CassandraStoreUtil.MODULO_VALUE;
+
+/**
+ * Maintenance jobs of the affected_store reverse index, run in the background with their progress available through
+ * {@link #getStatus()}.
+ * <ul>
+ *     <li>rebuild: re-adds the reverse mapping of every group. The group partitions of the store table (package type
+ *     and hash prefix) are processed in parallel, and each completed partition is checkpointed in the
+ *     maintenance_progress table, so an interrupted rebuild resumes where it stopped. It only adds entries, see
+ *     verify for the stale ones.</li>
+ *     <li>verify: compares the whole affected_store table with the group definitions, counting the missing and stale
+ *     entries, and optionally repairs them. Repairing while groups are being changed may undo a concurrent change of
+ *     the index, so it is better run in a quiet period.</li>
+ * </ul>
+ * A single job runs in the cluster at a time: the node starting it claims the maintenance_claim row of the
+ * affected_store jobs with a conditional write, and renews the claim while the job runs. The claim of a stopped node
+ * expires after cassandra.maintenance.claimSeconds.
+ */
+@ApplicationScoped
+public class AffectedStoreMaintenance
+{
+    static final String REBUILD_JOB = "affected-store-rebuild";
+
+    static final String VERIFY_JOB = "affected-store-verify";
+
+    private static final String STARTED = "_started";
+
+    static final String CLAIM = "affected-store";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    CassandraStoreQuery storeQuery;
+
+    @Inject
+    @ClusterStoreDataManager
+    CassandraStoreDataManager dataManager;
+
+    @Inject
+    CassandraConfiguration config;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final String owner = UUID.randomUUID().toString();
+
+    // runs the job, and renews its claim
+    private final ScheduledExecutorService jobExecutor = Executors.newScheduledThreadPool( 2, r -> {
+        Thread t = new Thread( r, "affected-store-maintenance" );
+        t.setDaemon( true );
+        return t;
+    } );
+
+    private volatile boolean claimLost;
+
+    private volatile String job;
+
+    private volatile String state = "idle";
+
+    private volatile Boolean repair;
+
+    private volatile Long startTime;
+
+    private volatile Long endTime;
+
+    private volatile String error;
+
+    private final AtomicInteger totalPartitions = new AtomicInteger();
+
+    private final AtomicInteger completedPartitions = new AtomicInteger();
+
+    private final AtomicLong groups = new AtomicLong();
+
+    private final AtomicLong missing = new AtomicLong();
+
+    private final AtomicLong stale = new AtomicLong();
+
+    public AffectedStoreJobDTO getStatus()
+    {
+        AffectedStoreJobDTO status = new AffectedStoreJobDTO();
+        status.setJob( job );
+        status.setState( state );
+        if ( job != null )
+        {
+            status.setRepair( repair );
+            status.setTotalPartitions( totalPartitions.get() );
+            status.setCompletedPartitions( completedPartitions.get() );
+            status.setGroups( groups.get() );
+            status.setMissing( missing.get() );
+            status.setStale( stale.get() );
+            status.setStartTime( startTime );
+            status.setEndTime( endTime );
+            status.setError( error );
+        }
+        return status;
+    }
+
+    /**
+     * Whether a rebuild was started and did not complete, e.g. because the node was restarted.
+     */
+    public boolean hasUnfinishedRebuild()
+    {
+        return !storeQuery.getMaintenanceProgress( REBUILD_JOB ).isEmpty();
+    }
+
+    /**
+     * Start the rebuild in the background, resuming the unfinished one if any unless restart is set.
+     *
+     * @return false if a job is already running, on this node or another one
+     */
+    public boolean startRebuild( final boolean restart )
+    {
+        if ( !start( REBUILD_JOB, null ) )
+        {
+            return false;
+        }
+
+        jobExecutor.execute( () -> run( () -> rebuild( restart ) ) );
+        return true;
+    }
+
+    /**
+     * Start the verification in the background.
+     *
+     * @return false if a job is already running, on this node or another one
+     */
+    public boolean startVerify( final boolean repair )
+    {
+        if ( !start( VERIFY_JOB, repair ) )
+        {
+            return false;
+        }
+
+        jobExecutor.execute( () -> run( () -> verify( repair ) ) );
+        return true;
+    }
+
+    private boolean start( final String job, final Boolean repair )
+    {
+        if ( !running.compareAndSet( false, true ) )
+        {
+            return false;
+        }
+        if ( !storeQuery.claimMaintenance( CLAIM, owner, getClaimSeconds() ) )
+        {
+            logger.info( "Not starting {}, a job is running on another node", job );
+            running.set( false );
+            return false;
+        }
+
+        this.job = job;
+        this.repair = repair;
+        this.state = "running";
+        this.startTime = System.currentTimeMillis();
+        this.endTime = null;
+        this.error = null;
+        totalPartitions.set( 0 );
+        completedPartitions.set( 0 );
+        groups.set( 0 );
+        missing.set( 0 );
+        stale.set( 0 );
+        return true;
+    }
+
+    private void run( final Runnable task )
+    {
+        claimLost = false;
+        final long renewal = Math.max( 1, getClaimSeconds() / 3 );
+        final ScheduledFuture<?> renew = jobExecutor.scheduleWithFixedDelay( this::renewClaim, renewal, renewal,
+                                                                             TimeUnit.SECONDS );
+        try
+        {
+            task.run();
+            state = "done";
+            logger.info( "{} done: {} group(s), {} missing and {} stale entries", job, groups.get(), missing.get(),
+                         stale.get() );
+        }
+        catch ( RuntimeException e )
+        {
+            state = "failed";
+            error = e.getMessage();
+            logger.error( job + " failed", e );
+        }
+        finally
+        {
+            renew.cancel( false );
+            releaseClaim();
+            endTime = System.currentTimeMillis();
+            running.set( false );
+        }
+    }
+
+    private int getClaimSeconds()
+    {
+        return config.getMaintenanceClaimSeconds() > 0 ? config.getMaintenanceClaimSeconds() : 60;
+    }
+
+    private void renewClaim()
+    {
+        try
+        {
+            if ( !storeQuery.renewMaintenanceClaim( CLAIM, owner, getClaimSeconds() ) )
+            {
+                logger.warn( "{} lost its claim, stopping", job );
+                claimLost = true;
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Failed to renew the claim of {}: {}", job, e.getMessage() );
+        }
+    }
+
+    private void releaseClaim()
+    {
+        try
+        {
+            storeQuery.releaseMaintenanceClaim( CLAIM, owner );
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Failed to release the claim of {}, it expires in {}s: {}", job, getClaimSeconds(),
+                         e.getMessage() );
+        }
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        jobExecutor.shutdownNow();
+    }
+
+    private void rebuild( final boolean restart )
+    {
+        if ( restart )
+        {
+            storeQuery.clearMaintenanceProgress( REBUILD_JOB );
+        }
+
+        final Set<String> completed = storeQuery.getMaintenanceProgress( REBUILD_JOB );
+        if ( completed.isEmpty() )
+        {
+            storeQuery.addMaintenanceProgress( REBUILD_JOB, STARTED );
+        }
+
+        final List<String> partitions = new ArrayList<>();
+        for ( String packageType : PackageTypes.getPackageTypes() )
+        {
+            for ( int prefix = 0; prefix < MODULO_VALUE; prefix++ )
+            {
+                partitions.add( partitionItem( packageType, prefix ) );
+            }
+        }
+        totalPartitions.set( partitions.size() );
+        partitions.removeAll( completed );
+        completedPartitions.set( totalPartitions.get() - partitions.size() );
+        logger.info( "Rebuilding affected_store: {} of {} partition(s) to process", partitions.size(),
+                     totalPartitions.get() );
+
+        final ExecutorService executor =
+                Executors.newFixedThreadPool( Math.max( 1, config.getAffectedStoreRebuildThreads() ) );
+        try
+        {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            partitions.forEach(
+                    item -> futures.add( CompletableFuture.runAsync( () -> rebuildPartition( item ), executor ) ) );
+            CompletableFuture.allOf( futures.toArray( new CompletableFuture[0] ) ).join();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        // done, nothing to resume anymore
+        storeQuery.clearMaintenanceProgress( REBUILD_JOB );
+    }
+
+    private void rebuildPartition( final String item )
+    {
+        if ( claimLost )
+        {
+            // another node took the job over, this partition is left to it
+            throw new IllegalStateException( "The claim of the rebuild was lost" );
+        }
+
+        final int sep = item.lastIndexOf( '/' );
+        final String typeKey = CassandraStoreUtil.getTypeKey( item.substring( 0, sep ), StoreType.group.name() );
+        final int prefix = Integer.parseInt( item.substring( sep + 1 ) );
+
+        try (Stream<DtxArtifactStore> stores = storeQuery.streamArtifactStoresByPartition( typeKey, prefix ))
+        {
+            stores.map( dataManager::toArtifactStore )
+                  .filter( store -> store instanceof Group && !dataManager.isExcludedGroup( (Group) store ) )
+                  .forEach( store -> {
+                      Group group = (Group) store;
+                      if ( group.getConstituents() != null )
+                      {
+                          storeQuery.addAffectedBy( new HashSet<>( group.getConstituents() ), group.getKey() );
+                      }
+                      groups.incrementAndGet();
+                  } );
+        }
+
+        storeQuery.addMaintenanceProgress( REBUILD_JOB, item );
+        completedPartitions.incrementAndGet();
+    }
+
+    private void verify( final boolean repair )
+    {
+        // the expected reverse mapping, from the group definitions
+        final Map<StoreKey, Set<StoreKey>> expected = new HashMap<>();
+        try (Stream<ArtifactStore> stores = dataManager.streamArtifactStores())
+        {
+            stores.filter( store -> store instanceof Group && !dataManager.isExcludedGroup( (Group) store ) )
+                  .forEach( store -> {
+                      Group group = (Group) store;
+                      if ( group.getConstituents() != null )
+                      {
+                          group.getConstituents()
+                               .forEach( key -> expected.computeIfAbsent( key, k -> new HashSet<>() )
+                                                        .add( group.getKey() ) );
+                      }
+                      groups.incrementAndGet();
+                  } );
+        }
+
+        try (Stream<DtxAffectedStore> rows = storeQuery.streamAffectedStores())
+        {
+            rows.forEach( row -> {
+                final StoreKey key = StoreKey.fromString( row.getKey() );
+                final Set<StoreKey> actual =
+                        row.getAffectedStores() == null ? Collections.emptySet() : row.getAffectedStoreKeys();
+                final Set<StoreKey> expectedGroups = expected.remove( key );
+                compare( key, actual, expectedGroups == null ? Collections.emptySet() : expectedGroups, repair );
+            } );
+        }
+
+        // the keys without any affected_store row
+        expected.forEach( ( key, expectedGroups ) -> compare( key, Collections.emptySet(), expectedGroups, repair ) );
+    }
+
+    private void compare( final StoreKey key, final Set<StoreKey> actual, final Set<StoreKey> expected,
+                          final boolean repair )
+    {
+        final Set<StoreKey> missingGroups = new HashSet<>( expected );
+        missingGroups.removeAll( actual );
+        final Set<StoreKey> staleGroups = new HashSet<>( actual );
+        staleGroups.removeAll( expected );
+        if ( missingGroups.isEmpty() && staleGroups.isEmpty() )
+        {
+            return;
+        }
+
+        logger.info( "Drift in affected_store of {}: missing {}, stale {}", key, missingGroups, staleGroups );
+        missing.addAndGet( missingGroups.size() );
+        stale.addAndGet( staleGroups.size() );
+        if ( repair )
+        {
+            missingGroups.forEach( group -> storeQuery.addAffectedBy( key, group ) );
+            staleGroups.forEach( group -> storeQuery.removeAffectedBy( key, group ) );
+        }
+    }
+
+    private static String partitionItem( final String packageType, final int prefix )
+    {
+        return packageType + "/" + prefix;
+    }
+}
@@ -73,6 +73,34 @@ public class CassandraConfiguration
     @ConfigProperty( name = "cassandra.keyspaceReplicas", defaultValue = "0" )
     int keyspaceReplicas;
 
+    @Inject
+    @ConfigProperty( name = "cassandra.fetchSize", defaultValue = "1000" )
+    int fetchSize;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.legacyExtras.write", defaultValue = "true" )
+    boolean writeLegacyExtras;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.snapshot.enabled", defaultValue = "false" )
+    boolean snapshotEnabled;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.peerSync.enabled", defaultValue = "true" )
+    boolean peerSyncEnabled;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.affectedStore.rebuildThreads", defaultValue = "4" )
+    int affectedStoreRebuildThreads;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.maintenance.claimSeconds", defaultValue = "60" )
+    int maintenanceClaimSeconds;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.completionThreads", defaultValue = "4" )
+    int completionThreads;
+
     public CassandraConfiguration()
     {
     }
@@ -186,4 +214,91 @@ public class CassandraConfiguration
     {
         this.keyspaceReplicas = keyspaceReplicas;
     }
+
+    public int getFetchSize()
+    {
+        return fetchSize;
+    }
+
+    public void setFetchSize( int fetchSize )
+    {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Whether stores are still written with the legacy JSON extras next to the encoded attributes, so that nodes
+     * not reading the attributes yet keep working during a rolling upgrade.
+     */
+    public boolean isWriteLegacyExtras()
+    {
+        return writeLegacyExtras;
+    }
+
+    public void setWriteLegacyExtras( boolean writeLegacyExtras )
+    {
+        this.writeLegacyExtras = writeLegacyExtras;
+    }
+
+    /**
+     * Whether all stores are loaded into memory at startup and reads are answered from that snapshot.
+     */
+    public boolean isSnapshotEnabled()
+    {
+        return snapshotEnabled;
+    }
+
+    public void setSnapshotEnabled( boolean snapshotEnabled )
+    {
+        this.snapshotEnabled = snapshotEnabled;
+    }
+
+    /**
+     * Whether the store changes of other nodes are followed from the store-event-sync stream, keeping the caches and
+     * the in-memory indexes in line with them even without the snapshot.
+     */
+    public boolean isPeerSyncEnabled()
+    {
+        return peerSyncEnabled;
+    }
+
+    public void setPeerSyncEnabled( boolean peerSyncEnabled )
+    {
+        this.peerSyncEnabled = peerSyncEnabled;
+    }
+
+    public int getAffectedStoreRebuildThreads()
+    {
+        return affectedStoreRebuildThreads;
+    }
+
+    public void setAffectedStoreRebuildThreads( int affectedStoreRebuildThreads )
+    {
+        this.affectedStoreRebuildThreads = affectedStoreRebuildThreads;
+    }
+
+    /**
+     * Time a node holds the claim of a maintenance job without renewing it, after which another node may take it over.
+     */
+    public int getMaintenanceClaimSeconds()
+    {
+        return maintenanceClaimSeconds;
+    }
+
+    public void setMaintenanceClaimSeconds( int maintenanceClaimSeconds )
+    {
+        this.maintenanceClaimSeconds = maintenanceClaimSeconds;
+    }
+
+    /**
+     * Threads completing the async queries, running the work which depends on their results.
+     */
+    public int getCompletionThreads()
+    {
+        return completionThreads;
+    }
+
+    public void setCompletionThreads( int completionThreads )
+    {
+        this.completionThreads = completionThreads;
+    }
 }
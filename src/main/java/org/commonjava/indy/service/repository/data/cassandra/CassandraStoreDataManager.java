@@ -24,6 +24,7 @@ import org.commonjava.indy.service.repository.data.AbstractStoreDataManager;
 import org.commonjava.indy.service.repository.data.annotations.ClusterStoreDataManager;
 import org.commonjava.indy.service.repository.data.infinispan.CacheHandle;
 import org.commonjava.indy.service.repository.data.infinispan.CacheProducer;
+import org.commonjava.indy.service.repository.exception.IndyDataException;
 import org.commonjava.indy.service.repository.model.AbstractRepository;
 import org.commonjava.indy.service.repository.model.ArtifactStore;
 import org.commonjava.indy.service.repository.model.Group;
@@ -36,20 +37,29 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static jakarta.ws.rs.core.Response.Status.CONFLICT;
 import static org.commonjava.indy.service.repository.data.StoreUpdateAction.STORE;
+import static org.commonjava.indy.service.repository.data.cassandra.CassandraStoreQuery.NO_STORE_VERSION;
 import static org.commonjava.indy.service.repository.model.StoreType.group;
 import static org.commonjava.indy.service.repository.model.StoreType.remote;
 
@@ -73,6 +83,9 @@ public class CassandraStoreDataManager
     @Inject
     StoreEventDispatcher eventDispatcher;
 
+    @Inject
+    CassandraConfiguration config;
+
     @Inject
     @RemoteKojiStoreDataCache
     CacheHandle<StoreKey, ArtifactStore> remoteKojiStores;
@@ -81,6 +94,17 @@ public class CassandraStoreDataManager
 
     private final Integer STORE_EXPIRATION_IN_MINS = 15;
 
+    private final StoreSnapshot snapshot = new StoreSnapshot();
+
+    private static final int CACHE_VERSION_STRIPES = 1024;
+
+    /**
+     * Versions of the artifact-store cache entries, striped by key and bumped by every write to the entries of the
+     * stripe. A load started before a write of its key does not cache its result, which may have been read before the
+     * write reached Cassandra, while the loads of other keys are not affected.
+     */
+    private final AtomicLongArray cacheVersions = new AtomicLongArray( CACHE_VERSION_STRIPES );
+
     @SuppressWarnings( "unused" )
     protected CassandraStoreDataManager()
     {
@@ -101,12 +125,28 @@ public class CassandraStoreDataManager
         return eventDispatcher;
     }
 
+    /**
+     * Read the store from Cassandra, since another node may have updated it since it was cached here.
+     */
+    @Override
+    protected Optional<ArtifactStore> getArtifactStoreForUpdate( final StoreKey key )
+    {
+        return Optional.ofNullable( toArtifactStore(
+                storeQuery.getArtifactStore( key.getPackageType(), key.getType(), key.getName() ) ) );
+    }
+
     @Override
     protected Optional<ArtifactStore> getArtifactStoreInternal( StoreKey key )
     {
 
         logger.trace( "Get artifact store: {}", key.toString() );
 
+        final Map<StoreKey, ArtifactStore> stores = snapshot.get();
+        if ( stores != null )
+        {
+            return Optional.ofNullable( stores.get( key ) );
+        }
+
         if ( remote.equals( key.getType() ) && key.getName().startsWith( "koji-" ) )
         {
             ArtifactStore store = remoteKojiStores.get( key );
@@ -116,7 +156,131 @@ public class CassandraStoreDataManager
             }
         }
 
-        return Optional.ofNullable( computeIfAbsent( key, STORE_EXPIRATION_IN_MINS, Boolean.FALSE ) );
+        return Optional.ofNullable( computeIfAbsent( key, STORE_EXPIRATION_IN_MINS ) );
+    }
+
+    @Override
+    public Map<StoreKey, ArtifactStore> getArtifactStores( final Collection<StoreKey> keys )
+    {
+        final Map<StoreKey, ArtifactStore> stores = snapshot.get();
+        if ( stores != null )
+        {
+            return getSnapshotStores( stores, keys );
+        }
+
+        final Set<StoreKey> misses = new HashSet<>();
+        final Map<StoreKey, ArtifactStore> result = getCachedArtifactStores( keys, misses );
+        if ( !misses.isEmpty() )
+        {
+            final Map<StoreKey, Long> versions = getCacheVersions( misses );
+            cacheLoadedStores( storeQuery.getArtifactStores( misses ), result, versions );
+        }
+
+        logger.trace( "Get artifact stores: {} requested, {} missed in cache", keys.size(), misses.size() );
+        return result;
+    }
+
+    @Override
+    public CompletionStage<Optional<ArtifactStore>> getArtifactStoreAsync( final StoreKey key )
+    {
+        return getArtifactStoresAsync( Collections.singleton( key ) ).thenApply(
+                stores -> Optional.ofNullable( stores.get( key ) ) );
+    }
+
+    @Override
+    public CompletionStage<Map<StoreKey, ArtifactStore>> getArtifactStoresAsync( final Collection<StoreKey> keys )
+    {
+        final Map<StoreKey, ArtifactStore> stores = snapshot.get();
+        if ( stores != null )
+        {
+            return CompletableFuture.completedFuture( getSnapshotStores( stores, keys ) );
+        }
+
+        final Set<StoreKey> misses = new HashSet<>();
+        final Map<StoreKey, ArtifactStore> result = getCachedArtifactStores( keys, misses );
+        if ( misses.isEmpty() )
+        {
+            return CompletableFuture.completedFuture( result );
+        }
+
+        final Map<StoreKey, Long> versions = getCacheVersions( misses );
+        return storeQuery.getArtifactStoresAsync( misses ).thenApply( loaded -> {
+            cacheLoadedStores( loaded, result, versions );
+            return result;
+        } );
+    }
+
+    @Override
+    public CompletionStage<Set<ArtifactStore>> getArtifactStoresByPkgAndTypeAsync( final String pkg,
+                                                                                   final StoreType type )
+    {
+        if ( snapshot.isLoaded() )
+        {
+            return CompletableFuture.completedFuture( getArtifactStoresByPkgAndType( pkg, type ) );
+        }
+
+        return storeQuery.getArtifactStoresByPkgAndTypeAsync( pkg, type )
+                         .thenApply( dtxArtifactStoreSet -> dtxArtifactStoreSet.stream()
+                                                                               .map( this::toArtifactStore )
+                                                                               .collect( Collectors.toSet() ) );
+    }
+
+    private Map<StoreKey, ArtifactStore> getSnapshotStores( final Map<StoreKey, ArtifactStore> stores,
+                                                            final Collection<StoreKey> keys )
+    {
+        final Map<StoreKey, ArtifactStore> result = new HashMap<>();
+        keys.forEach( key -> {
+            ArtifactStore store = stores.get( key );
+            if ( store != null )
+            {
+                result.put( key, store );
+            }
+        } );
+        return result;
+    }
+
+    private Map<StoreKey, ArtifactStore> getCachedArtifactStores( final Collection<StoreKey> keys,
+                                                                  final Set<StoreKey> misses )
+    {
+        final Map<StoreKey, ArtifactStore> result = new HashMap<>();
+
+        CacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getCache( ARTIFACT_STORE );
+        for ( StoreKey key : new HashSet<>( keys ) )
+        {
+            ArtifactStore store = null;
+            if ( remote.equals( key.getType() ) && key.getName().startsWith( "koji-" ) )
+            {
+                store = remoteKojiStores.get( key );
+            }
+            if ( store == null )
+            {
+                store = cache.get( key );
+            }
+
+            if ( store != null )
+            {
+                result.put( key, store );
+            }
+            else
+            {
+                misses.add( key );
+            }
+        }
+        return result;
+    }
+
+    private void cacheLoadedStores( final Set<DtxArtifactStore> loaded, final Map<StoreKey, ArtifactStore> result,
+                                    final Map<StoreKey, Long> versions )
+    {
+        CacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getCache( ARTIFACT_STORE );
+        loaded.forEach( dtxArtifactStore -> {
+            ArtifactStore store = toArtifactStore( dtxArtifactStore );
+            if ( store != null )
+            {
+                cacheLoadedStore( cache, store, STORE_EXPIRATION_IN_MINS, versions.get( store.getKey() ) );
+                result.put( store.getKey(), store );
+            }
+        } );
     }
 
     @Override
@@ -127,7 +291,9 @@ public class CassandraStoreDataManager
 
         DtxArtifactStore dtxArtifactStore =
                 storeQuery.removeArtifactStore( key.getPackageType(), key.getType(), key.getName() );
+        bumpCacheVersion( key );
         cacheProducer.getCache( ARTIFACT_STORE ).remove( key );
+        snapshot.remove( key );
         return toArtifactStore( dtxArtifactStore );
     }
 
@@ -141,10 +307,25 @@ public class CassandraStoreDataManager
     //    @WithSpan
     public Set<ArtifactStore> getAllArtifactStores()
     {
-        Set<DtxArtifactStore> dtxArtifactStoreSet = storeQuery.getAllArtifactStores();
-        Set<ArtifactStore> artifactStoreSet = new HashSet<>();
-        dtxArtifactStoreSet.forEach( dtxArtifactStore -> artifactStoreSet.add( toArtifactStore( dtxArtifactStore ) ) );
-        return artifactStoreSet;
+        try (Stream<ArtifactStore> stores = streamArtifactStores())
+        {
+            return stores.collect( Collectors.toSet() );
+        }
+    }
+
+    /**
+     * Stream the stores as they are paged in from Cassandra, without materializing the full set.
+     */
+    @Override
+    public Stream<ArtifactStore> streamArtifactStores()
+    {
+        final Map<StoreKey, ArtifactStore> stores = snapshot.get();
+        if ( stores != null )
+        {
+            return stores.values().stream();
+        }
+
+        return storeQuery.streamArtifactStores().map( this::toArtifactStore ).filter( Objects::nonNull );
     }
 
     @Override
@@ -152,8 +333,10 @@ public class CassandraStoreDataManager
     public Map<StoreKey, ArtifactStore> getArtifactStoresByKey()
     {
         Map<StoreKey, ArtifactStore> ret = new HashMap<>();
-        Set<ArtifactStore> artifactStoreSet = getAllArtifactStores();
-        artifactStoreSet.forEach( store -> ret.put( store.getKey(), store ) );
+        try (Stream<ArtifactStore> stores = streamArtifactStores())
+        {
+            stores.forEach( store -> ret.put( store.getKey(), store ) );
+        }
         return ret;
     }
 
@@ -176,11 +359,16 @@ public class CassandraStoreDataManager
 
         logger.trace( "Get storeKeys: {}/{}", pkg, type );
 
-        Set<DtxArtifactStore> dtxArtifactStoreSet = storeQuery.getArtifactStoresByPkgAndType( pkg, type );
-        Set<StoreKey> storeKeySet = new HashSet<>();
-        dtxArtifactStoreSet.forEach(
-                dtxArtifactStore -> storeKeySet.add( new StoreKey( pkg, type, dtxArtifactStore.getName() ) ) );
-        return storeKeySet;
+        final Map<StoreKey, ArtifactStore> stores = snapshot.get();
+        if ( stores != null )
+        {
+            return stores.keySet()
+                         .stream()
+                         .filter( key -> key.getType() == type && key.getPackageType().equals( pkg ) )
+                         .collect( Collectors.toSet() );
+        }
+
+        return storeQuery.getStoreKeysByPkgAndType( pkg, type );
     }
 
     @Override
@@ -189,6 +377,15 @@ public class CassandraStoreDataManager
 
         logger.trace( "Get stores: {}/{}", pkg, type );
 
+        final Map<StoreKey, ArtifactStore> stores = snapshot.get();
+        if ( stores != null )
+        {
+            return stores.values()
+                         .stream()
+                         .filter( store -> store.getType() == type && store.getPackageType().equals( pkg ) )
+                         .collect( Collectors.toSet() );
+        }
+
         Set<DtxArtifactStore> dtxArtifactStoreSet = storeQuery.getArtifactStoresByPkgAndType( pkg, type );
         Set<ArtifactStore> storeSet = new HashSet<>();
         dtxArtifactStoreSet.forEach( dtxArtifactStore -> storeSet.add( toArtifactStore( dtxArtifactStore ) ) );
@@ -210,6 +407,11 @@ public class CassandraStoreDataManager
     @Override
     public boolean isEmpty()
     {
+        final Map<StoreKey, ArtifactStore> stores = snapshot.get();
+        if ( stores != null )
+        {
+            return stores.isEmpty();
+        }
         return storeQuery.isEmpty();
     }
 
@@ -221,80 +423,260 @@ public class CassandraStoreDataManager
     @Override
     public Stream<StoreKey> streamArtifactStoreKeys()
     {
-        return getAllArtifactStores().stream().map( ArtifactStore::getKey ).collect( Collectors.toSet() ).stream();
+        final Map<StoreKey, ArtifactStore> stores = snapshot.get();
+        if ( stores != null )
+        {
+            return stores.keySet().stream();
+        }
+        return storeQuery.streamArtifactStoreKeys();
     }
 
     @Override
-    protected ArtifactStore putArtifactStoreInternal( StoreKey storeKey, ArtifactStore store )
+    protected ArtifactStore putArtifactStoreInternal( StoreKey storeKey, ArtifactStore store, ArtifactStore original )
+            throws IndyDataException
     {
         DtxArtifactStore dtxArtifactStore = toDtxArtifactStore( storeKey, store );
-        storeQuery.createDtxArtifactStore( dtxArtifactStore );
+        dtxArtifactStore.setVersion( store.getVersion() );
+
+        // the store lock is local to this node, so the version is checked again by Cassandra against concurrent
+        // writes of other nodes
+        final long expected = expectedVersionOf( original );
+        final long current = storeQuery.casArtifactStore( dtxArtifactStore, expected );
+        if ( current != expected )
+        {
+            // our view of the store is stale, catch up so the caller can retry on the current definition
+            refreshFromPeer( Collections.singleton( storeKey ) );
+            throw new IndyDataException( CONFLICT.getStatusCode(),
+                                         "Store {} was modified concurrently, expected version: {}, current: {}",
+                                         storeKey, expected, current == NO_STORE_VERSION ? "deleted" : current );
+        }
 
-        return computeIfAbsent( storeKey, STORE_EXPIRATION_IN_MINS, Boolean.TRUE );
+        cacheWritten( store );
+        return store;
+    }
+
+    /**
+     * The update was checked against a definition read from Cassandra, the cached one the caller reloads from may be
+     * older.
+     */
+    @Override
+    protected void refreshStaleStores( final Collection<StoreKey> keys )
+    {
+        refreshFromPeer( keys );
+    }
+
+    @Override
+    protected Map<StoreKey, ArtifactStore> getArtifactStoresForUpdate( final Collection<StoreKey> keys )
+    {
+        final Map<StoreKey, ArtifactStore> result = new HashMap<>();
+        storeQuery.getArtifactStores( keys ).forEach( dtx -> {
+            ArtifactStore store = toArtifactStore( dtx );
+            if ( store != null )
+            {
+                result.put( store.getKey(), store );
+            }
+        } );
+        return result;
+    }
+
+    /**
+     * Write each store with its own conditional write, like {@link #putArtifactStoreInternal}, issued concurrently, so
+     * a concurrent write of another node to any of them is detected. Cassandra can't apply conditions spanning
+     * partitions together: if any write is rejected or fails, the applied ones are reverted, conditionally again, and
+     * the whole update fails.
+     */
+    @Override
+    protected void putArtifactStoresInternal( final Map<ArtifactStore, ArtifactStore> changes )
+            throws IndyDataException
+    {
+        final Map<ArtifactStore, CompletableFuture<Long>> writes = new LinkedHashMap<>();
+        changes.forEach( ( store, original ) -> {
+            final DtxArtifactStore dtxArtifactStore = toDtxArtifactStore( store.getKey(), store );
+            dtxArtifactStore.setVersion( store.getVersion() );
+            writes.put( store, storeQuery.casArtifactStoreAsync( dtxArtifactStore, expectedVersionOf( original ) )
+                                         .toCompletableFuture() );
+        } );
+
+        final List<ArtifactStore> applied = new ArrayList<>();
+        final Map<StoreKey, Object> rejected = new LinkedHashMap<>();
+        writes.forEach( ( store, write ) -> {
+            final long expected = expectedVersionOf( changes.get( store ) );
+            try
+            {
+                final long current = write.join();
+                if ( current == expected )
+                {
+                    applied.add( store );
+                }
+                else
+                {
+                    rejected.put( store.getKey(), current == NO_STORE_VERSION ? "deleted" : current );
+                }
+            }
+            catch ( CompletionException e )
+            {
+                // the write may or may not have been applied, the revert below can't tell
+                logger.warn( "Failed to store {}: {}", store.getKey(), e.getCause().getMessage() );
+                rejected.put( store.getKey(), "unknown, " + e.getCause().getMessage() );
+            }
+        } );
+
+        if ( rejected.isEmpty() )
+        {
+            applied.forEach( this::cacheWritten );
+            return;
+        }
+
+        revertArtifactStores( applied, changes );
+        refreshFromPeer( changes.keySet().stream().map( ArtifactStore::getKey ).collect( Collectors.toList() ) );
+        throw new IndyDataException( CONFLICT.getStatusCode(),
+                                     "Stores were modified concurrently, none of the {} stores is changed. Current "
+                                             + "versions: {}", changes.size(), rejected );
+    }
+
+    private static long expectedVersionOf( final ArtifactStore original )
+    {
+        return original == null ? NO_STORE_VERSION : versionOf( original );
+    }
+
+    /**
+     * Put back the original definitions of the given written stores, or delete the new ones, unless another node
+     * changed them since.
+     */
+    private void revertArtifactStores( final List<ArtifactStore> written,
+                                       final Map<ArtifactStore, ArtifactStore> changes )
+    {
+        final Map<StoreKey, CompletableFuture<Long>> reverts = new LinkedHashMap<>();
+        written.forEach( store -> {
+            final ArtifactStore original = changes.get( store );
+            final CompletionStage<Long> revert;
+            if ( original == null )
+            {
+                revert = storeQuery.removeArtifactStoreIfVersionAsync( toDtxArtifactStore( store.getKey(), store ),
+                                                                       store.getVersion() );
+            }
+            else
+            {
+                // a new version, so the revert is not mistaken for the version written before
+                final DtxArtifactStore dtxArtifactStore = toDtxArtifactStore( original.getKey(), original );
+                dtxArtifactStore.setVersion( store.getVersion() + 1 );
+                revert = storeQuery.casArtifactStoreAsync( dtxArtifactStore, store.getVersion() );
+            }
+            reverts.put( store.getKey(), revert.toCompletableFuture() );
+        } );
+
+        reverts.forEach( ( key, revert ) -> {
+            try
+            {
+                revert.join();
+            }
+            catch ( CompletionException e )
+            {
+                logger.error( "Failed to revert the update of {}: {}", key, e.getCause().getMessage() );
+            }
+        } );
+    }
+
+    /**
+     * Write through: the cache gets a copy of the written instance instead of reading the row back. The caller keeps
+     * its instance, which it may still change.
+     */
+    private void cacheWritten( final ArtifactStore store )
+    {
+        final ArtifactStore written = store.copyOf();
+        bumpCacheVersion( written.getKey() );
+        cacheProducer.getCache( ARTIFACT_STORE )
+                     .put( written.getKey(), written, STORE_EXPIRATION_IN_MINS, TimeUnit.MINUTES );
+        snapshot.put( written );
+    }
+
+    private static int getCacheStripe( final StoreKey key )
+    {
+        return Math.floorMod( key.hashCode(), CACHE_VERSION_STRIPES );
+    }
+
+    private void bumpCacheVersion( final StoreKey key )
+    {
+        cacheVersions.incrementAndGet( getCacheStripe( key ) );
+    }
+
+    private long getCacheVersion( final StoreKey key )
+    {
+        return cacheVersions.get( getCacheStripe( key ) );
+    }
+
+    private Map<StoreKey, Long> getCacheVersions( final Collection<StoreKey> keys )
+    {
+        final Map<StoreKey, Long> versions = new HashMap<>();
+        keys.forEach( key -> versions.put( key, getCacheVersion( key ) ) );
+        return versions;
     }
 
     @Override
     //    @WithSpan
-    public Set<Group> affectedBy( Collection<StoreKey> keys )
+    public Set<Group> affectedBy( final Collection<StoreKey> keys, final int maxDepth )
     {
+        if ( snapshot.isLoaded() )
+        {
+            // all the groups are in memory, walking their membership is cheaper than the affected_store lookups. The
+            // disabled groups are skipped like below, so the result doesn't depend on the snapshot
+            return affectedByFromStores( keys, maxDepth, true );
+        }
 
         final Set<Group> result = new HashSet<>();
 
         // use these to avoid recursion
         final Set<StoreKey> processed = new HashSet<>();
-        final LinkedList<StoreKey> toProcess = new LinkedList<>( keys );
+        Set<StoreKey> toProcess = keys.stream().filter( Objects::nonNull ).collect( Collectors.toSet() );
 
-        while ( !toProcess.isEmpty() )
+        // walk the affected-by graph level by level: the affected_store lookups of a level are issued concurrently,
+        // and the groups found in it are loaded in one batch
+        int depth = 0;
+        while ( !toProcess.isEmpty() && depth++ < maxDepth )
         {
-            StoreKey key = toProcess.removeFirst();
-            if ( key == null )
+            final Map<StoreKey, CompletableFuture<DtxAffectedStore>> lookups = new HashMap<>();
+            for ( StoreKey key : toProcess )
             {
-                continue;
+                if ( processed.add( key ) )
+                {
+                    lookups.put( key, storeQuery.getAffectedStoreAsync( key ).toCompletableFuture() );
+                }
             }
+            awaitAll( lookups.values() );
 
-            if ( processed.add( key ) )
+            final Set<StoreKey> nextLevel = new HashSet<>();
+            lookups.forEach( ( key, lookup ) -> {
+                DtxAffectedStore affectedStore = lookup.join();
+                Set<StoreKey> affected = affectedStore == null ? null : affectedStore.getAffectedStoreKeys();
+                if ( affected != null )
+                {
+                    logger.debug( "Get affectedByStores, key: {}, affected: {}", key, affected );
+                    affected.stream().filter( k -> k.getType() == group ).forEach( nextLevel::add );
+                }
+            } );
+
+            // avoid loading the ArtifactStore instance again and again
+            nextLevel.removeAll( processed );
+            final Map<StoreKey, ArtifactStore> groups = getArtifactStores( nextLevel );
+            toProcess = new HashSet<>();
+            for ( StoreKey gKey : nextLevel )
             {
-                DtxAffectedStore affectedStore = storeQuery.getAffectedStore( key );
-                if ( affectedStore == null )
+                final ArtifactStore store = groups.get( gKey );
+                if ( store == null )
                 {
-                    processed.add( key );
-                    continue;
+                    logger.warn( "Error: the group {} does not exist as affected by", gKey );
+                    processed.add( gKey );
                 }
-                Set<StoreKey> affected = affectedStore.getAffectedStoreKeys();
-                if ( affected != null )
+                else if ( store.isDisabled() )
                 {
-                    logger.debug( "Get affectedByStores, key: {}, affected: {}", key, affected );
-                    affected = affected.stream().filter( k -> k.getType() == group ).collect( Collectors.toSet() );
-                    for ( StoreKey gKey : affected )
-                    {
-                        // avoid loading the ArtifactStore instance again and again
-                        if ( !processed.contains( gKey ) && !toProcess.contains( gKey ) )
-                        {
-                            final Optional<ArtifactStore> storeOpt = getArtifactStoreInternal( gKey );
-
-                            // if this group is disabled, we don't want to keep loading it again and again.
-                            if ( storeOpt.isPresent() )
-                            {
-                                final ArtifactStore store = storeOpt.get();
-                                if ( store.isDisabled() )
-                                {
-                                    processed.add( gKey );
-                                }
-                                else
-                                {
-                                    // add the group to the toProcess list so we can find any result that might include it in their own membership
-                                    toProcess.addLast( gKey );
-                                    result.add( (Group) store );
-                                }
-                            }
-                            else
-                            {
-                                logger.warn( "Error: the group {} does not exist as affected by for store {}", gKey,
-                                             key );
-                                processed.add( gKey );
-                            }
-                        }
-                    }
+                    // if this group is disabled, we don't want to keep loading it again and again.
+                    processed.add( gKey );
+                }
+                else
+                {
+                    // process the group in next level so we can find any result that might include it in their own membership
+                    toProcess.add( gKey );
+                    result.add( (Group) store );
                 }
             }
         }
@@ -307,6 +689,22 @@ public class CassandraStoreDataManager
         return filterAffectedGroups( result );
     }
 
+    private static void awaitAll( final Collection<? extends CompletableFuture<?>> futures )
+    {
+        try
+        {
+            CompletableFuture.allOf( futures.toArray( new CompletableFuture[0] ) ).join();
+        }
+        catch ( CompletionException e )
+        {
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     @Override
     protected void removeAffectedStore( StoreKey key )
     {
@@ -314,21 +712,23 @@ public class CassandraStoreDataManager
     }
 
     @Override
-    protected void removeAffectedBy( StoreKey key, StoreKey affected )
+    protected void removeAffectedBy( Collection<StoreKey> keys, StoreKey affected )
     {
-        storeQuery.removeAffectedBy( key, affected );
+        storeQuery.removeAffectedBy( keys, affected );
     }
 
     @Override
-    protected void addAffectedBy( StoreKey key, StoreKey affected )
+    protected void addAffectedBy( Collection<StoreKey> keys, StoreKey affected )
     {
-        storeQuery.addAffectedBy( key, affected );
+        storeQuery.addAffectedBy( keys, affected );
     }
 
     public void initAffectedBy()
     {
-        final Set<ArtifactStore> allStores = getAllArtifactStores();
-        allStores.stream().filter( s -> group == s.getType() ).forEach( s -> refreshAffectedBy( s, null, STORE ) );
+        try (Stream<ArtifactStore> stores = streamArtifactStores())
+        {
+            stores.filter( s -> group == s.getType() ).forEach( s -> refreshAffectedBy( s, null, STORE ) );
+        }
     }
 
     private DtxArtifactStore toDtxArtifactStore( StoreKey storeKey, ArtifactStore store )
@@ -351,6 +751,7 @@ public class CassandraStoreDataManager
         dtxArtifactStore.setPathMaskPatterns( store.getPathMaskPatterns() );
         dtxArtifactStore.setDisabled( store.isDisabled() );
         dtxArtifactStore.setExtras( toExtra( store ) );
+        dtxArtifactStore.setAttributes( StoreAttributesCodec.encode( store ) );
 
         return dtxArtifactStore;
     }
@@ -427,7 +828,7 @@ public class CassandraStoreDataManager
         }
     }
 
-    private ArtifactStore toArtifactStore( final DtxArtifactStore dtxArtifactStore )
+    ArtifactStore toArtifactStore( final DtxArtifactStore dtxArtifactStore )
     {
         if ( dtxArtifactStore == null )
         {
@@ -446,12 +847,35 @@ public class CassandraStoreDataManager
             store.setAuthoritativeIndex( dtxArtifactStore.getAuthoritativeIndex() );
             store.setPathStyle( PathStyle.valueOf( dtxArtifactStore.getPathStyle() ) );
             store.setCreateTime( dtxArtifactStore.getCreateTime() );
+            store.setVersion( dtxArtifactStore.getVersion() == null ? 0L : dtxArtifactStore.getVersion() );
         }
         return store;
     }
 
     @SuppressWarnings( "unchecked" )
     private ArtifactStore generateStore( DtxArtifactStore dtxArtifactStore )
+    {
+        if ( dtxArtifactStore.getAttributes() != null )
+        {
+            try
+            {
+                return StoreAttributesCodec.decode( dtxArtifactStore.getPackageType(),
+                                                    StoreType.get( dtxArtifactStore.getStoreType() ),
+                                                    dtxArtifactStore.getName(), dtxArtifactStore.getAttributes() );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to decode attributes of store {}:{}:{}, fall back to the legacy extras.",
+                             dtxArtifactStore.getPackageType(), dtxArtifactStore.getStoreType(),
+                             dtxArtifactStore.getName(), e );
+            }
+        }
+
+        return generateStoreFromExtras( dtxArtifactStore );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private ArtifactStore generateStoreFromExtras( DtxArtifactStore dtxArtifactStore )
     {
         ArtifactStore store = null;
         if ( dtxArtifactStore.getExtras() != null && !dtxArtifactStore.getExtras().isEmpty() )
@@ -624,42 +1048,161 @@ public class CassandraStoreDataManager
         return null;
     }
 
-    public void initRemoteStoresCache()
+    /**
+     * Online migration of the stores still in the legacy extras format: encode their attributes from the extras and
+     * write them with a conditional update, so stores updated meanwhile are left alone. Reads fall back to the
+     * extras until a store is migrated, so this can run while the service is serving requests.
+     *
+     * @return the number of migrated stores
+     */
+    public int migrateLegacyAttributes()
+    {
+        int migrated = 0;
+        try (Stream<DtxArtifactStore> stores = storeQuery.streamArtifactStores())
+        {
+            for ( DtxArtifactStore dtxArtifactStore : (Iterable<DtxArtifactStore>) stores::iterator )
+            {
+                if ( dtxArtifactStore.getAttributes() != null )
+                {
+                    continue;
+                }
+                ArtifactStore store = generateStoreFromExtras( dtxArtifactStore );
+                if ( store != null && storeQuery.migrateAttributes( dtxArtifactStore,
+                                                                    StoreAttributesCodec.encode( store ) ) )
+                {
+                    migrated++;
+                }
+            }
+        }
+        logger.info( "Migrated {} store(s) from legacy extras to encoded attributes", migrated );
+        return migrated;
+    }
+
+    /**
+     * Load all the stores into the in-memory snapshot if it is enabled. From then on reads are answered from the
+     * snapshot, which follows local writes and the changes of other nodes received by {@link #refreshFromPeer}.
+     */
+    public void initSnapshot()
+    {
+        if ( config == null || !config.isSnapshotEnabled() )
+        {
+            return;
+        }
+
+        try (Stream<ArtifactStore> stores = storeQuery.streamArtifactStores()
+                                                      .map( this::toArtifactStore )
+                                                      .filter( Objects::nonNull ))
+        {
+            snapshot.load( stores );
+        }
+        // the indexes are followed from now on, drop what was collected before
+        storeIndex.invalidate();
+        groupIndex.clear();
+        logger.info( "Loaded {} store(s) into the in-memory snapshot", snapshot.get().size() );
+    }
+
+    @Override
+    public void reload()
     {
-        final Set<ArtifactStore> allStores = getAllArtifactStores();
+        if ( snapshot.isLoaded() )
+        {
+            initSnapshot();
+        }
+        super.reload();
+    }
+
+    public boolean isSnapshotLoaded()
+    {
+        return snapshot.isLoaded();
+    }
 
+    /**
+     * Whether the changes of other nodes reach {@link #refreshFromPeer}, see StoreSnapshotSyncListener: always while
+     * the snapshot is loaded, otherwise if the peer sync is enabled.
+     */
+    public boolean isFollowingPeers()
+    {
+        return snapshot.isLoaded() || ( config != null && config.isPeerSyncEnabled() );
+    }
+
+    /**
+     * The indexes miss the changes of other nodes unless they are followed. Without it, the queries read through
+     * Cassandra.
+     */
+    @Override
+    protected boolean isLocalIndexSynced()
+    {
+        return isFollowingPeers();
+    }
+
+    /**
+     * Reload the given stores changed by another node from Cassandra, and update the snapshot, the caches and the
+     * in-memory indexes accordingly.
+     */
+    public void refreshFromPeer( final Collection<StoreKey> keys )
+    {
+        CacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getCache( ARTIFACT_STORE );
+        for ( StoreKey key : keys )
+        {
+            final Map<StoreKey, ArtifactStore> stores = snapshot.get();
+            final ArtifactStore previous = stores == null ? cache.get( key ) : stores.get( key );
+            final ArtifactStore current = toArtifactStore(
+                    storeQuery.getArtifactStore( key.getPackageType(), key.getType(), key.getName() ) );
+
+            logger.debug( "Refresh store changed by peer: {}, found: {}", key, current != null );
+            bumpCacheVersion( key );
+            if ( current == null )
+            {
+                cache.remove( key );
+                remoteKojiStores.remove( key );
+                snapshot.remove( key );
+            }
+            else
+            {
+                cache.put( key, current, STORE_EXPIRATION_IN_MINS, TimeUnit.MINUTES );
+                if ( isKojiRemote( current ) )
+                {
+                    remoteKojiStores.put( key, current );
+                }
+                snapshot.put( current );
+            }
+            refreshLocalIndexes( key, current, previous );
+        }
+    }
+
+    private boolean isKojiRemote( final ArtifactStore store )
+    {
+        return remote == store.getType() && ( "koji".equals( store.getMetadata( ArtifactStore.METADATA_ORIGIN ) )
+                || "koji-binary".equals( store.getMetadata( ArtifactStore.METADATA_ORIGIN ) ) );
+    }
+
+    public void initRemoteStoresCache()
+    {
         // cache the remote koji repo
-        allStores.stream()
-                 .filter(
-                         s -> remote == s.getType() && ( "koji".equals( s.getMetadata( ArtifactStore.METADATA_ORIGIN ) )
-                                 || "koji-binary".equals( s.getMetadata( ArtifactStore.METADATA_ORIGIN ) ) ) )
-                 .forEach( s -> remoteKojiStores.put( s.getKey(), s ) );
+        try (Stream<ArtifactStore> stores = streamArtifactStores())
+        {
+            stores.filter( this::isKojiRemote ).forEach( s -> remoteKojiStores.put( s.getKey(), s ) );
+        }
     }
 
-    private ArtifactStore computeIfAbsent( StoreKey key, int expirationMins, boolean forceQuery )
+    private ArtifactStore computeIfAbsent( StoreKey key, int expirationMins )
     {
         logger.debug( "computeIfAbsent, cache: {}, key: {}", ARTIFACT_STORE, key );
 
         CacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getCache( ARTIFACT_STORE );
         ArtifactStore store = cache.get( key );
-        if ( store == null || forceQuery )
+        if ( store == null )
         {
             logger.trace( "Entry not found, run put, expirationMins: {}", expirationMins );
 
+            final long version = getCacheVersion( key );
             DtxArtifactStore dtxArtifactStore =
                     storeQuery.getArtifactStore( key.getPackageType(), key.getType(), key.getName() );
 
             store = toArtifactStore( dtxArtifactStore );
             if ( store != null )
             {
-                if ( expirationMins > 0 )
-                {
-                    cache.put( key, store, expirationMins, TimeUnit.MINUTES );
-                }
-                else
-                {
-                    cache.put( key, store );
-                }
+                cacheLoadedStore( cache, store, expirationMins, version );
             }
         }
 
@@ -667,6 +1210,29 @@ public class CassandraStoreDataManager
         return store;
     }
 
+    /**
+     * Cache a store loaded from Cassandra, unless its entry was written since the load started. A load never replaces
+     * an entry, which can only be newer than what it read.
+     */
+    private void cacheLoadedStore( final CacheHandle<StoreKey, ArtifactStore> cache, final ArtifactStore store,
+                                   final int expirationMins, final Long version )
+    {
+        if ( version == null || getCacheVersion( store.getKey() ) != version )
+        {
+            logger.trace( "Skip caching {}, its entry was written while loading it", store.getKey() );
+            return;
+        }
+
+        if ( expirationMins > 0 )
+        {
+            cache.putIfAbsent( store.getKey(), store, expirationMins, TimeUnit.MINUTES );
+        }
+        else
+        {
+            cache.putIfAbsent( store.getKey(), store );
+        }
+    }
+
     @Override
     protected CacheProducer getCacheProducer()
     {
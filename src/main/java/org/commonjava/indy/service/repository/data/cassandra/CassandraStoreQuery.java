@@ -16,24 +16,51 @@
 package org.commonjava.indy.service.repository.data.cassandra;
 
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.KeyspaceMetadata;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.commonjava.indy.service.repository.model.StoreKey;
 import org.commonjava.indy.service.repository.model.StoreType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.commonjava.indy.service.repository.data.cassandra.CassandraStoreUtil.TABLE_AFFECTED_STORE;
+import static org.commonjava.indy.service.repository.data.cassandra.CassandraStoreUtil.TABLE_MAINTENANCE_CLAIM;
+import static org.commonjava.indy.service.repository.data.cassandra.CassandraStoreUtil.TABLE_MAINTENANCE_PROGRESS;
 import static org.commonjava.indy.service.repository.data.cassandra.CassandraStoreUtil.TABLE_STORE;
 
 @ApplicationScoped
@@ -49,6 +76,17 @@ public class CassandraStoreQuery
     @Inject
     CassandraConfiguration config;
 
+    private static final int MAX_INFLIGHT_WRITES = 128;
+
+    private static final String STORE_COLUMNS_QUERY =
+            "SELECT packagetype, storeType, namehashprefix, name, description, transientMetadata, metadata, disabled, disableTimeout, pathStyle, pathMaskPatterns, authoritativeIndex, createTime, rescanInProgress, extras, attributes, version FROM ";
+
+    /**
+     * The version expected by {@link #casArtifactStore} for a store which must not exist yet, and returned by it when
+     * the store does not exist.
+     */
+    public static final long NO_STORE_VERSION = -1;
+
     private Mapper<DtxArtifactStore> storeMapper;
 
     private Session session;
@@ -59,9 +97,19 @@ public class CassandraStoreQuery
 
     private PreparedStatement preparedArtifactStoreDel;
 
+    private PreparedStatement preparedArtifactStoreDelIfVersion;
+
+    private PreparedStatement preparedArtifactStoreUpdateIfVersion;
+
+    private PreparedStatement preparedStoreKeysQuery;
+
+    private PreparedStatement preparedAttributesMigration;
+
+    private PreparedStatement preparedStoreKeysQueryByPartition;
+
 //    private PreparedStatement preparedArtifactStoreExistedQuery;
 
-    private PreparedStatement preparedArtifactStoresQueryByKeys;
+    private PreparedStatement preparedArtifactStoresQueryByNames;
 
     private PreparedStatement preparedAffectedStoresQuery;
 
@@ -73,6 +121,27 @@ public class CassandraStoreQuery
 
     private PreparedStatement preparedAffectedStoreDel;
 
+    private PreparedStatement preparedArtifactStoresQueryByPartition;
+
+    private PreparedStatement preparedAffectedStoresScan;
+
+    private PreparedStatement preparedProgressQuery;
+
+    private PreparedStatement preparedProgressInsert;
+
+    private PreparedStatement preparedProgressDel;
+
+    private PreparedStatement preparedClaimInsert;
+
+    private PreparedStatement preparedClaimRenew;
+
+    private PreparedStatement preparedClaimDel;
+
+    /**
+     * Completes the async queries, so their dependent stages decode rows and fill caches off the driver I/O threads.
+     */
+    private ExecutorService completionExecutor;
+
     public CassandraStoreQuery()
     {
     }
@@ -87,6 +156,12 @@ public class CassandraStoreQuery
     @PostConstruct
     public void init()
     {
+        final AtomicInteger threadCount = new AtomicInteger();
+        completionExecutor = Executors.newFixedThreadPool( Math.max( 1, config.getCompletionThreads() ), r -> {
+            Thread t = new Thread( r, "cassandra-store-query-" + threadCount.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        } );
 
         String keySpace = config.getKeyspace();
 
@@ -94,29 +169,56 @@ public class CassandraStoreQuery
         logger.info("Cassandra keyspace replicas configured: {}", config.getKeyspaceReplicas());
         session.execute( SchemaUtils.getSchemaCreateKeyspace( keySpace, config.getKeyspaceReplicas() ) );
         session.execute( CassandraStoreUtil.getSchemaCreateTableStore( keySpace ) );
+        addColumnIfMissing( keySpace, CassandraStoreUtil.ATTRIBUTES,
+                            CassandraStoreUtil.getSchemaAddAttributesColumn( keySpace ) );
+        addColumnIfMissing( keySpace, CassandraStoreUtil.VERSION,
+                            CassandraStoreUtil.getSchemaAddVersionColumn( keySpace ) );
         session.execute( CassandraStoreUtil.getSchemaCreateIndex4Store( keySpace ) );
         session.execute( CassandraStoreUtil.getSchemaCreateTableAffectedStore( keySpace ) );
+        session.execute( CassandraStoreUtil.getSchemaCreateTableMaintenanceProgress( keySpace ) );
+        session.execute( CassandraStoreUtil.getSchemaCreateTableMaintenanceClaim( keySpace ) );
 
         MappingManager manager = new MappingManager( session );
 
         storeMapper = manager.mapper( DtxArtifactStore.class, keySpace );
 
         preparedSingleArtifactStoreQuery = session.prepare(
-                "SELECT packagetype, storeType, namehashprefix, name, description, transientMetadata, metadata, disabled, disableTimeout, pathStyle, pathMaskPatterns, authoritativeIndex, createTime, rescanInProgress, extras FROM "
+                STORE_COLUMNS_QUERY
                         + keySpace + "." + TABLE_STORE + " WHERE typekey=? AND namehashprefix=? AND name=?" );
 
         preparedArtifactStoresQuery = session.prepare(
-                "SELECT packagetype, storeType, namehashprefix, name, description, transientMetadata, metadata, disabled, disableTimeout, pathStyle, pathMaskPatterns, authoritativeIndex, createTime, rescanInProgress, extras FROM "
+                STORE_COLUMNS_QUERY
                         + keySpace + "." + TABLE_STORE );
 
-        preparedArtifactStoresQueryByKeys = session.prepare(
-                "SELECT packagetype, storeType, namehashprefix, name, description, transientMetadata, metadata, disabled, disableTimeout, pathStyle, pathMaskPatterns, authoritativeIndex, createTime, rescanInProgress, extras FROM "
-                        + keySpace + "." + TABLE_STORE + " WHERE typekey=?" );
+        preparedArtifactStoresQueryByNames = session.prepare(
+                STORE_COLUMNS_QUERY
+                        + keySpace + "." + TABLE_STORE + " WHERE typekey=? AND namehashprefix=? AND name IN ?" );
+
 
+        preparedStoreKeysQuery =
+                session.prepare( "SELECT packagetype, storeType, name FROM " + keySpace + "." + TABLE_STORE );
+
+        preparedStoreKeysQueryByPartition = session.prepare(
+                "SELECT packagetype, storeType, name FROM " + keySpace + "." + TABLE_STORE
+                        + " WHERE typekey=? AND namehashprefix=?" );
+
+        preparedAttributesMigration = session.prepare(
+                "UPDATE " + keySpace + "." + TABLE_STORE + " SET " + CassandraStoreUtil.ATTRIBUTES
+                        + "=? WHERE typekey=? AND namehashprefix=? AND name=? IF " + CassandraStoreUtil.ATTRIBUTES
+                        + "=null" );
+
+        preparedArtifactStoreUpdateIfVersion = session.prepare(
+                "UPDATE " + keySpace + "." + TABLE_STORE + " SET packagetype=?, storetype=?, description=?, "
+                        + "transientmetadata=?, metadata=?, disabled=?, disabletimeout=?, pathstyle=?, "
+                        + "pathmaskpatterns=?, authoritativeindex=?, createtime=?, rescaninprogress=?, extras=?, "
+                        + "attributes=?, version=? WHERE typekey=? AND namehashprefix=? AND name=? IF version=?" );
 
         preparedArtifactStoreDel = session.prepare( "DELETE FROM " + keySpace + "." + TABLE_STORE
                                                             + " WHERE typekey=? AND namehashprefix=? AND name=? IF EXISTS" );
 
+        preparedArtifactStoreDelIfVersion = session.prepare( "DELETE FROM " + keySpace + "." + TABLE_STORE
+                                                                     + " WHERE typekey=? AND namehashprefix=? AND name=? IF version=?" );
+
         preparedAffectedStoresQuery = session.prepare(
                 "SELECT key, affectedStores FROM " + keySpace + "." + TABLE_AFFECTED_STORE + " WHERE key=? " );
 
@@ -131,6 +233,31 @@ public class CassandraStoreQuery
 
         preparedAffectedStoreDel =
                 session.prepare( "DELETE FROM " + keySpace + "." + TABLE_AFFECTED_STORE + " WHERE key=? " );
+
+        preparedArtifactStoresQueryByPartition = session.prepare(
+                STORE_COLUMNS_QUERY
+                        + keySpace + "." + TABLE_STORE + " WHERE typekey=? AND namehashprefix=?" );
+
+        preparedAffectedStoresScan =
+                session.prepare( "SELECT key, affectedStores FROM " + keySpace + "." + TABLE_AFFECTED_STORE );
+
+        preparedProgressQuery = session.prepare(
+                "SELECT item FROM " + keySpace + "." + TABLE_MAINTENANCE_PROGRESS + " WHERE job=?" );
+
+        preparedProgressInsert = session.prepare(
+                "INSERT INTO " + keySpace + "." + TABLE_MAINTENANCE_PROGRESS + " (job, item) VALUES (?, ?)" );
+
+        preparedProgressDel =
+                session.prepare( "DELETE FROM " + keySpace + "." + TABLE_MAINTENANCE_PROGRESS + " WHERE job=?" );
+
+        preparedClaimInsert = session.prepare( "INSERT INTO " + keySpace + "." + TABLE_MAINTENANCE_CLAIM
+                                                       + " (job, owner) VALUES (?, ?) IF NOT EXISTS USING TTL ?" );
+
+        preparedClaimRenew = session.prepare( "UPDATE " + keySpace + "." + TABLE_MAINTENANCE_CLAIM
+                                                      + " USING TTL ? SET owner=? WHERE job=? IF owner=?" );
+
+        preparedClaimDel = session.prepare(
+                "DELETE FROM " + keySpace + "." + TABLE_MAINTENANCE_CLAIM + " WHERE job=? IF owner=?" );
     }
 
     public DtxArtifactStore getArtifactStore( String packageType, StoreType type, String name )
@@ -142,29 +269,231 @@ public class CassandraStoreQuery
         return toDtxArtifactStore( result.one() );
     }
 
-    public Set<DtxArtifactStore> getArtifactStoresByPkgAndType( String packageType, StoreType type )
+    public CompletionStage<DtxArtifactStore> getArtifactStoreAsync( String packageType, StoreType type, String name )
     {
-
         BoundStatement bound =
-                preparedArtifactStoresQueryByKeys.bind( CassandraStoreUtil.getTypeKey( packageType, type.name() ) );
-        ResultSet result = session.execute( bound );
+                preparedSingleArtifactStoreQuery.bind( CassandraStoreUtil.getTypeKey( packageType, type.name() ),
+                                                       CassandraStoreUtil.getHashPrefix( name ), name );
+        return toCompletionStage( session.executeAsync( bound ) ).thenApply( rs -> toDtxArtifactStore( rs.one() ) );
+    }
+
+    /**
+     * Fetch the stores for the given keys. Keys are grouped by partition (typekey, namehashprefix) and each partition is
+     * read with one IN query, all partitions being queried in parallel.
+     */
+    public Set<DtxArtifactStore> getArtifactStores( Collection<StoreKey> keys )
+    {
+        List<ResultSetFuture> futures = new ArrayList<>();
+        bindByPartition( keys ).forEach( bound -> futures.add( session.executeAsync( bound ) ) );
 
         Set<DtxArtifactStore> dtxArtifactStoreSet = new HashSet<>();
-        result.forEach( row -> dtxArtifactStoreSet.add( toDtxArtifactStore( row ) ) );
+        futures.forEach( future -> future.getUninterruptibly()
+                                         .forEach( row -> dtxArtifactStoreSet.add( toDtxArtifactStore( row ) ) ) );
 
+        logger.trace( "Fetched {} stores for {} keys in {} partitions", dtxArtifactStoreSet.size(), keys.size(),
+                      futures.size() );
         return dtxArtifactStoreSet;
     }
 
+    /**
+     * Non-blocking variant of {@link #getArtifactStores(Collection)}.
+     */
+    public CompletionStage<Set<DtxArtifactStore>> getArtifactStoresAsync( Collection<StoreKey> keys )
+    {
+        return collectAllAsync( bindByPartition( keys ), this::toDtxArtifactStore );
+    }
+
+    /**
+     * Run the statements in parallel and merge all their rows, fetching the following pages without blocking.
+     */
+    private <T> CompletableFuture<Set<T>> collectAllAsync( List<BoundStatement> statements, Function<Row, T> mapper )
+    {
+        List<CompletableFuture<Set<T>>> futures = new ArrayList<>();
+        statements.forEach( bound -> futures.add( toCompletionStage( session.executeAsync( bound ) ).thenCompose(
+                rs -> collectAsync( rs, mapper, new HashSet<>() ) ) ) );
+
+        return CompletableFuture.allOf( futures.toArray( new CompletableFuture[0] ) ).thenApply( v -> {
+            Set<T> result = new HashSet<>();
+            futures.forEach( f -> result.addAll( f.join() ) );
+            return result;
+        } );
+    }
+
+    /**
+     * Bind the statement for every hash prefix bucket of the package and store type. Each one is a single partition
+     * read, routed to the replicas owning it, where a typekey_idx lookup has to ask every node of the cluster.
+     */
+    private List<BoundStatement> bindByBuckets( PreparedStatement prepared, String packageType, StoreType type )
+    {
+        final String typeKey = CassandraStoreUtil.getTypeKey( packageType, type.name() );
+        List<BoundStatement> statements = new ArrayList<>( CassandraStoreUtil.MODULO_VALUE );
+        for ( int prefix = 0; prefix < CassandraStoreUtil.MODULO_VALUE; prefix++ )
+        {
+            BoundStatement bound = prepared.bind( typeKey, prefix );
+            if ( config.getFetchSize() > 0 )
+            {
+                bound.setFetchSize( config.getFetchSize() );
+            }
+            statements.add( bound );
+        }
+        return statements;
+    }
+
+    private static <T> T join( CompletableFuture<T> future )
+    {
+        try
+        {
+            return future.join();
+        }
+        catch ( CompletionException e )
+        {
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private List<BoundStatement> bindByPartition( Collection<StoreKey> keys )
+    {
+        Map<String, Map<Integer, List<String>>> partitions = new HashMap<>();
+        keys.forEach( key -> partitions.computeIfAbsent(
+                                               CassandraStoreUtil.getTypeKey( key.getPackageType(), key.getType().name() ),
+                                               k -> new HashMap<>() )
+                                       .computeIfAbsent( CassandraStoreUtil.getHashPrefix( key.getName() ),
+                                                         k -> new ArrayList<>() )
+                                       .add( key.getName() ) );
+
+        List<BoundStatement> statements = new ArrayList<>();
+        partitions.forEach( ( typeKey, byPrefix ) -> byPrefix.forEach(
+                ( prefix, names ) -> statements.add(
+                        preparedArtifactStoresQueryByNames.bind( typeKey, prefix, names ) ) ) );
+        return statements;
+    }
+
+    /**
+     * List the stores of a package and store type, reading all the hash prefix buckets of the type in parallel.
+     */
+    public Set<DtxArtifactStore> getArtifactStoresByPkgAndType( String packageType, StoreType type )
+    {
+        return join( getArtifactStoresByPkgAndTypeAsync( packageType, type ).toCompletableFuture() );
+    }
+
+    /**
+     * Key-only projection of {@link #getArtifactStoresByPkgAndType(String, StoreType)}, which does not read the
+     * metadata and extras columns.
+     */
+    public Set<StoreKey> getStoreKeysByPkgAndType( String packageType, StoreType type )
+    {
+        return join( collectAllAsync( bindByBuckets( preparedStoreKeysQueryByPartition, packageType, type ),
+                                      this::toStoreKey ) );
+    }
+
+    public CompletionStage<Set<DtxArtifactStore>> getArtifactStoresByPkgAndTypeAsync( String packageType,
+                                                                                      StoreType type )
+    {
+        return collectAllAsync( bindByBuckets( preparedArtifactStoresQueryByPartition, packageType, type ),
+                                this::toDtxArtifactStore );
+    }
+
     public Set<DtxArtifactStore> getAllArtifactStores()
     {
+        try (Stream<DtxArtifactStore> stores = streamArtifactStores())
+        {
+            return stores.collect( Collectors.toSet() );
+        }
+    }
 
-        BoundStatement bound = preparedArtifactStoresQuery.bind();
-        ResultSet result = session.execute( bound );
+    /**
+     * Stream all the stores lazily. Rows are fetched page by page (see {@link CassandraConfiguration#getFetchSize()})
+     * while the stream is consumed, so only one page is held in memory at a time.
+     */
+    public Stream<DtxArtifactStore> streamArtifactStores()
+    {
+        return streamRows( preparedArtifactStoresQuery.bind() ).map( this::toDtxArtifactStore );
+    }
 
-        Set<DtxArtifactStore> dtxArtifactStoreSet = new HashSet<>();
-        result.forEach( row -> dtxArtifactStoreSet.add( toDtxArtifactStore( row ) ) );
+    /**
+     * Key-only projection of {@link #streamArtifactStores()}.
+     */
+    public Stream<StoreKey> streamArtifactStoreKeys()
+    {
+        return streamRows( preparedStoreKeysQuery.bind() ).map( this::toStoreKey );
+    }
 
-        return dtxArtifactStoreSet;
+    /**
+     * Stream the stores of one partition of the store table, i.e. one hash prefix bucket of a package and store type.
+     */
+    public Stream<DtxArtifactStore> streamArtifactStoresByPartition( String typeKey, int hashPrefix )
+    {
+        return streamRows( preparedArtifactStoresQueryByPartition.bind( typeKey, hashPrefix ) ).map(
+                this::toDtxArtifactStore );
+    }
+
+    public Stream<DtxAffectedStore> streamAffectedStores()
+    {
+        return streamRows( preparedAffectedStoresScan.bind() ).map( this::toDtxAffectedStore );
+    }
+
+    public Set<String> getMaintenanceProgress( String job )
+    {
+        try (Stream<String> items = streamRows( preparedProgressQuery.bind( job ) ).map( row -> row.getString( 0 ) ))
+        {
+            return items.collect( Collectors.toSet() );
+        }
+    }
+
+    public void addMaintenanceProgress( String job, String item )
+    {
+        session.execute( preparedProgressInsert.bind( job, item ) );
+    }
+
+    public void clearMaintenanceProgress( String job )
+    {
+        session.execute( preparedProgressDel.bind( job ) );
+    }
+
+    /**
+     * Claim the job for the owner across the cluster, for the given time unless renewed.
+     *
+     * @return false if another owner holds the claim
+     */
+    public boolean claimMaintenance( String job, String owner, int ttlSeconds )
+    {
+        return session.execute( preparedClaimInsert.bind( job, owner, ttlSeconds ) ).wasApplied();
+    }
+
+    /**
+     * Extend the claim of the owner for the given time.
+     *
+     * @return false if the claim expired or is held by another owner
+     */
+    public boolean renewMaintenanceClaim( String job, String owner, int ttlSeconds )
+    {
+        return session.execute( preparedClaimRenew.bind( ttlSeconds, owner, job, owner ) ).wasApplied();
+    }
+
+    public void releaseMaintenanceClaim( String job, String owner )
+    {
+        session.execute( preparedClaimDel.bind( job, owner ) );
+    }
+
+    private StoreKey toStoreKey( Row row )
+    {
+        return new StoreKey( row.getString( CassandraStoreUtil.PACKAGE_TYPE ),
+                             StoreType.get( row.getString( CassandraStoreUtil.STORE_TYPE ) ),
+                             row.getString( CassandraStoreUtil.NAME ) );
+    }
+
+    private Stream<Row> streamRows( final BoundStatement bound )
+    {
+        if ( config.getFetchSize() > 0 )
+        {
+            bound.setFetchSize( config.getFetchSize() );
+        }
+        ResultSet result = session.execute( bound );
+        return StreamSupport.stream( result.spliterator(), false );
     }
 
     public Boolean isEmpty()
@@ -209,14 +538,130 @@ public class CassandraStoreQuery
         store.setRescanInProgress( row.getBool( CassandraStoreUtil.RESCAN_IN_PROGRESS ) );
         store.setTransientMetadata( row.getMap( CassandraStoreUtil.TRANSIENT_METADATA, String.class, String.class ) );
         store.setExtras( row.getMap( CassandraStoreUtil.EXTRAS, String.class, String.class ) );
+        store.setAttributes( row.getBytes( CassandraStoreUtil.ATTRIBUTES ) );
+        store.setVersion( row.isNull( CassandraStoreUtil.VERSION ) ? null : row.getLong( CassandraStoreUtil.VERSION ) );
         return store;
     }
 
+    /**
+     * Set the encoded attributes of a store still in the legacy extras format. The update is conditional, so it does
+     * not overwrite the attributes written by a concurrent store update.
+     *
+     * @return true if the attributes were written
+     */
+    public boolean migrateAttributes( DtxArtifactStore dtxArtifactStore, ByteBuffer attributes )
+    {
+        BoundStatement bound =
+                preparedAttributesMigration.bind( attributes, dtxArtifactStore.getTypeKey(),
+                                                  dtxArtifactStore.getNameHashPrefix(), dtxArtifactStore.getName() );
+        return session.execute( bound ).wasApplied();
+    }
+
+    private void addColumnIfMissing( String keySpace, String column, String alterTable )
+    {
+        KeyspaceMetadata keyspaceMetadata = session.getCluster().getMetadata().getKeyspace( keySpace );
+        TableMetadata table = keyspaceMetadata == null ? null : keyspaceMetadata.getTable( TABLE_STORE );
+        if ( table != null && table.getColumn( column ) == null )
+        {
+            logger.info( "Add column {} to table {}.{}", column, keySpace, TABLE_STORE );
+            session.execute( alterTable );
+        }
+    }
+
     public void createDtxArtifactStore( DtxArtifactStore dtxArtifactStore )
     {
+        dropLegacyExtras( dtxArtifactStore );
         storeMapper.save( dtxArtifactStore );
     }
 
+    /**
+     * Write the store only if the stored row still has the expected version, in a lightweight transaction. The
+     * expected version is {@link #NO_STORE_VERSION} if the row must not exist, and 0 for a row written before
+     * versioning.
+     *
+     * @return the expected version if the store was written, otherwise the version of the stored row
+     */
+    public long casArtifactStore( DtxArtifactStore dtxArtifactStore, long expectedVersion )
+    {
+        return join( casArtifactStoreAsync( dtxArtifactStore, expectedVersion ).toCompletableFuture() );
+    }
+
+    /**
+     * Non-blocking variant of {@link #casArtifactStore(DtxArtifactStore, long)}.
+     */
+    public CompletionStage<Long> casArtifactStoreAsync( DtxArtifactStore dtxArtifactStore, long expectedVersion )
+    {
+        dropLegacyExtras( dtxArtifactStore );
+
+        final Statement statement;
+        if ( expectedVersion == NO_STORE_VERSION )
+        {
+            statement = storeMapper.saveQuery( dtxArtifactStore, Mapper.Option.ifNotExists( true ) );
+        }
+        else
+        {
+            statement = preparedArtifactStoreUpdateIfVersion.bind( dtxArtifactStore.getPackageType(),
+                                                                   dtxArtifactStore.getStoreType(),
+                                                                   dtxArtifactStore.getDescription(),
+                                                                   dtxArtifactStore.getTransientMetadata(),
+                                                                   dtxArtifactStore.getMetadata(),
+                                                                   dtxArtifactStore.isDisabled(),
+                                                                   dtxArtifactStore.getDisableTimeout(),
+                                                                   dtxArtifactStore.getPathStyle(),
+                                                                   dtxArtifactStore.getPathMaskPatterns(),
+                                                                   dtxArtifactStore.getAuthoritativeIndex(),
+                                                                   dtxArtifactStore.getCreateTime(),
+                                                                   dtxArtifactStore.getRescanInProgress(),
+                                                                   dtxArtifactStore.getExtras(),
+                                                                   dtxArtifactStore.getAttributes(),
+                                                                   dtxArtifactStore.getVersion(),
+                                                                   dtxArtifactStore.getTypeKey(),
+                                                                   dtxArtifactStore.getNameHashPrefix(),
+                                                                   dtxArtifactStore.getName(),
+                                                                   expectedVersion == 0 ? null : expectedVersion );
+        }
+
+        return toCompletionStage( session.executeAsync( statement ) ).thenApply(
+                result -> getCasVersion( result, expectedVersion ) );
+    }
+
+    /**
+     * Delete the store only if the stored row still has the given version.
+     *
+     * @return the given version if the store was deleted, otherwise the version of the stored row
+     */
+    public CompletionStage<Long> removeArtifactStoreIfVersionAsync( DtxArtifactStore dtxArtifactStore, long version )
+    {
+        BoundStatement bound = preparedArtifactStoreDelIfVersion.bind( dtxArtifactStore.getTypeKey(),
+                                                                       dtxArtifactStore.getNameHashPrefix(),
+                                                                       dtxArtifactStore.getName(), version );
+        return toCompletionStage( session.executeAsync( bound ) ).thenApply( result -> getCasVersion( result, version ) );
+    }
+
+    private static long getCasVersion( final ResultSet result, final long expectedVersion )
+    {
+        if ( result.wasApplied() )
+        {
+            return expectedVersion;
+        }
+
+        // a rejected condition returns the current values of the checked columns, none if the row doesn't exist
+        final Row current = result.one();
+        if ( current == null || !current.getColumnDefinitions().contains( CassandraStoreUtil.VERSION ) )
+        {
+            return NO_STORE_VERSION;
+        }
+        return current.isNull( CassandraStoreUtil.VERSION ) ? 0 : current.getLong( CassandraStoreUtil.VERSION );
+    }
+
+    private void dropLegacyExtras( DtxArtifactStore dtxArtifactStore )
+    {
+        if ( !config.isWriteLegacyExtras() && dtxArtifactStore.getAttributes() != null )
+        {
+            dtxArtifactStore.setExtras( null );
+        }
+    }
+
     public DtxAffectedStore getAffectedStore( StoreKey key )
     {
         BoundStatement bound = preparedAffectedStoresQuery.bind( key.toString() );
@@ -224,6 +669,12 @@ public class CassandraStoreQuery
         return toDtxAffectedStore( result.one() );
     }
 
+    public CompletionStage<DtxAffectedStore> getAffectedStoreAsync( StoreKey key )
+    {
+        BoundStatement bound = preparedAffectedStoresQuery.bind( key.toString() );
+        return toCompletionStage( session.executeAsync( bound ) ).thenApply( rs -> toDtxAffectedStore( rs.one() ) );
+    }
+
     private DtxAffectedStore toDtxAffectedStore( Row row )
     {
         if ( row == null )
@@ -240,24 +691,54 @@ public class CassandraStoreQuery
 
     public void addAffectedBy( StoreKey storeKey, StoreKey affected )
     {
-        BoundStatement bound = preparedAffectedStoresIncrement.bind();
+        addAffectedBy( Collections.singleton( storeKey ), affected );
+    }
 
-        Set<String> increment = new HashSet<>();
-        increment.add( affected.toString() );
-        bound.setSet( 0, increment );
-        bound.setString( 1, storeKey.toString() );
-        session.execute( bound );
+    /**
+     * Add the affected store to the affected_store rows of all the given keys, see {@link #updateAffectedStores}.
+     */
+    public void addAffectedBy( Collection<StoreKey> storeKeys, StoreKey affected )
+    {
+        updateAffectedStores( preparedAffectedStoresIncrement, storeKeys, affected );
     }
 
     public void removeAffectedBy( StoreKey storeKey, StoreKey affected )
     {
-        BoundStatement bound = preparedAffectedStoresReduction.bind();
+        removeAffectedBy( Collections.singleton( storeKey ), affected );
+    }
 
-        Set<String> reduction = new HashSet<>();
-        reduction.add( affected.toString() );
-        bound.setSet( 0, reduction );
-        bound.setString( 1, storeKey.toString() );
-        session.execute( bound );
+    public void removeAffectedBy( Collection<StoreKey> storeKeys, StoreKey affected )
+    {
+        updateAffectedStores( preparedAffectedStoresReduction, storeKeys, affected );
+    }
+
+    /**
+     * Each key is its own partition, so a batch would not help: the updates are sent concurrently instead, at most
+     * {@link #MAX_INFLIGHT_WRITES} at a time, and this returns when all of them completed.
+     */
+    private void updateAffectedStores( PreparedStatement prepared, Collection<StoreKey> storeKeys,
+                                       StoreKey affected )
+    {
+        final Set<String> value = Collections.singleton( affected.toString() );
+        final List<ResultSetFuture> inFlight = new ArrayList<>();
+        for ( StoreKey storeKey : storeKeys )
+        {
+            BoundStatement bound = prepared.bind();
+            bound.setSet( 0, value );
+            bound.setString( 1, storeKey.toString() );
+            inFlight.add( session.executeAsync( bound ) );
+            if ( inFlight.size() >= MAX_INFLIGHT_WRITES )
+            {
+                awaitWrites( inFlight );
+            }
+        }
+        awaitWrites( inFlight );
+    }
+
+    private static void awaitWrites( List<ResultSetFuture> inFlight )
+    {
+        inFlight.forEach( ResultSetFuture::getUninterruptibly );
+        inFlight.clear();
     }
 
     public Boolean isAffectedEmpty()
@@ -276,4 +757,64 @@ public class CassandraStoreQuery
             session.execute( bound );
         }
     }
+
+    /**
+     * Collect all the rows of the result set, fetching the following pages without blocking.
+     */
+    private <T> CompletableFuture<Set<T>> collectAsync( ResultSet resultSet, Function<Row, T> mapper, Set<T> into )
+    {
+        int available = resultSet.getAvailableWithoutFetching();
+        for ( int i = 0; i < available; i++ )
+        {
+            into.add( mapper.apply( resultSet.one() ) );
+        }
+
+        if ( resultSet.isFullyFetched() )
+        {
+            return CompletableFuture.completedFuture( into );
+        }
+        return toCompletionStage( resultSet.fetchMoreResults() ).thenCompose( rs -> collectAsync( rs, mapper, into ) );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( completionExecutor != null )
+        {
+            completionExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Bridge the driver future to a {@link CompletableFuture}, completed on the completion executor so that dependent
+     * stages do not run on the driver I/O threads. Once the executor is stopped, it completes on the calling thread.
+     */
+    private CompletableFuture<ResultSet> toCompletionStage( ListenableFuture<ResultSet> future )
+    {
+        CompletableFuture<ResultSet> result = new CompletableFuture<>();
+        future.addListener( () -> {
+            try
+            {
+                result.complete( future.get() );
+            }
+            catch ( ExecutionException e )
+            {
+                result.completeExceptionally( e.getCause() );
+            }
+            catch ( InterruptedException | RuntimeException e )
+            {
+                result.completeExceptionally( e );
+            }
+        }, command -> {
+            try
+            {
+                completionExecutor.execute( command );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                command.run();
+            }
+        } );
+        return result;
+    }
 }
@@ -20,6 +20,9 @@ public class CassandraStoreUtil
 
     public static final String TABLE_STORE = "artifactstore";
     public static final String TABLE_AFFECTED_STORE = "affected_store";
+    public static final String TABLE_MAINTENANCE_PROGRESS = "maintenance_progress";
+
+    public static final String TABLE_MAINTENANCE_CLAIM = "maintenance_claim";
 
     public static final String PACKAGE_TYPE = "packageType";
     public static final String STORE_TYPE = "storeType";
@@ -36,6 +39,8 @@ public class CassandraStoreUtil
     public static final String RESCAN_IN_PROGRESS = "rescanInProgress";
     public static final String AUTHORITATIVE_INDEX = "authoritativeIndex";
     public static final String EXTRAS = "extras";
+    public static final String ATTRIBUTES = "attributes";
+    public static final String VERSION = "version";
 
     // the attributes of abstract repository
     public static final String ALLOW_SNAPSHOTS = "allowSnapshots";
@@ -97,10 +102,35 @@ public class CassandraStoreUtil
                         + "authoritativeindex boolean,"
                         + "rescaninprogress boolean,"
                         + "extras map<text, text>,"
+                        + "attributes blob,"
+                        + "version bigint,"
                         + "PRIMARY KEY (( typekey, namehashprefix ), name )"
                         + ");";
     }
 
+    /**
+     * Add the attributes column to a store table created before it was introduced. Cassandra has no
+     * "ADD IF NOT EXISTS", so the caller checks the table metadata first.
+     */
+    public static String getSchemaAddAttributesColumn( String keySpace )
+    {
+        return getSchemaAddStoreColumn( keySpace, ATTRIBUTES, "blob" );
+    }
+
+    /**
+     * Add the version column to a store table created before it was introduced, see
+     * {@link #getSchemaAddAttributesColumn(String)}.
+     */
+    public static String getSchemaAddVersionColumn( String keySpace )
+    {
+        return getSchemaAddStoreColumn( keySpace, VERSION, "bigint" );
+    }
+
+    private static String getSchemaAddStoreColumn( String keySpace, String column, String type )
+    {
+        return "ALTER TABLE " + keySpace + "." + TABLE_STORE + " ADD " + column + " " + type;
+    }
+
     public static String getSchemaCreateTableAffectedStore( String keyspace )
     {
         return "CREATE TABLE IF NOT EXISTS " + keyspace + "." + TABLE_AFFECTED_STORE + " ("
@@ -110,6 +140,30 @@ public class CassandraStoreUtil
                         + ");";
     }
 
+    /**
+     * Checkpoints of the maintenance jobs: the items (e.g. store table partitions) already processed by a job.
+     */
+    public static String getSchemaCreateTableMaintenanceProgress( String keyspace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keyspace + "." + TABLE_MAINTENANCE_PROGRESS + " ("
+                        + "job varchar,"
+                        + "item varchar,"
+                        + "PRIMARY KEY (( job ), item )"
+                        + ");";
+    }
+
+    /**
+     * Claims of the maintenance jobs: the node running a job, held with a TTL renewed while it runs.
+     */
+    public static String getSchemaCreateTableMaintenanceClaim( String keyspace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keyspace + "." + TABLE_MAINTENANCE_CLAIM + " ("
+                        + "job varchar,"
+                        + "owner varchar,"
+                        + "PRIMARY KEY ( job )"
+                        + ");";
+    }
+
     public static String getSchemaCreateIndex4Store( String keyspace )
     {
         return "CREATE INDEX IF NOT EXISTS typekey_idx on " + keyspace + "." + TABLE_STORE + " (typekey)";
@@ -20,6 +20,7 @@ import com.datastax.driver.mapping.annotations.Column;
 import com.datastax.driver.mapping.annotations.PartitionKey;
 import com.datastax.driver.mapping.annotations.Table;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Set;
 
@@ -80,6 +81,18 @@ public class DtxArtifactStore
     @Column
     private Map<String, String> extras;
 
+    /**
+     * The specific attributes encoded by {@link StoreAttributesCodec}, which supersedes the legacy {@link #extras}
+     */
+    @Column
+    private ByteBuffer attributes;
+
+    /**
+     * Incremented by each update and compared by the conditional writes, null for rows written before versioning
+     */
+    @Column
+    private Long version;
+
     public String getTypeKey() { return typeKey; }
 
     public void setTypeKey( String typeKey ) { this.typeKey = typeKey; }
@@ -227,6 +240,26 @@ public class DtxArtifactStore
         this.extras = extras;
     }
 
+    public ByteBuffer getAttributes()
+    {
+        return attributes;
+    }
+
+    public void setAttributes( ByteBuffer attributes )
+    {
+        this.attributes = attributes;
+    }
+
+    public Long getVersion()
+    {
+        return version;
+    }
+
+    public void setVersion( Long version )
+    {
+        this.version = version;
+    }
+
     @Override
     public String toString()
     {
@@ -236,6 +269,7 @@ public class DtxArtifactStore
                         + ", metadata=" + metadata + ", disabled=" + disabled + ", disableTimeout=" + disableTimeout
                         + ", pathStyle='" + pathStyle + '\'' + ", pathMaskPatterns=" + pathMaskPatterns
                         + ", authoritativeIndex=" + authoritativeIndex + ", createTime='" + createTime + '\''
-                        + ", rescanInProgress=" + rescanInProgress + ", extras=" + extras + '}';
+                        + ", rescanInProgress=" + rescanInProgress + ", extras=" + extras + ", version=" + version
+                        + '}';
     }
 }
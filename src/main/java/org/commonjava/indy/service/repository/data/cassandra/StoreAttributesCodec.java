@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data.cassandra;
+
+import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.Group;
+import org.commonjava.indy.service.repository.model.HostedRepository;
+import org.commonjava.indy.service.repository.model.RemoteRepository;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.commonjava.indy.service.repository.model.StoreType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary encoding of the type specific attributes of a store, kept in the {@link CassandraStoreUtil#ATTRIBUTES}
+ * blob column. It replaces the per-field JSON values of the legacy extras map: every field is written at a fixed
+ * position for its store type, so decoding is a sequence of primitive reads without any JSON parsing, and group
+ * constituents are stored as (package type, type, name) triples instead of strings to be parsed again.
+ * <p>
+ * Layout: one format version byte, then for hosted repositories a flags byte (allowSnapshots, allowReleases, readonly),
+ * the snapshot timeout and the storage; for remote repositories a flags byte (allowSnapshots, allowReleases,
+ * passthrough, prefetchRescan, ignoreHostnameVerification), seven ints and eleven strings; for groups a flags byte
+ * (prependConstituent) and the constituent list. Strings are length prefixed UTF-8, with -1 for null.
+ */
+public final class StoreAttributesCodec
+{
+    static final byte FORMAT_VERSION = 1;
+
+    private StoreAttributesCodec()
+    {
+    }
+
+    public static ByteBuffer encode( final ArtifactStore store )
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 128 );
+        try (DataOutputStream out = new DataOutputStream( bytes ))
+        {
+            out.writeByte( FORMAT_VERSION );
+            if ( store instanceof HostedRepository )
+            {
+                HostedRepository hosted = (HostedRepository) store;
+                out.writeByte( flags( hosted.isAllowSnapshots(), hosted.isAllowReleases(), hosted.isReadonly() ) );
+                out.writeInt( hosted.getSnapshotTimeoutSeconds() );
+                writeString( out, hosted.getStorage() );
+            }
+            else if ( store instanceof RemoteRepository )
+            {
+                RemoteRepository remote = (RemoteRepository) store;
+                out.writeByte( flags( remote.isAllowSnapshots(), remote.isAllowReleases(), remote.isPassthrough(),
+                                      remote.isPrefetchRescan(), remote.isIgnoreHostnameVerification() ) );
+                out.writeInt( remote.getPort() );
+                out.writeInt( remote.getProxyPort() );
+                out.writeInt( remote.getTimeoutSeconds() );
+                out.writeInt( remote.getMetadataTimeoutSeconds() );
+                out.writeInt( remote.getCacheTimeoutSeconds() );
+                out.writeInt( remote.getNfcTimeoutSeconds() );
+                out.writeInt( remote.getMaxConnections() );
+                writeString( out, remote.getUrl() );
+                writeString( out, remote.getHost() );
+                writeString( out, remote.getUser() );
+                writeString( out, remote.getPassword() );
+                writeString( out, remote.getProxyHost() );
+                writeString( out, remote.getProxyUser() );
+                writeString( out, remote.getProxyPassword() );
+                writeString( out, remote.getKeyCertPem() );
+                writeString( out, remote.getKeyPassword() );
+                writeString( out, remote.getServerCertPem() );
+                writeString( out, remote.getPrefetchRescanTimestamp() );
+            }
+            else if ( store instanceof Group )
+            {
+                Group group = (Group) store;
+                out.writeByte( flags( group.isPrependConstituent() ) );
+                List<StoreKey> constituents = group.getConstituents();
+                out.writeInt( constituents == null ? 0 : constituents.size() );
+                if ( constituents != null )
+                {
+                    for ( StoreKey key : constituents )
+                    {
+                        writeString( out, key.getPackageType() );
+                        writeString( out, key.getType().name() );
+                        writeString( out, key.getName() );
+                    }
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            // writing to an in-memory buffer
+            throw new UncheckedIOException( e );
+        }
+        return ByteBuffer.wrap( bytes.toByteArray() );
+    }
+
+    /**
+     * Create the store of the given type with its type specific attributes. The common attributes are set by the
+     * caller.
+     *
+     * @throws IllegalArgumentException if the format version is not known
+     */
+    public static ArtifactStore decode( final String packageType, final StoreType type, final String name,
+                                        final ByteBuffer attributes )
+    {
+        final ByteBuffer in = attributes.duplicate();
+        final byte version = in.get();
+        if ( version != FORMAT_VERSION )
+        {
+            throw new IllegalArgumentException( "Unknown store attributes format version: " + version );
+        }
+
+        switch ( type )
+        {
+            case hosted:
+            {
+                HostedRepository hosted = new HostedRepository( packageType, name );
+                byte flags = in.get();
+                hosted.setAllowSnapshots( isSet( flags, 0 ) );
+                hosted.setAllowReleases( isSet( flags, 1 ) );
+                hosted.setReadonly( isSet( flags, 2 ) );
+                hosted.setSnapshotTimeoutSeconds( in.getInt() );
+                hosted.setStorage( readString( in ) );
+                return hosted;
+            }
+            case remote:
+            {
+                byte flags = in.get();
+                int port = in.getInt();
+                int proxyPort = in.getInt();
+                int timeoutSeconds = in.getInt();
+                int metadataTimeoutSeconds = in.getInt();
+                int cacheTimeoutSeconds = in.getInt();
+                int nfcTimeoutSeconds = in.getInt();
+                int maxConnections = in.getInt();
+
+                RemoteRepository remote = new RemoteRepository( packageType, name, readString( in ) );
+                remote.setAllowSnapshots( isSet( flags, 0 ) );
+                remote.setAllowReleases( isSet( flags, 1 ) );
+                remote.setPassthrough( isSet( flags, 2 ) );
+                remote.setPrefetchRescan( isSet( flags, 3 ) );
+                remote.setIgnoreHostnameVerification( isSet( flags, 4 ) );
+                // like the URL derived fields, a missing value keeps what the constructor calculated from the URL
+                setIfNotNull( remote::setHost, readString( in ) );
+                remote.setPort( port );
+                remote.setProxyPort( proxyPort );
+                remote.setTimeoutSeconds( timeoutSeconds );
+                remote.setMetadataTimeoutSeconds( metadataTimeoutSeconds );
+                remote.setCacheTimeoutSeconds( cacheTimeoutSeconds );
+                remote.setNfcTimeoutSeconds( nfcTimeoutSeconds );
+                remote.setMaxConnections( maxConnections );
+                setIfNotNull( remote::setUser, readString( in ) );
+                setIfNotNull( remote::setPassword, readString( in ) );
+                setIfNotNull( remote::setProxyHost, readString( in ) );
+                setIfNotNull( remote::setProxyUser, readString( in ) );
+                setIfNotNull( remote::setProxyPassword, readString( in ) );
+                setIfNotNull( remote::setKeyCertPem, readString( in ) );
+                setIfNotNull( remote::setKeyPassword, readString( in ) );
+                setIfNotNull( remote::setServerCertPem, readString( in ) );
+                setIfNotNull( remote::setPrefetchRescanTimestamp, readString( in ) );
+                return remote;
+            }
+            case group:
+            {
+                byte flags = in.get();
+                int size = in.getInt();
+                List<StoreKey> constituents = new ArrayList<>( size );
+                for ( int i = 0; i < size; i++ )
+                {
+                    constituents.add( new StoreKey( readString( in ), StoreType.valueOf( readString( in ) ),
+                                                    readString( in ) ) );
+                }
+                Group group = new Group( packageType, name, constituents );
+                group.setPrependConstituent( isSet( flags, 0 ) );
+                return group;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static void setIfNotNull( final Consumer<String> setter, final String value )
+    {
+        if ( value != null )
+        {
+            setter.accept( value );
+        }
+    }
+
+    private static int flags( final boolean... values )
+    {
+        int flags = 0;
+        for ( int i = 0; i < values.length; i++ )
+        {
+            if ( values[i] )
+            {
+                flags |= 1 << i;
+            }
+        }
+        return flags;
+    }
+
+    private static boolean isSet( final byte flags, final int bit )
+    {
+        return ( flags & ( 1 << bit ) ) != 0;
+    }
+
+    private static void writeString( final DataOutputStream out, final String value )
+            throws IOException
+    {
+        if ( value == null )
+        {
+            out.writeInt( -1 );
+            return;
+        }
+        byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    private static String readString( final ByteBuffer in )
+    {
+        int length = in.getInt();
+        if ( length < 0 )
+        {
+            return null;
+        }
+        if ( in.hasArray() )
+        {
+            String value =
+                    new String( in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8 );
+            in.position( in.position() + length );
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+}
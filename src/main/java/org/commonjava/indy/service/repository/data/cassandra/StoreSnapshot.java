@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data.cassandra;
+
+import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.StoreKey;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Immutable in-memory copy of every store, used by {@link CassandraStoreDataManager} in replicated snapshot mode to
+ * answer reads without hitting Cassandra. Each change publishes a new map (copy-on-write), so readers always see a
+ * consistent snapshot without locking; writes are rare compared to reads, which makes the copy affordable.
+ */
+public class StoreSnapshot
+{
+    private volatile Map<StoreKey, ArtifactStore> stores;
+
+    public boolean isLoaded()
+    {
+        return stores != null;
+    }
+
+    /**
+     * Replace the content with the given stores.
+     */
+    public synchronized void load( final Stream<ArtifactStore> all )
+    {
+        final Map<StoreKey, ArtifactStore> loaded = new HashMap<>();
+        all.forEach( store -> loaded.put( store.getKey(), store ) );
+        stores = Collections.unmodifiableMap( loaded );
+    }
+
+    public synchronized void clear()
+    {
+        stores = null;
+    }
+
+    /**
+     * Get the current snapshot, which does not change anymore. Null if the snapshot is not loaded.
+     */
+    public Map<StoreKey, ArtifactStore> get()
+    {
+        return stores;
+    }
+
+    public synchronized void put( final ArtifactStore store )
+    {
+        if ( stores != null )
+        {
+            final Map<StoreKey, ArtifactStore> updated = new HashMap<>( stores );
+            updated.put( store.getKey(), store );
+            stores = Collections.unmodifiableMap( updated );
+        }
+    }
+
+    public synchronized void remove( final StoreKey key )
+    {
+        if ( stores != null && stores.containsKey( key ) )
+        {
+            final Map<StoreKey, ArtifactStore> updated = new HashMap<>( stores );
+            updated.remove( key );
+            stores = Collections.unmodifiableMap( updated );
+        }
+    }
+}
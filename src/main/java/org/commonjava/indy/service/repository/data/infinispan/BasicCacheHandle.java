@@ -140,6 +140,11 @@ public class BasicCacheHandle<K, V>
         return doExecute( "putIfAbsent", ( c ) -> c.putIfAbsent( key, value ) );
     }
 
+    public V putIfAbsent( K key, V value, int expiration, TimeUnit timeUnit )
+    {
+        return doExecute( "putIfAbsent-with-expiration", c -> c.putIfAbsent( key, value, expiration, timeUnit ) );
+    }
+
     public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction )
     {
         return doExecute( "computeIfAbsent", c -> c.computeIfAbsent( key, mappingFunction ) );
@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -80,13 +81,13 @@ public class MemoryStoreDataManager
     }
 
     @Override
-    protected void removeAffectedBy( StoreKey key, StoreKey affected )
+    protected void removeAffectedBy( Collection<StoreKey> keys, StoreKey affected )
     {
 
     }
 
     @Override
-    protected void addAffectedBy( StoreKey key, StoreKey affected )
+    protected void addAffectedBy( Collection<StoreKey> keys, StoreKey affected )
     {
 
     }
@@ -112,6 +113,8 @@ public class MemoryStoreDataManager
     public void clear( final ChangeSummary summary )
     {
         stores.clear();
+        storeIndex.invalidate();
+        groupIndex.clear();
     }
 
     @Override
@@ -121,20 +124,21 @@ public class MemoryStoreDataManager
     }
 
     @Override
-    public Map<StoreKey, ArtifactStore> getArtifactStoresByKey()
+    public Stream<ArtifactStore> streamArtifactStores()
     {
-        return new HashMap<>( stores );
+        return stores.values().stream();
     }
 
     @Override
-    public boolean hasArtifactStore( final StoreKey key )
+    public Map<StoreKey, ArtifactStore> getArtifactStoresByKey()
     {
-        return stores.containsKey( key );
+        return new HashMap<>( stores );
     }
 
     @Override
-    public void reload()
+    public boolean hasArtifactStore( final StoreKey key )
     {
+        return stores.containsKey( key );
     }
 
     @Override
@@ -166,8 +170,9 @@ public class MemoryStoreDataManager
     }
 
     @Override
-    protected ArtifactStore putArtifactStoreInternal( StoreKey storeKey, ArtifactStore store )
+    protected ArtifactStore putArtifactStoreInternal( StoreKey storeKey, ArtifactStore store, ArtifactStore original )
     {
+        // the stores are local to this node, the version is already checked under the store lock
         return stores.put( storeKey, store );
     }
 
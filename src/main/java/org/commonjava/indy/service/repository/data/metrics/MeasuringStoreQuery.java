@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -629,6 +630,33 @@ public class MeasuringStoreQuery<T extends ArtifactStore>
         return result;
     }
 
+    @Override
+    public Set<Group> getGroupsAffectedBy( final Collection<StoreKey> keys, final int maxDepth )
+            throws IndyDataException
+    {
+        AtomicReference<IndyDataException> errorRef = new AtomicReference<>();
+        Set<Group> result = traceManager.wrapWithStandardMetrics( () -> {
+            try
+            {
+                return query.getGroupsAffectedBy( keys, maxDepth );
+            }
+            catch ( IndyDataException e )
+            {
+                errorRef.set( e );
+            }
+
+            return null;
+        }, () -> "getGroupsAffectedBy-depth" );
+
+        IndyDataException error = errorRef.get();
+        if ( error != null )
+        {
+            throw error;
+        }
+
+        return result;
+    }
+
     @Override
     public RemoteRepository getRemoteRepository( final String packageType, final String name )
             throws IndyDataException
@@ -878,4 +906,32 @@ public class MeasuringStoreQuery<T extends ArtifactStore>
 
         return result;
     }
+
+    // The async variants complete off the calling thread, so they are delegated without the synchronous timing wrapper
+
+    @Override
+    public CompletionStage<List<RemoteRepository>> getAllRemoteRepositoriesAsync( String packageType, Boolean enabled )
+    {
+        return query.getAllRemoteRepositoriesAsync( packageType, enabled );
+    }
+
+    @Override
+    public CompletionStage<List<HostedRepository>> getAllHostedRepositoriesAsync( String packageType, Boolean enabled )
+    {
+        return query.getAllHostedRepositoriesAsync( packageType, enabled );
+    }
+
+    @Override
+    public CompletionStage<List<Group>> getAllGroupsAsync( String packageType, Boolean enabled )
+    {
+        return query.getAllGroupsAsync( packageType, enabled );
+    }
+
+    @Override
+    public CompletionStage<List<ArtifactStore>> getOrderedConcreteStoresInGroupAsync( String packageType,
+                                                                                      String groupName,
+                                                                                      Boolean enabled )
+    {
+        return query.getOrderedConcreteStoresInGroupAsync( packageType, groupName, enabled );
+    }
 }
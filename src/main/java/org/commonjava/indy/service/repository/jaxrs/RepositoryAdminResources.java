@@ -53,6 +53,8 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.UriInfo;
@@ -65,6 +67,7 @@ import java.util.Map;
 
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
 import static jakarta.ws.rs.core.Response.Status.CONFLICT;
+import static jakarta.ws.rs.core.Response.Status.PRECONDITION_FAILED;
 import static jakarta.ws.rs.core.Response.noContent;
 import static jakarta.ws.rs.core.Response.notModified;
 import static jakarta.ws.rs.core.Response.ok;
@@ -228,6 +231,9 @@ public class RepositoryAdminResources
                   description = "The store was updated" )
     @APIResponse( responseCode = "400",
                   description = "The store specified in the body JSON didn't match the URL parameters" )
+    @APIResponse( responseCode = "409", description = "The store kept being modified concurrently" )
+    @APIResponse( responseCode = "412",
+                  description = "The If-Match header doesn't match the ETag of the current store definition" )
     @Path( "/{name}" )
     @PUT
     @Consumes( APPLICATION_JSON )
@@ -281,6 +287,28 @@ public class RepositoryAdminResources
                            .build();
         }
 
+        // with If-Match, the store is only updated if it still has the version the client got as ETag
+        final String ifMatch = request.getHttpHeaders().getHeaderString( HttpHeaders.IF_MATCH );
+        if ( ifMatch != null )
+        {
+            if ( "*".equals( ifMatch.trim() ) )
+            {
+                if ( !adminController.exists( store.getKey() ) )
+                {
+                    return status( PRECONDITION_FAILED ).build();
+                }
+            }
+            else
+            {
+                final Long version = parseVersionTag( ifMatch );
+                if ( version == null )
+                {
+                    return status( PRECONDITION_FAILED ).build();
+                }
+                store.setVersion( version );
+            }
+        }
+
         try
         {
             final String user = securityManager.getUser( request );
@@ -288,7 +316,7 @@ public class RepositoryAdminResources
             logger.info( "Storing: {}", store );
             if ( adminController.store( store, user, false ) )
             {
-                response = ok().build();
+                response = ok().tag( toVersionTag( store ) ).build();
             }
             else
             {
@@ -299,12 +327,44 @@ public class RepositoryAdminResources
         catch ( final IndyWorkflowException e )
         {
             logger.error( e.getMessage(), e );
-            response = responseHelper.formatResponse( e );
+            if ( store.getVersion() != null && e.getStatus() == CONFLICT.getStatusCode() )
+            {
+                response = responseHelper.formatResponse( PRECONDITION_FAILED, e.getMessage() );
+            }
+            else
+            {
+                response = responseHelper.formatResponse( e );
+            }
         }
 
         return response;
     }
 
+    private static EntityTag toVersionTag( final ArtifactStore store )
+    {
+        return new EntityTag( String.valueOf( store.getVersion() == null ? 0 : store.getVersion() ) );
+    }
+
+    /**
+     * Get the store version from a strong ETag, null if the tag is not one of ours.
+     */
+    private static Long parseVersionTag( final String tag )
+    {
+        final String value = tag.trim();
+        if ( value.length() < 3 || !value.startsWith( "\"" ) || !value.endsWith( "\"" ) )
+        {
+            return null;
+        }
+        try
+        {
+            return Long.parseLong( value.substring( 1, value.length() - 1 ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
     @Operation( description = "Retrieve the definitions of all artifact stores of a given type on the system" )
     @APIResponse( responseCode = "200",
                   content = @Content( schema = @Schema( implementation = StoreListingDTO.class ) ),
@@ -349,7 +409,7 @@ public class RepositoryAdminResources
                         content = @Content( schema = @Schema( implementation = StoreType.class ) ),
                         required = true ) } )
     @APIResponse( responseCode = "200", content = @Content( schema = @Schema( implementation = ArtifactStore.class ) ),
-                  description = "The store definition" )
+                  description = "The store definition, with its version as ETag" )
     @APIResponse( responseCode = "404", description = "The store doesn't exist" )
     @Path( "/{name}" )
     @GET
@@ -373,7 +433,8 @@ public class RepositoryAdminResources
             }
             else
             {
-                response = responseHelper.formatOkResponseWithJsonEntity( store );
+                response = responseHelper.formatOkResponseWithJsonEntity( store, builder -> builder.tag(
+                        toVersionTag( store ) ) );
             }
         }
         catch ( final IndyWorkflowException e )
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.jaxrs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.indy.service.repository.controller.AdminController;
+import org.commonjava.indy.service.repository.exception.IndyWorkflowException;
+import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.dto.StoreListingDTO;
+import org.commonjava.indy.service.repository.util.jackson.MapperUtil;
+import org.commonjava.indy.service.security.common.SecurityManager;
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.media.Content;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+import org.eclipse.microprofile.openapi.annotations.parameters.RequestBody;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
+import static jakarta.ws.rs.core.Response.Status.BAD_REQUEST;
+import static org.commonjava.indy.service.repository.model.ArtifactStore.METADATA_CHANGELOG;
+
+@Tag( name = "Store Bulk Administration", description = "Resource for managing several artifact stores together" )
+@Path( "/api/admin/stores/bulk" )
+@ApplicationScoped
+public class RepositoryBulkAdminResources
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    AdminController adminController;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    SecurityManager securityManager;
+
+    @Inject
+    ResponseHelper responseHelper;
+
+    @Operation( description = "Create or update several stores together, either all of them are stored or none" )
+    @RequestBody( description = "The listing of the artifact store definitions", name = "body", required = true,
+                  content = @Content( schema = @Schema( implementation = StoreListingDTO.class ) ) )
+    @APIResponse( responseCode = "200", content = @Content( schema = @Schema( implementation = StoreListingDTO.class ) ),
+                  description = "All the stores were stored" )
+    @APIResponse( responseCode = "400", description = "The listing is invalid or names a store more than once" )
+    @APIResponse( responseCode = "409", description = "One of the stores was modified concurrently, none was stored" )
+    @PUT
+    @Consumes( APPLICATION_JSON )
+    @Produces( APPLICATION_JSON )
+    public Response storeAll( final @Context HttpRequest request )
+    {
+        final List<ArtifactStore> stores = new ArrayList<>();
+        try
+        {
+            final JsonNode items = objectMapper.readTree( request.getInputStream() ).get( "items" );
+            if ( items == null || !items.isArray() )
+            {
+                return responseHelper.formatResponse( BAD_REQUEST, "No store listing in request body." );
+            }
+            for ( JsonNode item : items )
+            {
+                final String json = MapperUtil.patchLegacyStoreJson( objectMapper, item.toString() );
+                stores.add( objectMapper.readValue( json, ArtifactStore.class ) );
+            }
+        }
+        catch ( final IOException e )
+        {
+            final String message = "Failed to parse store listing from request body.";
+            logger.error( message, e );
+            return responseHelper.formatResponse( e, message );
+        }
+
+        try
+        {
+            final String user = securityManager.getUser( request );
+            final String changelog = request.getHttpHeaders().getHeaderString( METADATA_CHANGELOG );
+
+            logger.info( "Storing {} stores together", stores.size() );
+            adminController.storeAll( stores, user, changelog );
+            return responseHelper.formatOkResponseWithJsonEntity( new StoreListingDTO<>( stores ) );
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            logger.error( e.getMessage(), e );
+            return responseHelper.formatResponse( e );
+        }
+    }
+}
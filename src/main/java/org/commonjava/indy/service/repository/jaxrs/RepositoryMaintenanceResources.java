@@ -16,11 +16,16 @@
 package org.commonjava.indy.service.repository.jaxrs;
 
 import org.apache.commons.lang3.StringUtils;
-import org.commonjava.indy.service.repository.change.audit.DtxRepoOpsAuditRecord;
+import org.commonjava.indy.service.repository.change.audit.AuditLogPage;
 import org.commonjava.indy.service.repository.change.audit.StoreAuditManager;
 import org.commonjava.indy.service.repository.config.IndyRepositoryConfiguration;
 import org.commonjava.indy.service.repository.controller.MaintenanceController;
+import org.commonjava.indy.service.repository.exception.IndyWorkflowException;
+import org.commonjava.indy.service.repository.model.dto.AffectedStoreJobDTO;
 import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.media.Content;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 import org.slf4j.Logger;
@@ -38,15 +43,18 @@ import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.MediaType;
-import java.io.File;
+import jakarta.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 
 import static java.lang.System.currentTimeMillis;
 import static jakarta.ws.rs.core.HttpHeaders.CONTENT_DISPOSITION;
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
+import static jakarta.ws.rs.core.Response.Status.ACCEPTED;
 import static jakarta.ws.rs.core.Response.Status.BAD_REQUEST;
 import static jakarta.ws.rs.core.Response.Status.FORBIDDEN;
 import static jakarta.ws.rs.core.Response.Status.NOT_FOUND;
@@ -61,6 +69,8 @@ public class RepositoryMaintenanceResources
 {
     public static final String MEDIATYPE_APPLICATION_ZIP = "application/zip";
 
+    public static final String AUDIT_NEXT_PAGE = "Indy-Audit-Next-Page";
+
     @Inject
     MaintenanceController maintController;
 
@@ -70,6 +80,9 @@ public class RepositoryMaintenanceResources
     @Inject
     IndyRepositoryConfiguration repoConfig;
 
+    @Inject
+    ResponseHelper responseHelper;
+
     @Operation( description = "Retrieve a ZIP-compressed file containing all repository definitions." )
     @APIResponse( responseCode = "200", description = "The zip file contains all repos definitions" )
     @GET
@@ -77,21 +90,13 @@ public class RepositoryMaintenanceResources
     @Produces( MEDIATYPE_APPLICATION_ZIP )
     public Response getRepoBundle()
     {
-        try
-        {
-            File bundle = maintController.getRepoBundle();
-            Logger logger = LoggerFactory.getLogger( getClass() );
-            logger.info( "Returning repo bundle: {}", bundle );
+        Logger logger = LoggerFactory.getLogger( getClass() );
+        logger.info( "Streaming repo bundle" );
 
-            return ok( bundle ).header( CONTENT_DISPOSITION,
-                                        "attachment; filename=indy-repo-bundle-" + currentTimeMillis() + ".zip" )
-                               .build();
-        }
-        catch ( IOException e )
-        {
-            throw new WebApplicationException( "Cannot retrieve repository files, or failed to write to bundle zip.",
-                                               e );
-        }
+        StreamingOutput bundle = maintController::writeRepoBundle;
+        return ok( bundle ).header( CONTENT_DISPOSITION,
+                                    "attachment; filename=indy-repo-bundle-" + currentTimeMillis() + ".zip" )
+                           .build();
     }
 
     @Operation(
@@ -114,19 +119,91 @@ public class RepositoryMaintenanceResources
         }
     }
 
-    @Operation( description = "Check the audit log of the a specified repo changes." )
+    @Operation(
+            description = "Start rebuilding the affected_store reverse index in the background, resuming an interrupted rebuild unless restart is set." )
+    @APIResponse( responseCode = "202",
+                  content = @Content( schema = @Schema( implementation = AffectedStoreJobDTO.class ) ),
+                  description = "The rebuild is started" )
+    @APIResponse( responseCode = "409", description = "An affected_store job is already running" )
+    @POST
+    @Path( "/affected-store/rebuild" )
+    @Produces( APPLICATION_JSON )
+    public Response rebuildAffectedStores(
+            @Parameter( description = "Start from scratch instead of resuming an interrupted rebuild" )
+            @QueryParam( "restart" ) final boolean restart )
+    {
+        try
+        {
+            return Response.status( ACCEPTED ).entity( maintController.rebuildAffectedStores( restart ) ).build();
+        }
+        catch ( IndyWorkflowException e )
+        {
+            return responseHelper.formatResponse( e );
+        }
+    }
+
+    @Operation(
+            description = "Start checking the affected_store reverse index against the group definitions in the background, optionally repairing the drift." )
+    @APIResponse( responseCode = "202",
+                  content = @Content( schema = @Schema( implementation = AffectedStoreJobDTO.class ) ),
+                  description = "The verification is started" )
+    @APIResponse( responseCode = "409", description = "An affected_store job is already running" )
+    @POST
+    @Path( "/affected-store/verify" )
+    @Produces( APPLICATION_JSON )
+    public Response verifyAffectedStores(
+            @Parameter( description = "Repair the missing and stale entries found" ) @QueryParam( "repair" )
+            final boolean repair )
+    {
+        try
+        {
+            return Response.status( ACCEPTED ).entity( maintController.verifyAffectedStores( repair ) ).build();
+        }
+        catch ( IndyWorkflowException e )
+        {
+            return responseHelper.formatResponse( e );
+        }
+    }
+
+    @Operation( description = "Get the progress of the last affected_store rebuild or verify job." )
+    @APIResponse( responseCode = "200",
+                  content = @Content( schema = @Schema( implementation = AffectedStoreJobDTO.class ) ),
+                  description = "The job progress" )
+    @GET
+    @Path( "/affected-store/status" )
+    @Produces( APPLICATION_JSON )
+    public Response getAffectedStoreJobStatus()
+    {
+        try
+        {
+            return ok( maintController.getAffectedStoreJobStatus() ).build();
+        }
+        catch ( IndyWorkflowException e )
+        {
+            return responseHelper.formatResponse( e );
+        }
+    }
+
+    @Operation( description = "Check the audit log of the a specified repo changes, newest first. When more records "
+            + "are available, the token to get the next page is returned in the " + AUDIT_NEXT_PAGE + " header." )
     @APIResponse( responseCode = "200", description = "The audit log returned" )
+    @APIResponse( responseCode = "400", description = "The time range or page token is invalid" )
     @GET
     @Path( "/audit/{repo}" )
     @Consumes( MEDIATYPE_APPLICATION_ZIP )
     @Produces( APPLICATION_JSON )
     public Response getStoreAuditLogs( final @PathParam( "repo" ) String repoName,
                                        final @QueryParam( "ops" ) String ops,
-                                       final @QueryParam( "limit" ) String limit )
+                                       final @QueryParam( "limit" ) String limit,
+                                       final @Parameter( description = "Start of the time range, epoch millis or ISO-8601" )
+                                       @QueryParam( "from" ) String from,
+                                       final @Parameter( description = "End of the time range, epoch millis or ISO-8601" )
+                                       @QueryParam( "to" ) String to,
+                                       final @Parameter( description = "Page token returned with the previous page" )
+                                       @QueryParam( "page" ) String page )
     {
         if ( repoConfig.repoAuditEnabled() )
         {
-            List<DtxRepoOpsAuditRecord> records;
             if ( isBlank( repoName ) )
             {
                 return Response.status( BAD_REQUEST ).entity( "The repository name cannot be null" ).build();
@@ -142,18 +219,21 @@ public class RepositoryMaintenanceResources
             {
                 limitRecords = 1000;
             }
-            if ( isNotBlank( ops ) )
+
+            final AuditLogPage records;
+            try
             {
-                records = auditManager.getAuditLogByRepoAndOps( repoName, ops, limitRecords );
+                records = auditManager.getAuditLog( repoName, isNotBlank( ops ) ? ops : null, parseTime( from ),
+                                                    parseTime( to ), limitRecords, isNotBlank( page ) ? page : null );
             }
-            else
+            catch ( IllegalArgumentException e )
             {
-                records = auditManager.getAuditLogByRepo( repoName, limitRecords );
+                return Response.status( BAD_REQUEST ).entity( e.getMessage() ).build();
             }
 
-            if ( records != null && !records.isEmpty() )
+            if ( !records.getRecords().isEmpty() || records.getNextPage() != null )
             {
-                return Response.ok( records ).build();
+                return Response.ok( records.getRecords() ).header( AUDIT_NEXT_PAGE, records.getNextPage() ).build();
             }
             return Response.status( NOT_FOUND ).build();
         }
@@ -164,4 +244,27 @@ public class RepositoryMaintenanceResources
                            .build();
         }
     }
+
+    private static Long parseTime( final String time )
+    {
+        if ( isBlank( time ) )
+        {
+            return null;
+        }
+        try
+        {
+            return Long.parseLong( time );
+        }
+        catch ( NumberFormatException e )
+        {
+            try
+            {
+                return Instant.parse( time ).toEpochMilli();
+            }
+            catch ( DateTimeParseException pe )
+            {
+                throw new IllegalArgumentException( "Invalid time: " + time, pe );
+            }
+        }
+    }
 }
@@ -48,6 +48,9 @@ import jakarta.ws.rs.core.UriInfo;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
 
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
 import static jakarta.ws.rs.core.MediaType.TEXT_PLAIN;
@@ -110,13 +113,14 @@ public class RepositoryQueryResources
     @GET
     @Path( "/remotes/all" )
     @Produces( APPLICATION_JSON )
-    public Response getAllRemoteRepositories(
+    public CompletionStage<Response> getAllRemoteRepositories(
             @Parameter( description = "package type for the remotes, default is maven if not specified",
                         example = "maven|npm" ) @QueryParam( "packageType" ) final String packageType,
             @Parameter( description = "If the repositories retrieved are enabled, default is true if not specified",
                         example = "true" ) @QueryParam( "enabled" ) final String enabled )
     {
-        return generateStoreListingResponse( () -> queryController.getAllRemoteRepositories( packageType, enabled ) );
+        return generateStoreListingResponseAsync(
+                () -> queryController.getAllRemoteRepositoriesAsync( packageType, enabled ) );
     }
 
     @Operation( description = "Retrieve all remote repository hostname for setting up egress network policy" )
@@ -138,13 +142,14 @@ public class RepositoryQueryResources
     @GET
     @Path( "/hosteds/all" )
     @Produces( APPLICATION_JSON )
-    public Response getAllHostedRepositories(
+    public CompletionStage<Response> getAllHostedRepositories(
             @Parameter( description = "package type for the hosted repos, default is maven if not specified",
                         example = "maven|npm" ) @QueryParam( "packageType" ) final String packageType,
             @Parameter( description = "If the repositories retrieved are enabled, default is true if not specified",
                         example = "true" ) @QueryParam( "enabled" ) final String enabled )
     {
-        return generateStoreListingResponse( () -> queryController.getAllHostedRepositories( packageType, enabled ) );
+        return generateStoreListingResponseAsync(
+                () -> queryController.getAllHostedRepositoriesAsync( packageType, enabled ) );
     }
 
     @Operation( description = "Retrieve all group definitions by specified package type" )
@@ -155,13 +160,13 @@ public class RepositoryQueryResources
     @GET
     @Path( "/groups/all" )
     @Produces( APPLICATION_JSON )
-    public Response getAllGroups(
+    public CompletionStage<Response> getAllGroups(
             @Parameter( description = "package type for the groups,  default is maven if not specified",
                         example = "maven|npm" ) @QueryParam( "packageType" ) final String packageType,
             @Parameter( description = "If the repositories retrieved are enabled, default is true if not specified",
                         example = "true" ) @QueryParam( "enabled" ) final String enabled )
     {
-        return generateStoreListingResponse( () -> queryController.getAllGroups( packageType, enabled ) );
+        return generateStoreListingResponseAsync( () -> queryController.getAllGroupsAsync( packageType, enabled ) );
     }
 
     @Operation( description = "Retrieve all default package types" )
@@ -224,7 +229,7 @@ public class RepositoryQueryResources
     @GET
     @Path( "/concretes/inGroup" )
     @Produces( APPLICATION_JSON )
-    public Response getOrderedConcreteStoresInGroup(
+    public CompletionStage<Response> getOrderedConcreteStoresInGroup(
             @Parameter( description = "Key of the group whom the repositories are contained in", required = true,
                         example = "maven:group:public" ) @QueryParam( "storeKey" ) @Encoded final String storeKey,
             @Parameter( description = "If the repositories retrieved are enabled, default is true if not specified",
@@ -233,8 +238,8 @@ public class RepositoryQueryResources
         logger.debug( "StoreKey is {}", storeKey );
         final String storeKeyDecoded = UrlUtils.uriDecode( storeKey );
         logger.debug( "StoreKey decoded is {}", storeKeyDecoded );
-        return generateStoreListingResponse(
-                () -> queryController.getOrderedConcreteStoresInGroup( storeKeyDecoded, enabled ) );
+        return generateStoreListingResponseAsync(
+                () -> queryController.getOrderedConcreteStoresInGroupAsync( storeKeyDecoded, enabled ) );
     }
 
     @Operation( description = "Retrieve the stores which are constituents of the specified group" )
@@ -267,7 +272,9 @@ public class RepositoryQueryResources
     public Response getGroupsAffectedBy(
             @Parameter( description = "Store keys whom the groups are affected by, use \",\" to split", required = true,
                         example = "maven:remote:central,maven:hosted:local" ) @QueryParam( "keys" ) @Encoded
-            final String keys )
+            final String keys,
+            @Parameter( description = "How many levels of group membership to follow, all of them if not set",
+                        example = "1" ) @QueryParam( "maxDepth" ) final Integer maxDepth )
     {
         if ( keys == null )
         {
@@ -283,7 +290,7 @@ public class RepositoryQueryResources
             {
                 throw new IndyWorkflowException( BAD_REQUEST.getStatusCode(), "Illegal storeKeys: can not be empty" );
             }
-            return queryController.getGroupsAffectedBy( keysArr );
+            return queryController.getGroupsAffectedBy( keysArr, maxDepth );
         } );
     }
 
@@ -394,6 +401,34 @@ public class RepositoryQueryResources
         }
     }
 
+    /**
+     * Async counterpart of {@link #generateStoreListingResponse(ArtifactStoreListSupplier)}, which does not hold the
+     * request thread while the stores are being loaded.
+     */
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    private CompletionStage<Response> generateStoreListingResponseAsync(
+            Supplier<CompletionStage<? extends List<? extends ArtifactStore>>> supplier )
+    {
+        return supplier.get().handle( ( stores, error ) -> {
+            if ( error != null )
+            {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ?
+                        error.getCause() :
+                        error;
+                logger.error( cause.getMessage() );
+                return responseHelper.formatResponse( cause );
+            }
+
+            logger.debug( "Returning listing containing stores:\n\t{}", new JoinString( "\n\t", stores ) );
+            if ( stores == null || stores.isEmpty() )
+            {
+                return Response.status( NOT_FOUND ).build();
+            }
+            final StoreListingDTO<ArtifactStore> dto = new StoreListingDTO( stores );
+            return responseHelper.formatOkResponseWithJsonEntity( dto );
+        } );
+    }
+
     @FunctionalInterface
     private interface ArtifactStoreListSupplier
     {
@@ -15,6 +15,10 @@
  */
 package org.commonjava.indy.service.repository.jaxrs.version;
 
+import org.commonjava.indy.service.repository.change.audit.AuditWriterStats;
+import org.commonjava.indy.service.repository.change.event.kafka.EventPublishStats;
+import org.commonjava.indy.service.repository.concurrent.DispatchStats;
+import org.commonjava.indy.service.repository.concurrent.LockStats;
 import org.commonjava.indy.service.repository.controller.StatsController;
 import org.commonjava.indy.service.repository.exception.IndyWorkflowException;
 import org.commonjava.indy.service.repository.jaxrs.ResponseHelper;
@@ -47,6 +51,7 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
+import static jakarta.ws.rs.core.Response.Status.NOT_FOUND;
 import static jakarta.ws.rs.core.Response.ok;
 import static org.commonjava.indy.service.repository.model.PackageTypes.getPackageTypeDescriptorMap;
 import static org.commonjava.indy.service.repository.model.PackageTypes.getPackageTypes;
@@ -135,6 +140,58 @@ public class StatsHandler
         return response;
     }
 
+    @Operation( summary = "Retrieve the contention statistics of the store update locks of this APP instance" )
+    @APIResponse( responseCode = "200", content = @Content( schema = @Schema( implementation = LockStats.class ) ),
+                  description = "The lock statistics" )
+    @Path( "/store-locks" )
+    @GET
+    @Produces( APPLICATION_JSON )
+    public Response getStoreLockStats()
+    {
+        return responseHelper.formatOkResponseWithJsonEntity( statsController.getStoreLockStats() );
+    }
+
+    @Operation( summary = "Retrieve the queue statistics of the store event dispatch of this APP instance" )
+    @APIResponse( responseCode = "200", content = @Content( schema = @Schema( implementation = DispatchStats.class ) ),
+                  description = "The event dispatch statistics" )
+    @Path( "/event-dispatch" )
+    @GET
+    @Produces( APPLICATION_JSON )
+    public Response getEventDispatchStats()
+    {
+        return responseHelper.formatOkResponseWithJsonEntity( statsController.getEventDispatchStats() );
+    }
+
+    @Operation( summary = "Retrieve the batching statistics of the store events published by this APP instance" )
+    @APIResponse( responseCode = "200",
+                  content = @Content( schema = @Schema( implementation = EventPublishStats.class ) ),
+                  description = "The event publishing statistics" )
+    @Path( "/event-publishing" )
+    @GET
+    @Produces( APPLICATION_JSON )
+    public Response getEventPublishStats()
+    {
+        return responseHelper.formatOkResponseWithJsonEntity( statsController.getEventPublishStats() );
+    }
+
+    @Operation( summary = "Retrieve the statistics of the audit log writer of this APP instance" )
+    @APIResponse( responseCode = "200",
+                  content = @Content( schema = @Schema( implementation = AuditWriterStats.class ) ),
+                  description = "The audit writer statistics" )
+    @APIResponse( responseCode = "404", description = "The repository audit is not enabled" )
+    @Path( "/audit-writer" )
+    @GET
+    @Produces( APPLICATION_JSON )
+    public Response getAuditWriterStats()
+    {
+        final AuditWriterStats stats = statsController.getAuditWriterStats();
+        if ( stats == null )
+        {
+            return Response.status( NOT_FOUND ).build();
+        }
+        return responseHelper.formatOkResponseWithJsonEntity( stats );
+    }
+
     @Operation(
             summary = "Retrieve a listing of the artifact stores keys available on the system." )
     @APIResponse( responseCode = "200",
@@ -55,7 +55,7 @@ public abstract class ArtifactStore
 {
     final Logger logger = LoggerFactory.getLogger( this.getClass() );
 
-    private static final int ARTIFACT_STORE_VERSION = 1;
+    private static final int ARTIFACT_STORE_VERSION = 2;
 
     public static final String PKG_TYPE_ATTR = "packageType";
 
@@ -99,6 +99,13 @@ public abstract class ArtifactStore
     @JsonIgnore
     private Boolean rescanInProgress = false;
 
+    /**
+     * Version of the stored definition, incremented by each update. A store carrying a version is only written if the
+     * stored definition still has that version; null means an unconditional write. The REST API exposes it as ETag.
+     */
+    @JsonIgnore
+    private Long version;
+
     public ArtifactStore()
     {
     }
@@ -253,6 +260,7 @@ public abstract class ArtifactStore
     protected void copyBase( ArtifactStore store )
     {
         store.setRescanInProgress( isRescanInProgress() );
+        store.setVersion( getVersion() );
         store.setDescription( getDescription() );
         store.setDisabled( isDisabled() );
         store.setMetadata( getMetadata() );
@@ -329,6 +337,16 @@ public abstract class ArtifactStore
         this.rescanInProgress = rescanInProgress;
     }
 
+    public Long getVersion()
+    {
+        return version;
+    }
+
+    public void setVersion( Long version )
+    {
+        this.version = version;
+    }
+
     public String getCreateTime()
     {
         if ( StringUtils.isBlank( this.createTime ) )
@@ -383,6 +401,7 @@ public abstract class ArtifactStore
         out.writeObject( authoritativeIndex );
         out.writeObject( createTime );
         out.writeObject( rescanInProgress );
+        out.writeObject( version );
     }
 
     @Override
@@ -418,5 +437,9 @@ public abstract class ArtifactStore
         this.authoritativeIndex = (Boolean) in.readObject();
         this.createTime = (String) in.readObject();
         this.rescanInProgress = (Boolean) in.readObject();
+        if ( artifactStoreVersion > 1 )
+        {
+            this.version = (Long) in.readObject();
+        }
     }
 }
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+@Schema( type = SchemaType.OBJECT, description = "Progress of a maintenance job of the affected-by reverse index" )
+@JsonInclude( JsonInclude.Include.NON_NULL )
+public class AffectedStoreJobDTO
+{
+    @JsonProperty
+    @Schema( description = "The job: rebuild or verify" )
+    private String job;
+
+    @JsonProperty
+    @Schema( description = "The job state: idle, running, done or failed", required = true )
+    private String state;
+
+    @JsonProperty
+    @Schema( description = "Whether the drift found by verify is repaired" )
+    private Boolean repair;
+
+    @JsonProperty
+    @Schema( description = "Number of store table partitions to process" )
+    private Integer totalPartitions;
+
+    @JsonProperty
+    @Schema( description = "Number of store table partitions processed, including the ones of a resumed run" )
+    private Integer completedPartitions;
+
+    @JsonProperty
+    @Schema( description = "Number of groups processed" )
+    private Long groups;
+
+    @JsonProperty
+    @Schema( description = "Number of reverse mapping entries missing for a group membership" )
+    private Long missing;
+
+    @JsonProperty
+    @Schema( description = "Number of reverse mapping entries without matching group membership" )
+    private Long stale;
+
+    @JsonProperty
+    @Schema( description = "Start time in milliseconds since epoch" )
+    private Long startTime;
+
+    @JsonProperty
+    @Schema( description = "End time in milliseconds since epoch" )
+    private Long endTime;
+
+    @JsonProperty
+    @Schema( description = "Error message if the job failed" )
+    private String error;
+
+    public String getJob()
+    {
+        return job;
+    }
+
+    public void setJob( String job )
+    {
+        this.job = job;
+    }
+
+    public String getState()
+    {
+        return state;
+    }
+
+    public void setState( String state )
+    {
+        this.state = state;
+    }
+
+    public Boolean getRepair()
+    {
+        return repair;
+    }
+
+    public void setRepair( Boolean repair )
+    {
+        this.repair = repair;
+    }
+
+    public Integer getTotalPartitions()
+    {
+        return totalPartitions;
+    }
+
+    public void setTotalPartitions( Integer totalPartitions )
+    {
+        this.totalPartitions = totalPartitions;
+    }
+
+    public Integer getCompletedPartitions()
+    {
+        return completedPartitions;
+    }
+
+    public void setCompletedPartitions( Integer completedPartitions )
+    {
+        this.completedPartitions = completedPartitions;
+    }
+
+    public Long getGroups()
+    {
+        return groups;
+    }
+
+    public void setGroups( Long groups )
+    {
+        this.groups = groups;
+    }
+
+    public Long getMissing()
+    {
+        return missing;
+    }
+
+    public void setMissing( Long missing )
+    {
+        this.missing = missing;
+    }
+
+    public Long getStale()
+    {
+        return stale;
+    }
+
+    public void setStale( Long stale )
+    {
+        this.stale = stale;
+    }
+
+    public Long getStartTime()
+    {
+        return startTime;
+    }
+
+    public void setStartTime( Long startTime )
+    {
+        this.startTime = startTime;
+    }
+
+    public Long getEndTime()
+    {
+        return endTime;
+    }
+
+    public void setEndTime( Long endTime )
+    {
+        this.endTime = endTime;
+    }
+
+    public String getError()
+    {
+        return error;
+    }
+
+    public void setError( String error )
+    {
+        this.error = error;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AuditLogWriterTest
+{
+    @Test
+    public void recordsWrittenGroupedByPartition()
+    {
+        List<List<DtxRepoOpsAuditRecord>> writes = Collections.synchronizedList( new ArrayList<>() );
+        AuditLogWriter writer = new AuditLogWriter( 100, 50, 2, AuditLogWriter.OverflowPolicy.DROP, records -> {
+            writes.add( records );
+            return CompletableFuture.completedFuture( null );
+        } );
+        for ( int i = 0; i < 10; i++ )
+        {
+            DtxRepoOpsAuditRecord record = record( "maven:hosted:" + ( i % 2 ), i );
+            record.setBucket( i < 6 ? 202301 : 202302 );
+            writer.offer( record );
+        }
+        writer.start();
+
+        assertThat( writer.shutdown( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        AuditWriterStats stats = writer.getStats();
+        assertThat( stats.getWritten(), equalTo( 10L ) );
+        assertThat( stats.getQueued(), equalTo( 0 ) );
+        assertThat( writes.size(), equalTo( 4 ) );
+        for ( List<DtxRepoOpsAuditRecord> write : writes )
+        {
+            assertThat( write.stream().map( DtxRepoOpsAuditRecord::getRepoName ).distinct().count(),
+                        equalTo( 1L ) );
+            assertThat( write.stream().map( DtxRepoOpsAuditRecord::getBucket ).distinct().count(), equalTo( 1L ) );
+        }
+    }
+
+    @Test
+    public void fullQueueDropsAndFailuresCounted()
+    {
+        AuditLogWriter writer = new AuditLogWriter( 2, 50, 1, AuditLogWriter.OverflowPolicy.LOG, records -> {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally( new IllegalStateException( "expected" ) );
+            return failed;
+        } );
+        assertThat( writer.offer( record( "maven:hosted:a", 0 ) ), equalTo( true ) );
+        assertThat( writer.offer( record( "maven:hosted:a", 1 ) ), equalTo( true ) );
+        assertThat( writer.offer( record( "maven:hosted:a", 2 ) ), equalTo( false ) );
+        writer.start();
+
+        assertThat( writer.shutdown( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        AuditWriterStats stats = writer.getStats();
+        assertThat( stats.getDropped(), equalTo( 1L ) );
+        assertThat( stats.getFailed(), equalTo( 2L ) );
+        assertThat( stats.getWritten(), equalTo( 0L ) );
+    }
+
+    private static DtxRepoOpsAuditRecord record( final String repoName, final int n )
+    {
+        DtxRepoOpsAuditRecord record = new DtxRepoOpsAuditRecord();
+        record.setRepoName( repoName );
+        record.setTime( String.valueOf( n ) );
+        record.setOperation( AuditOps.OPS_UPDATE );
+        return record;
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change.audit;
+
+import com.datastax.driver.core.Session;
+import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
+import org.commonjava.indy.service.repository.data.cassandra.CassandraClient;
+import org.commonjava.indy.service.repository.data.cassandra.CassandraConfiguration;
+import org.commonjava.indy.service.repository.testutil.TestRepositoryConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Disabled( "Cassandra dbunit always has problems to clean up resources when running test suite in maven" )
+public class CassandraStoreAuditManagerTest
+{
+    private static final String REPO = "maven:hosted:test";
+
+    private static final String KEYSPACE = "noncontent";
+
+    CassandraClient client;
+
+    StoreAuditManager auditManager;
+
+    @BeforeEach
+    public void start()
+            throws Exception
+    {
+        EmbeddedCassandraServerHelper.startEmbeddedCassandra();
+
+        CassandraConfiguration config = new CassandraConfiguration();
+        config.setEnabled( true );
+        config.setCassandraHost( "localhost" );
+        config.setCassandraPort( 9142 );
+        config.setKeyspaceReplicas( 1 );
+        config.setKeyspace( KEYSPACE );
+        config.setCassandraUser( "user" );
+        config.setCassandraPass( "pass" );
+
+        client = new CassandraClient( config );
+        auditManager = new StoreAuditManager( client, config,
+                                              TestRepositoryConfiguration.create( Map.of( "audit", true ) ) );
+
+        // the records are written through the legacy table, the only way to choose their time
+        Session session = client.getSession( KEYSPACE );
+        session.execute( "CREATE TABLE IF NOT EXISTS " + KEYSPACE + "." + StoreAuditManager.TABLE_AUDIT
+                                 + " (time varchar, reponame varchar, operation varchar, changecontent varchar,"
+                                 + " PRIMARY KEY ((reponame), time)) WITH CLUSTERING ORDER BY (time DESC)" );
+        legacyRecord( session, "2023-01-10 08:00:00.000", AuditOps.OPS_ADD );
+        legacyRecord( session, "2023-01-20 08:00:00.000", AuditOps.OPS_UPDATE );
+        legacyRecord( session, "2023-01-30 08:00:00.000", AuditOps.OPS_UPDATE );
+        legacyRecord( session, "2023-02-10 08:00:00.000", AuditOps.OPS_DISABLE );
+        legacyRecord( session, "2023-02-20 08:00:00.000", AuditOps.OPS_UPDATE );
+        legacyRecord( session, "not a time", AuditOps.OPS_UPDATE );
+    }
+
+    @AfterEach
+    public void stop()
+    {
+        auditManager.stop();
+        client.close();
+        EmbeddedCassandraServerHelper.cleanEmbeddedCassandra();
+    }
+
+    private static void legacyRecord( final Session session, final String time, final String ops )
+    {
+        session.execute( "INSERT INTO " + KEYSPACE + "." + StoreAuditManager.TABLE_AUDIT
+                                 + " (time, reponame, operation, changecontent) VALUES (?, ?, ?, ?)", time, REPO,
+                         ops, ops + " at " + time );
+    }
+
+    private static long millis( final String time )
+    {
+        return Instant.parse( time ).toEpochMilli();
+    }
+
+    private List<DtxRepoOpsAuditRecord> readAll( final String ops, final Long from, final Long to, final int limit )
+    {
+        final List<DtxRepoOpsAuditRecord> records = new ArrayList<>();
+        String page = null;
+        do
+        {
+            final AuditLogPage result = auditManager.getAuditLog( REPO, ops, from, to, limit, page );
+            records.addAll( result.getRecords() );
+            page = result.getNextPage();
+        }
+        while ( page != null );
+        return records;
+    }
+
+    @Test
+    public void legacyRecordsMigratedOnce()
+    {
+        assertThat( auditManager.migrateLegacyAuditLog(), equalTo( 5L ) );
+        assertThat( auditManager.migrateLegacyAuditLog(), equalTo( 0L ) );
+
+        final List<DtxRepoOpsAuditRecord> records = readAll( null, null, null, 100 );
+        assertThat( records.size(), equalTo( 5 ) );
+        assertThat( records.get( 0 ).getTime(), equalTo( "2023-02-20 08:00:00.000" ) );
+        assertThat( records.get( 0 ).getBucket(), equalTo( 202302 ) );
+        assertThat( records.get( 4 ).getChangeContent(), equalTo( AuditOps.OPS_ADD + " at 2023-01-10 08:00:00.000" ) );
+    }
+
+    @Test
+    public void pagesAcrossBuckets()
+    {
+        auditManager.migrateLegacyAuditLog();
+
+        // without an end of range, each page must still continue the same query
+        final List<DtxRepoOpsAuditRecord> records = readAll( null, null, null, 2 );
+        assertThat( records.size(), equalTo( 5 ) );
+        for ( int i = 1; i < records.size(); i++ )
+        {
+            assertThat( records.get( i - 1 ).getTime().compareTo( records.get( i ).getTime() ) > 0, equalTo( true ) );
+        }
+
+        final List<DtxRepoOpsAuditRecord> updates = readAll( AuditOps.OPS_UPDATE, null, null, 1 );
+        assertThat( updates.size(), equalTo( 3 ) );
+    }
+
+    @Test
+    public void filtersTimeRange()
+    {
+        auditManager.migrateLegacyAuditLog();
+
+        assertThat( readAll( null, millis( "2023-02-01T00:00:00Z" ), null, 100 ).size(), equalTo( 2 ) );
+        assertThat( readAll( null, millis( "2023-01-15T00:00:00Z" ), millis( "2023-02-15T00:00:00Z" ), 1 ).size(),
+                    equalTo( 3 ) );
+        assertThat( readAll( AuditOps.OPS_UPDATE, null, millis( "2023-01-31T00:00:00Z" ), 100 ).size(),
+                    equalTo( 2 ) );
+
+        final AuditLogPage empty = auditManager.getAuditLog( REPO, null, millis( "2024-01-01T00:00:00Z" ), null, 10,
+                                                             null );
+        assertThat( empty.getRecords().isEmpty(), equalTo( true ) );
+        assertThat( empty.getNextPage(), nullValue() );
+    }
+
+    @Test
+    public void rejectsPageOfAnotherQuery()
+    {
+        auditManager.migrateLegacyAuditLog();
+
+        final String next = auditManager.getAuditLog( REPO, null, null, null, 1, null ).getNextPage();
+        assertThrows( IllegalArgumentException.class,
+                      () -> auditManager.getAuditLog( REPO, AuditOps.OPS_UPDATE, null, null, 1, next ) );
+        assertThrows( IllegalArgumentException.class,
+                      () -> auditManager.getAuditLog( REPO, null, null, millis( "2023-01-31T00:00:00Z" ), 1,
+                                                      next ) );
+        assertThrows( IllegalArgumentException.class,
+                      () -> auditManager.getAuditLog( REPO, null, null, null, 1, "202301" ) );
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StoreAuditManagerTest
+{
+    @Test
+    public void bucketIsUtcMonth()
+    {
+        assertThat( StoreAuditManager.getBucket( Instant.parse( "2023-01-01T00:00:00Z" ).toEpochMilli() ),
+                    equalTo( 202301 ) );
+        assertThat( StoreAuditManager.getBucket( Instant.parse( "2023-12-31T23:59:59.999Z" ).toEpochMilli() ),
+                    equalTo( 202312 ) );
+        // buckets of consecutive months are ordered, the reader lists them newest first
+        assertThat( StoreAuditManager.getBucket( Instant.parse( "2024-01-01T00:00:00Z" ).toEpochMilli() ) > 202312,
+                    equalTo( true ) );
+    }
+
+    @Test
+    public void pageTokenKeepsEndOfRange()
+    {
+        StoreAuditManager.PageToken token =
+                StoreAuditManager.PageToken.parse( new StoreAuditManager.PageToken( 202301, 1675209600000L, null ).toString() );
+        assertThat( token.bucket, equalTo( 202301 ) );
+        assertThat( token.to, equalTo( 1675209600000L ) );
+        assertThat( token.pagingState, nullValue() );
+    }
+
+    @Test
+    public void invalidPageTokenIsRejected()
+    {
+        assertThrows( IllegalArgumentException.class, () -> StoreAuditManager.PageToken.parse( "202301" ) );
+        // the tokens of the previous format had no end of range
+        assertThrows( IllegalArgumentException.class, () -> StoreAuditManager.PageToken.parse( "202301:" ) );
+        assertThrows( IllegalArgumentException.class, () -> StoreAuditManager.PageToken.parse( "202301:now:" ) );
+        assertThrows( IllegalArgumentException.class,
+                      () -> StoreAuditManager.PageToken.parse( "202301:1675209600000:not-a-paging-state" ) );
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.change.event.kafka;
+
+import org.commonjava.event.common.EventMetadata;
+import org.commonjava.event.store.IndyStoreEvent;
+import org.commonjava.event.store.StorePostUpdateEvent;
+import org.commonjava.event.store.StorePreDeleteEvent;
+import org.commonjava.event.store.StorePreUpdateEvent;
+import org.commonjava.event.store.StoreUpdateType;
+import org.commonjava.indy.service.repository.concurrent.KeyedDispatcher;
+import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.RemoteRepository;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class StoreEventBatcherTest
+{
+    private final List<IndyStoreEvent> events = Collections.synchronizedList( new ArrayList<>() );
+
+    private final List<String> threads = Collections.synchronizedList( new ArrayList<>() );
+
+    private StoreEventBatcher newBatcher( final int lanes, final int maxPendingStores,
+                                          final KeyedDispatcher.OverflowPolicy policy )
+    {
+        StoreEventBatcher batcher = new StoreEventBatcher();
+        batcher.kafkaEvent = new KafkaEventUtils()
+        {
+            @Override
+            public void fireEvent( final IndyStoreEvent event )
+            {
+                threads.add( Thread.currentThread().getName() );
+                events.add( event );
+            }
+        };
+        // a long window, the test sends the waiting events itself
+        batcher.init( lanes, 60000, 500, maxPendingStores, policy, 0 );
+        return batcher;
+    }
+
+    private void update( final StoreEventBatcher batcher, final EventMetadata metadata, final ArtifactStore store,
+                         final ArtifactStore original )
+    {
+        batcher.updating( StoreUpdateType.UPDATE, metadata, Collections.singletonMap( store, original ) );
+        batcher.updated( StoreUpdateType.UPDATE, metadata, Collections.singletonMap( store, original ) );
+    }
+
+    @Test
+    public void sequentialUpdatesSendOnePostUpdate()
+    {
+        StoreEventBatcher batcher = newBatcher( 4, 100, KeyedDispatcher.OverflowPolicy.BLOCK );
+        EventMetadata metadata = new EventMetadata();
+        RemoteRepository original = new RemoteRepository( "central", "http://repo.maven.apache.org/maven2" );
+        int updates = 10;
+        for ( int i = 0; i < updates; i++ )
+        {
+            RemoteRepository changed = (RemoteRepository) original.copyOf();
+            changed.setDescription( "update " + i );
+            update( batcher, metadata, changed, original );
+            original = changed;
+        }
+        batcher.deleting( metadata, original.getKey() );
+        batcher.flush();
+
+        assertThat( events.size(), lessThan( 2 * updates ) );
+        assertThat( events.size(), equalTo( updates + 2 ) );
+        assertThat( events.get( updates ), instanceOf( StorePostUpdateEvent.class ) );
+        assertThat( events.get( updates + 1 ), instanceOf( StorePreDeleteEvent.class ) );
+        assertThat( batcher.getStats().getCoalesced(), equalTo( (long) updates - 1 ) );
+    }
+
+    @Test
+    public void eventsOfDifferentMetadataAreNotMerged()
+    {
+        StoreEventBatcher batcher = newBatcher( 4, 100, KeyedDispatcher.OverflowPolicy.BLOCK );
+        RemoteRepository first = new RemoteRepository( "first", "http://first.example.com/repo" );
+        RemoteRepository second = new RemoteRepository( "second", "http://second.example.com/repo" );
+        update( batcher, new EventMetadata().set( "origin", "a" ), first, first.copyOf() );
+        update( batcher, new EventMetadata().set( "origin", "b" ), second, second.copyOf() );
+        update( batcher, new EventMetadata().set( "origin", "a" ), second, second.copyOf() );
+        batcher.flush();
+
+        long posts = events.stream().filter( e -> e instanceof StorePostUpdateEvent ).count();
+        long pres = events.stream().filter( e -> e instanceof StorePreUpdateEvent ).count();
+        assertThat( pres, equalTo( 3L ) );
+        assertThat( posts, equalTo( 3L ) );
+        assertThat( batcher.getStats().getCoalesced(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void tooManyWaitingStoresDiscards()
+    {
+        StoreEventBatcher batcher = newBatcher( 1, 1, KeyedDispatcher.OverflowPolicy.DISCARD );
+        EventMetadata metadata = new EventMetadata();
+        RemoteRepository first = new RemoteRepository( "first", "http://first.example.com/repo" );
+        RemoteRepository second = new RemoteRepository( "second", "http://second.example.com/repo" );
+        batcher.updated( StoreUpdateType.ADD, metadata, Collections.singletonMap( first, null ) );
+        batcher.updated( StoreUpdateType.ADD, metadata, Collections.singletonMap( second, null ) );
+
+        assertThat( batcher.getStats().getPendingStores(), equalTo( 1 ) );
+        assertThat( batcher.getStats().getDiscarded(), equalTo( 1L ) );
+
+        batcher.flush();
+        assertThat( events.size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void preEventsAreSentByTheLanes()
+            throws Exception
+    {
+        StoreEventBatcher batcher = newBatcher( 4, 100, KeyedDispatcher.OverflowPolicy.BLOCK );
+        EventMetadata metadata = new EventMetadata();
+        List<RemoteRepository> repos = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            RemoteRepository repo = new RemoteRepository( "repo-" + i, "http://repo" + i + ".example.com/repo" );
+            repos.add( repo );
+            update( batcher, metadata, repo, repo.copyOf() );
+        }
+
+        // the callers don't send the pre-events, the lane of each store does
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( events.size() < repos.size() && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertThat( events.size(), equalTo( repos.size() ) );
+        threads.forEach( name -> assertThat( name.startsWith( "store-event-batcher-" ), equalTo( true ) ) );
+
+        // the post-updates follow, merged into one event per lane
+        batcher.flush();
+        assertThat( events.size() > repos.size() && events.size() <= repos.size() + 4, equalTo( true ) );
+        for ( IndyStoreEvent event : events.subList( 0, repos.size() ) )
+        {
+            assertThat( event, instanceOf( StorePreUpdateEvent.class ) );
+        }
+        for ( IndyStoreEvent event : events.subList( repos.size(), events.size() ) )
+        {
+            assertThat( event, instanceOf( StorePostUpdateEvent.class ) );
+        }
+        assertThat( batcher.getStats().getPendingStores(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void eventOfStoresOnSeveralLanesKeepsTheOrderOfEachStore()
+    {
+        StoreEventBatcher batcher = newBatcher( 4, 100, KeyedDispatcher.OverflowPolicy.BLOCK );
+        EventMetadata metadata = new EventMetadata();
+        List<RemoteRepository> repos = new ArrayList<>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            repos.add( new RemoteRepository( "repo-" + i, "http://repo" + i + ".example.com/repo" ) );
+        }
+        batcher.deleting( metadata, repos.stream().map( RemoteRepository::getKey ).toArray( StoreKey[]::new ) );
+        repos.forEach( repo -> update( batcher, metadata, repo, repo.copyOf() ) );
+        batcher.flush();
+
+        // the pre-delete is split into one event per lane, each sent before the updates of its stores
+        List<IndyStoreEvent> preDeletes =
+                events.stream().filter( e -> e instanceof StorePreDeleteEvent ).collect( Collectors.toList() );
+        assertThat( preDeletes.stream().mapToInt( e -> e.getKeys().size() ).sum(), equalTo( repos.size() ) );
+        for ( RemoteRepository repo : repos )
+        {
+            List<Class<?>> kinds = new ArrayList<>();
+            for ( IndyStoreEvent event : events )
+            {
+                if ( event.getKeys().stream().map( StoreKey::fromEventStoreKey ).anyMatch( repo.getKey()::equals ) )
+                {
+                    kinds.add( event.getClass() );
+                }
+            }
+            assertThat( kinds, equalTo( List.of( StorePreDeleteEvent.class, StorePreUpdateEvent.class,
+                                                 StorePostUpdateEvent.class ) ) );
+        }
+    }
+}
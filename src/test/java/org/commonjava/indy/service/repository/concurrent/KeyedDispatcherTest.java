@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KeyedDispatcherTest
+{
+    @Test
+    public void tasksOfOneKeyRunInOrder()
+    {
+        KeyedDispatcher<String> dispatcher =
+                new KeyedDispatcher<>( "test", 4, 1000, KeyedDispatcher.OverflowPolicy.BLOCK, 1000 );
+        List<Integer> runs = Collections.synchronizedList( new ArrayList<>() );
+        List<Integer> expected = new ArrayList<>();
+        for ( int i = 0; i < 500; i++ )
+        {
+            final int n = i;
+            expected.add( n );
+            dispatcher.dispatch( "a", () -> runs.add( n ) );
+            dispatcher.dispatch( "b" + i, () -> {
+            } );
+        }
+
+        assertThat( dispatcher.shutdown( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( runs, equalTo( expected ) );
+        assertThat( dispatcher.getStats().getCompleted(), equalTo( 1000L ) );
+    }
+
+    @Test
+    public void fullQueueDiscardsAndCounts()
+            throws Exception
+    {
+        KeyedDispatcher<String> dispatcher =
+                new KeyedDispatcher<>( "test", 1, 1, KeyedDispatcher.OverflowPolicy.DISCARD, 0 );
+        CountDownLatch running = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        dispatcher.dispatch( "a", () -> {
+            running.countDown();
+            try
+            {
+                release.await( 10, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        } );
+        running.await( 10, TimeUnit.SECONDS );
+
+        assertThat( dispatcher.dispatch( "a", () -> {
+        } ), equalTo( true ) );
+        assertThat( dispatcher.dispatch( "a", () -> {
+        } ), equalTo( false ) );
+
+        DispatchStats stats = dispatcher.getStats();
+        assertThat( stats.getQueued(), equalTo( 1 ) );
+        assertThat( stats.getDiscarded(), equalTo( 1L ) );
+
+        release.countDown();
+        assertThat( dispatcher.shutdown( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( dispatcher.getStats().getCompleted(), equalTo( 2L ) );
+    }
+
+    @Test
+    public void failedTaskDoesNotStopLane()
+    {
+        KeyedDispatcher<String> dispatcher =
+                new KeyedDispatcher<>( "test", 1, 10, KeyedDispatcher.OverflowPolicy.CALLER_RUNS, 0 );
+        dispatcher.dispatch( "a", () -> {
+            throw new IllegalStateException( "expected" );
+        } );
+        dispatcher.dispatch( "a", () -> {
+        } );
+
+        assertThat( dispatcher.shutdown( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( dispatcher.getStats().getFailed(), equalTo( 1L ) );
+        assertThat( dispatcher.getStats().getCompleted(), equalTo( 1L ) );
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+public class LockManagerTest
+{
+    @Test
+    public void entryRemovedOnRelease()
+    {
+        LockManager<String> locks = new LockManager<>();
+
+        String result = locks.lockAnd( "a", 1, k -> {
+            assertThat( locks.getStats().getKeys(), equalTo( 1 ) );
+            assertThat( locks.getStats().getHolders(), equalTo( 1 ) );
+            return k;
+        }, k -> false );
+
+        assertThat( result, equalTo( "a" ) );
+        LockStats stats = locks.getStats();
+        assertThat( stats.getKeys(), equalTo( 0 ) );
+        assertThat( stats.getHolders(), equalTo( 0 ) );
+        assertThat( stats.getAcquisitions(), equalTo( 1L ) );
+        assertThat( stats.getContentions(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void timeoutCountedAndRetriedOnRequest()
+            throws Exception
+    {
+        LockManager<String> locks = new LockManager<>();
+        CountDownLatch locked = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<Boolean> holder = executor.submit( () -> locks.lockAnd( "a", 1, k -> {
+                locked.countDown();
+                try
+                {
+                    return release.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    return false;
+                }
+            }, k -> false ) );
+            locked.await( 10, TimeUnit.SECONDS );
+
+            AtomicInteger failures = new AtomicInteger();
+            String result = locks.lockAnd( "a", 1, k -> k, k -> {
+                // let the holder go after the first timeout, the retry gets the lock then
+                release.countDown();
+                return failures.incrementAndGet() < 2;
+            } );
+
+            assertThat( result, equalTo( "a" ) );
+            assertThat( failures.get(), equalTo( 1 ) );
+            assertThat( holder.get(), equalTo( true ) );
+
+            LockStats stats = locks.getStats();
+            assertThat( stats.getTimeouts(), equalTo( 1L ) );
+            assertThat( stats.getContentions(), greaterThanOrEqualTo( 1L ) );
+            assertThat( stats.getAcquisitions(), equalTo( 2L ) );
+            assertThat( stats.getKeys(), equalTo( 0 ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lockAllTakesKeysOnceInOrder()
+    {
+        LockManager<String> locks = new LockManager<>();
+
+        List<String> locked = locks.lockAllAnd( List.of( "c", "a", "b", "a" ), Comparator.naturalOrder(), 1, keys -> {
+            assertThat( locks.getStats().getHolders(), equalTo( 3 ) );
+            return keys;
+        }, k -> false );
+
+        assertThat( locked, equalTo( List.of( "a", "b", "c" ) ) );
+        assertThat( locks.getStats().getKeys(), equalTo( 0 ) );
+        assertThat( locks.getStats().getHolders(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void giveUpReturnsNull()
+            throws Exception
+    {
+        LockManager<String> locks = new LockManager<>();
+        CountDownLatch locked = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            executor.submit( () -> locks.lockAnd( "a", 1, k -> {
+                locked.countDown();
+                try
+                {
+                    return release.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    return false;
+                }
+            }, k -> false ) );
+            locked.await( 10, TimeUnit.SECONDS );
+
+            assertThat( locks.lockAnd( "a", 1, k -> k, k -> false ), nullValue() );
+            assertThat( locks.getStats().getKeys(), equalTo( 1 ) );
+        }
+        finally
+        {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data;
+
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.commonjava.indy.service.repository.model.StoreType.group;
+import static org.commonjava.indy.service.repository.model.StoreType.remote;
+import static org.commonjava.indy.service.repository.model.pkg.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryCacheDependenciesTest
+{
+    private final StoreKey central = new StoreKey( MAVEN_PKG_KEY, remote, "central" );
+
+    private final StoreKey repo2 = new StoreKey( MAVEN_PKG_KEY, remote, "repo2" );
+
+    private final StoreKey pub = new StoreKey( MAVEN_PKG_KEY, group, "public" );
+
+    private final QueryCacheDependencies dependencies = new QueryCacheDependencies();
+
+    private final Map<Object, Object> cache = new HashMap<>();
+
+    @Test
+    public void evictOnlyDependentEntries()
+    {
+        put( "ordered:public", List.of( pub, central ) );
+        put( "affectedBy:repo2", List.of( repo2 ) );
+
+        dependencies.evict( Set.of( central ), cache::remove );
+
+        assertThat( cache.containsKey( "ordered:public" ), equalTo( false ) );
+        assertThat( cache.containsKey( "affectedBy:repo2" ), equalTo( true ) );
+    }
+
+    @Test
+    public void doNotCacheResultComputedAcrossEviction()
+    {
+        long generation = dependencies.generation();
+
+        // a store update happens while the query is being computed
+        dependencies.evict( Set.of( central ), cache::remove );
+
+        boolean cached = dependencies.register( "ordered:public", List.of( pub, central ), generation,
+                                                () -> cache.put( "ordered:public", "stale" ) );
+
+        assertThat( cached, equalTo( false ) );
+        assertThat( cache.containsKey( "ordered:public" ), equalTo( false ) );
+    }
+
+    @Test
+    public void forgetExpiredEntries()
+    {
+        final AtomicLong now = new AtomicLong();
+        final QueryCacheDependencies expiring = new QueryCacheDependencies( now::get );
+
+        expiring.register( "ordered:public", List.of( pub, central ), expiring.generation(), 15, TimeUnit.MINUTES,
+                           () -> cache.put( "ordered:public", "stores" ) );
+        expiring.register( "affectedBy:repo2", List.of( repo2 ), expiring.generation(), 0, TimeUnit.MINUTES,
+                           () -> cache.put( "affectedBy:repo2", "stores" ) );
+        assertThat( expiring.size(), equalTo( 2 ) );
+
+        // the cache drops the first entry by itself, nothing is evicted for it
+        now.addAndGet( TimeUnit.MINUTES.toMillis( 15 ) );
+        cache.remove( "ordered:public" );
+        expiring.register( "ordered:public2", List.of( central ), expiring.generation(), 15, TimeUnit.MINUTES,
+                           () -> cache.put( "ordered:public2", "stores" ) );
+
+        assertThat( expiring.size(), equalTo( 2 ) );
+
+        expiring.evict( Set.of( central ), cache::remove );
+
+        assertThat( expiring.size(), equalTo( 1 ) );
+        assertThat( cache.containsKey( "ordered:public2" ), equalTo( false ) );
+        assertThat( cache.containsKey( "affectedBy:repo2" ), equalTo( true ) );
+    }
+
+    private void put( final String key, final List<StoreKey> deps )
+    {
+        dependencies.register( key, deps, dependencies.generation(), () -> cache.put( key, deps ) );
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data.cassandra;
+
+import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
+import org.commonjava.event.common.EventMetadata;
+import org.commonjava.indy.service.repository.audit.ChangeSummary;
+import org.commonjava.indy.service.repository.change.event.NoOpStoreEventDispatcher;
+import org.commonjava.indy.service.repository.data.infinispan.CacheProducer;
+import org.commonjava.indy.service.repository.model.Group;
+import org.commonjava.indy.service.repository.model.RemoteRepository;
+import org.commonjava.indy.service.repository.testutil.TestUtil;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.service.repository.model.pkg.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Two data managers on the same keyspace stand for two nodes, without the store events which would keep their
+ * snapshots in sync: the queries of one node must still see the writes of the other.
+ */
+@Disabled( "Cassandra dbunit always has problems to clean up resources when running test suite in maven")
+public class CassandraPeerVisibilityTest
+{
+    private final ChangeSummary summary = new ChangeSummary( "test-user", "test" );
+
+    private CassandraClient client;
+
+    private CassandraStoreDataManager node1;
+
+    private CassandraStoreDataManager node2;
+
+    @BeforeEach
+    public void start()
+            throws Exception
+    {
+        EmbeddedCassandraServerHelper.startEmbeddedCassandra();
+
+        CassandraConfiguration config = new CassandraConfiguration();
+        config.setEnabled( true );
+        config.setCassandraHost( "localhost" );
+        config.setCassandraPort( 9142 );
+        config.setKeyspaceReplicas( 1 );
+        config.setKeyspace( "noncontent" );
+
+        client = new CassandraClient( config );
+        node1 = createNode( config );
+        node2 = createNode( config );
+    }
+
+    @AfterEach
+    public void stop()
+    {
+        client.close();
+        EmbeddedCassandraServerHelper.cleanEmbeddedCassandra();
+    }
+
+    @Test
+    public void peerWritesAreVisibleToQueries()
+            throws Exception
+    {
+        // node2 answers queries before node1 writes anything
+        assertThat( node2.query().getAllRemoteRepositories( MAVEN_PKG_KEY ).isEmpty(), equalTo( true ) );
+        assertThat( node2.query().getByName( "central" ), nullValue() );
+
+        final RemoteRepository central =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.maven.apache.org/maven2/" );
+        node1.storeArtifactStore( central, summary, false, false, new EventMetadata() );
+        final Group pub = new Group( MAVEN_PKG_KEY, "public", central.getKey() );
+        node1.storeArtifactStore( pub, summary, false, false, new EventMetadata() );
+
+        assertThat( node2.query().getByName( "central" ), notNullValue() );
+        assertThat( node2.query().getAllRemoteRepositories( MAVEN_PKG_KEY ).size(), equalTo( 1 ) );
+        assertThat( node2.query()
+                         .getGroupsContaining( central.getKey() )
+                         .stream()
+                         .map( Group::getKey )
+                         .collect( Collectors.toSet() ), equalTo( Set.of( pub.getKey() ) ) );
+        assertThat( node2.query().getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, "public" ).size(), equalTo( 1 ) );
+
+        node1.deleteArtifactStore( pub.getKey(), summary, new EventMetadata() );
+        assertThat( node2.query().getGroupsContaining( central.getKey() ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void peerChangesReachIndexedQueriesWithoutSnapshot()
+            throws Exception
+    {
+        final CassandraConfiguration peerSyncConfig = new CassandraConfiguration();
+        peerSyncConfig.setPeerSyncEnabled( true );
+        node2.config = peerSyncConfig;
+
+        final RemoteRepository central =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.maven.apache.org/maven2/" );
+        node1.storeArtifactStore( central, summary, false, false, new EventMetadata() );
+        // loads the index of node2
+        assertThat( node2.query().getAllRemoteRepositories( MAVEN_PKG_KEY ).size(), equalTo( 1 ) );
+
+        final Group pub = new Group( MAVEN_PKG_KEY, "public", central.getKey() );
+        node1.storeArtifactStore( pub, summary, false, false, new EventMetadata() );
+        // the store event of node1 reaches node2
+        node2.refreshFromPeer( Set.of( pub.getKey() ) );
+
+        assertThat( node2.query()
+                         .getGroupsContaining( central.getKey() )
+                         .stream()
+                         .map( Group::getKey )
+                         .collect( Collectors.toSet() ), equalTo( Set.of( pub.getKey() ) ) );
+
+        node1.deleteArtifactStore( pub.getKey(), summary, new EventMetadata() );
+        node2.refreshFromPeer( Set.of( pub.getKey() ) );
+        assertThat( node2.query().getGroupsContaining( central.getKey() ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void affectedBySkipsDisabledGroupsWithOrWithoutSnapshot()
+            throws Exception
+    {
+        final RemoteRepository central =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.maven.apache.org/maven2/" );
+        node1.storeArtifactStore( central, summary, false, false, new EventMetadata() );
+        final Group disabled = new Group( MAVEN_PKG_KEY, "disabled", central.getKey() );
+        disabled.setDisabled( true );
+        node1.storeArtifactStore( disabled, summary, false, false, new EventMetadata() );
+        final Group outer = new Group( MAVEN_PKG_KEY, "outer", disabled.getKey() );
+        node1.storeArtifactStore( outer, summary, false, false, new EventMetadata() );
+        final Group pub = new Group( MAVEN_PKG_KEY, "public", central.getKey() );
+        node1.storeArtifactStore( pub, summary, false, false, new EventMetadata() );
+
+        final CassandraConfiguration snapshotConfig = new CassandraConfiguration();
+        snapshotConfig.setSnapshotEnabled( true );
+        node2.config = snapshotConfig;
+        node2.initSnapshot();
+
+        final Set<Group> expected = Set.of( pub );
+        assertThat( node1.affectedBy( Set.of( central.getKey() ) ), equalTo( expected ) );
+        assertThat( node2.affectedBy( Set.of( central.getKey() ) ), equalTo( expected ) );
+    }
+
+    private CassandraStoreDataManager createNode( final CassandraConfiguration config )
+    {
+        CassandraStoreDataManager node =
+                new CassandraStoreDataManager( new CassandraStoreQuery( client, config ),
+                                               TestUtil.prepareCustomizedMapper(),
+                                               new CacheProducer( null, new DefaultCacheManager() ) );
+        node.eventDispatcher = new NoOpStoreEventDispatcher();
+        return node;
+    }
+}
@@ -104,6 +104,54 @@ public class CassandraStoreTest
         assertThat(artifactStoreSet.size(), equalTo( 1 ));
     }
 
+    @Test
+    public void testMaintenanceProgress()
+    {
+        storeQuery.addMaintenanceProgress( AffectedStoreMaintenance.REBUILD_JOB, "maven/0" );
+        storeQuery.addMaintenanceProgress( AffectedStoreMaintenance.REBUILD_JOB, "maven/1" );
+
+        assertThat( storeQuery.getMaintenanceProgress( AffectedStoreMaintenance.REBUILD_JOB ),
+                    equalTo( Set.of( "maven/0", "maven/1" ) ) );
+
+        storeQuery.clearMaintenanceProgress( AffectedStoreMaintenance.REBUILD_JOB );
+
+        assertThat( storeQuery.getMaintenanceProgress( AffectedStoreMaintenance.REBUILD_JOB ).isEmpty(),
+                    equalTo( true ) );
+    }
+
+    @Test
+    public void testMaintenanceClaim()
+    {
+        assertThat( storeQuery.claimMaintenance( AffectedStoreMaintenance.CLAIM, "node1", 60 ), equalTo( true ) );
+        assertThat( storeQuery.claimMaintenance( AffectedStoreMaintenance.CLAIM, "node2", 60 ), equalTo( false ) );
+        assertThat( storeQuery.renewMaintenanceClaim( AffectedStoreMaintenance.CLAIM, "node2", 60 ), equalTo( false ) );
+        assertThat( storeQuery.renewMaintenanceClaim( AffectedStoreMaintenance.CLAIM, "node1", 60 ), equalTo( true ) );
+
+        // only the owner releases the claim
+        storeQuery.releaseMaintenanceClaim( AffectedStoreMaintenance.CLAIM, "node2" );
+        assertThat( storeQuery.claimMaintenance( AffectedStoreMaintenance.CLAIM, "node2", 60 ), equalTo( false ) );
+        storeQuery.releaseMaintenanceClaim( AffectedStoreMaintenance.CLAIM, "node1" );
+        assertThat( storeQuery.claimMaintenance( AffectedStoreMaintenance.CLAIM, "node2", 60 ), equalTo( true ) );
+    }
+
+    @Test
+    public void testCasArtifactStore()
+    {
+        DtxArtifactStore store = createTestStore( PackageTypeConstants.PKG_TYPE_MAVEN, StoreType.hosted.name() );
+
+        // the row was written without version
+        store.setVersion( 1L );
+        assertThat( storeQuery.casArtifactStore( store, 0 ), equalTo( 0L ) );
+
+        store.setVersion( 2L );
+        assertThat( storeQuery.casArtifactStore( store, 0 ), equalTo( 1L ) );
+        assertThat( storeQuery.casArtifactStore( store, CassandraStoreQuery.NO_STORE_VERSION ), equalTo( 1L ) );
+        assertThat( storeQuery.casArtifactStore( store, 1 ), equalTo( 1L ) );
+
+        storeQuery.removeArtifactStore( store.getPackageType(), StoreType.hosted, store.getName() );
+        assertThat( storeQuery.casArtifactStore( store, 2 ), equalTo( CassandraStoreQuery.NO_STORE_VERSION ) );
+    }
+
     @Test
     public void testHashPrefix()
     {
@@ -116,9 +164,28 @@ public class CassandraStoreTest
 
     }
 
+    @Test
+    public void testListByPkgAndTypeReadsAllBuckets()
+    {
+        for ( int i = 0; i < 30; i++ )
+        {
+            createTestStore( PackageTypeConstants.PKG_TYPE_MAVEN, StoreType.hosted.name(), "build-" + i );
+        }
+        createTestStore( PackageTypeConstants.PKG_TYPE_MAVEN, StoreType.remote.name(), "build-0" );
+
+        assertThat( storeQuery.getArtifactStoresByPkgAndType( PackageTypeConstants.PKG_TYPE_MAVEN, StoreType.hosted )
+                              .size(), equalTo( 30 ) );
+        assertThat( storeQuery.getStoreKeysByPkgAndType( PackageTypeConstants.PKG_TYPE_MAVEN, StoreType.hosted )
+                              .size(), equalTo( 30 ) );
+    }
+
     private DtxArtifactStore createTestStore( final String packageType, final String storeType )
     {
-        String name = "build-001";
+        return createTestStore( packageType, storeType, "build-001" );
+    }
+
+    private DtxArtifactStore createTestStore( final String packageType, final String storeType, final String name )
+    {
         DtxArtifactStore store = new DtxArtifactStore();
         store.setTypeKey( CassandraStoreUtil.getTypeKey( packageType, storeType ) );
         store.setPackageType( packageType );
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data.cassandra;
+
+import org.commonjava.indy.service.repository.model.Group;
+import org.commonjava.indy.service.repository.model.HostedRepository;
+import org.commonjava.indy.service.repository.model.RemoteRepository;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.commonjava.indy.service.repository.model.StoreType.group;
+import static org.commonjava.indy.service.repository.model.StoreType.hosted;
+import static org.commonjava.indy.service.repository.model.StoreType.remote;
+import static org.commonjava.indy.service.repository.model.pkg.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StoreAttributesCodecTest
+{
+    @Test
+    public void roundTripHosted()
+    {
+        HostedRepository repo = new HostedRepository( MAVEN_PKG_KEY, "local" );
+        repo.setAllowSnapshots( true );
+        repo.setReadonly( true );
+        repo.setSnapshotTimeoutSeconds( 86400 );
+        repo.setStorage( "/var/lib/indy/local" );
+
+        HostedRepository result = (HostedRepository) StoreAttributesCodec.decode( MAVEN_PKG_KEY, hosted, "local",
+                                                                                 StoreAttributesCodec.encode( repo ) );
+
+        assertThat( result.isAllowSnapshots(), equalTo( true ) );
+        assertThat( result.isAllowReleases(), equalTo( true ) );
+        assertThat( result.isReadonly(), equalTo( true ) );
+        assertThat( result.getSnapshotTimeoutSeconds(), equalTo( 86400 ) );
+        assertThat( result.getStorage(), equalTo( "/var/lib/indy/local" ) );
+    }
+
+    @Test
+    public void roundTripRemote()
+    {
+        RemoteRepository repo = new RemoteRepository( MAVEN_PKG_KEY, "central", "https://repo.maven.apache.org/maven2/" );
+        repo.setCacheTimeoutSeconds( 3600 );
+        repo.setPassthrough( true );
+        repo.setProxyHost( "proxy.example.com" );
+        repo.setProxyPort( 3128 );
+        repo.setServerCertPem( "-----BEGIN CERTIFICATE-----\nMIIB\n-----END CERTIFICATE-----" );
+
+        RemoteRepository result = (RemoteRepository) StoreAttributesCodec.decode( MAVEN_PKG_KEY, remote, "central",
+                                                                                 StoreAttributesCodec.encode( repo ) );
+
+        assertThat( result.getUrl(), equalTo( repo.getUrl() ) );
+        assertThat( result.getHost(), equalTo( "repo.maven.apache.org" ) );
+        assertThat( result.getPort(), equalTo( repo.getPort() ) );
+        assertThat( result.getCacheTimeoutSeconds(), equalTo( 3600 ) );
+        assertThat( result.getMaxConnections(), equalTo( repo.getMaxConnections() ) );
+        assertThat( result.isPassthrough(), equalTo( true ) );
+        assertThat( result.isPrefetchRescan(), equalTo( false ) );
+        assertThat( result.getProxyHost(), equalTo( "proxy.example.com" ) );
+        assertThat( result.getProxyPort(), equalTo( 3128 ) );
+        assertThat( result.getProxyUser(), nullValue() );
+        assertThat( result.getServerCertPem(), equalTo( repo.getServerCertPem() ) );
+    }
+
+    @Test
+    public void roundTripGroupKeepsConstituentOrder()
+    {
+        StoreKey local = new StoreKey( MAVEN_PKG_KEY, hosted, "local" );
+        StoreKey central = new StoreKey( MAVEN_PKG_KEY, remote, "central" );
+        StoreKey nested = new StoreKey( MAVEN_PKG_KEY, group, "nested" );
+        Group grp = new Group( MAVEN_PKG_KEY, "public", local, central, nested );
+        grp.setPrependConstituent( true );
+
+        Group result = (Group) StoreAttributesCodec.decode( MAVEN_PKG_KEY, group, "public",
+                                                            StoreAttributesCodec.encode( grp ) );
+
+        assertThat( result.getConstituents(), equalTo( List.of( local, central, nested ) ) );
+        assertThat( result.isPrependConstituent(), equalTo( true ) );
+    }
+}
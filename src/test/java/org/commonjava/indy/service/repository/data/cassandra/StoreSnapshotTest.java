@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.data.cassandra;
+
+import org.commonjava.indy.service.repository.model.ArtifactStore;
+import org.commonjava.indy.service.repository.model.HostedRepository;
+import org.commonjava.indy.service.repository.model.RemoteRepository;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.commonjava.indy.service.repository.model.pkg.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StoreSnapshotTest
+{
+    private final HostedRepository local = new HostedRepository( MAVEN_PKG_KEY, "local" );
+
+    private final RemoteRepository central =
+            new RemoteRepository( MAVEN_PKG_KEY, "central", "https://repo.maven.apache.org/maven2/" );
+
+    @Test
+    public void changesIgnoredUntilLoaded()
+    {
+        StoreSnapshot snapshot = new StoreSnapshot();
+        snapshot.put( local );
+
+        assertThat( snapshot.isLoaded(), equalTo( false ) );
+        assertThat( snapshot.get(), nullValue() );
+    }
+
+    @Test
+    public void readersKeepTheirSnapshotAcrossChanges()
+    {
+        StoreSnapshot snapshot = new StoreSnapshot();
+        snapshot.load( Stream.of( local ) );
+
+        Map<StoreKey, ArtifactStore> before = snapshot.get();
+        snapshot.put( central );
+        snapshot.remove( local.getKey() );
+
+        assertThat( before.size(), equalTo( 1 ) );
+        assertThat( before.get( local.getKey() ), equalTo( local ) );
+        assertThat( snapshot.get().size(), equalTo( 1 ) );
+        assertThat( snapshot.get().get( central.getKey() ), equalTo( central ) );
+    }
+}
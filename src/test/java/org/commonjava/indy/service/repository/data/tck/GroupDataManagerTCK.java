@@ -213,6 +213,78 @@ public abstract class GroupDataManagerTCK
         assertThat( repo.getName(), equalTo( "repo2" ) );
     }
 
+    @Test
+    public void orderedConcreteStoresFollowNestedGroupChanges()
+            throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+        final StoreKey central = new StoreKey( MAVEN_PKG_KEY, remote, "central" );
+        final StoreKey repo2 = new StoreKey( MAVEN_PKG_KEY, remote, "repo2" );
+        Group inner = new Group( MAVEN_PKG_KEY, "inner", central );
+        Group outer = new Group( MAVEN_PKG_KEY, "outer", inner.getKey() );
+
+        store( inner, outer );
+
+        assertThat( concreteStoreNames( manager, outer ), equalTo( List.of( "central" ) ) );
+
+        Group innerChanged = inner.copyOf();
+        innerChanged.addConstituent( repo2 );
+        store( innerChanged );
+
+        assertThat( concreteStoreNames( manager, outer ), equalTo( List.of( "central", "repo2" ) ) );
+
+        RemoteRepository disabled = (RemoteRepository) manager.getArtifactStore( central ).orElseThrow().copyOf();
+        disabled.setDisabled( true );
+        store( disabled );
+
+        assertThat( concreteStoreNames( manager, outer ), equalTo( List.of( "repo2" ) ) );
+
+        removeStore( innerChanged );
+
+        assertThat( concreteStoreNames( manager, outer ).isEmpty(), equalTo( Boolean.TRUE ) );
+    }
+
+    @Test
+    public void asyncQueriesMatchSyncQueries()
+            throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+        final StoreKey central = new StoreKey( MAVEN_PKG_KEY, remote, "central" );
+        final StoreKey repo2 = new StoreKey( MAVEN_PKG_KEY, remote, "repo2" );
+        Group inner = new Group( MAVEN_PKG_KEY, "inner", repo2, central );
+        Group outer = new Group( MAVEN_PKG_KEY, "outer", central, inner.getKey() );
+
+        store( inner, outer );
+
+        List<String> names = manager.query()
+                                    .getOrderedConcreteStoresInGroupAsync( MAVEN_PKG_KEY, outer.getName(), true )
+                                    .toCompletableFuture()
+                                    .get()
+                                    .stream()
+                                    .map( ArtifactStore::getName )
+                                    .collect( Collectors.toList() );
+        assertThat( names, equalTo( concreteStoreNames( manager, outer ) ) );
+        assertThat( names, equalTo( List.of( "central", "repo2" ) ) );
+
+        assertThat( Set.copyOf( manager.query().getAllGroupsAsync( MAVEN_PKG_KEY, true ).toCompletableFuture().get() ),
+                    equalTo( Set.copyOf( manager.query().getAllGroups( MAVEN_PKG_KEY, true ) ) ) );
+        assertThat( manager.query()
+                           .getAllRemoteRepositoriesAsync( MAVEN_PKG_KEY, true )
+                           .toCompletableFuture()
+                           .get()
+                           .size(), equalTo( 2 ) );
+    }
+
+    private List<String> concreteStoreNames( final StoreDataManager manager, final Group group )
+            throws Exception
+    {
+        return manager.query()
+                      .getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, group.getName() )
+                      .stream()
+                      .map( ArtifactStore::getName )
+                      .collect( Collectors.toList() );
+    }
+
     @Test
     public void createSameGroupTwiceAndRetrieveOne()
             throws Exception
@@ -254,6 +326,39 @@ public abstract class GroupDataManagerTCK
         assertThat( g.getName(), equalTo( grp2.getName() ) );
     }
 
+    @Test
+    public void groupsContainingFollowMembershipChanges()
+            throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+        final StoreKey central = new StoreKey( MAVEN_PKG_KEY, remote, "central" );
+        final StoreKey repo2 = new StoreKey( MAVEN_PKG_KEY, remote, "repo2" );
+        Group g1 = new Group( MAVEN_PKG_KEY, "g1", central );
+        Group g2 = new Group( MAVEN_PKG_KEY, "g2", central, repo2 );
+
+        store( g1, g2 );
+
+        assertThat( groupKeysContaining( manager, central ), equalTo( Set.of( g1.getKey(), g2.getKey() ) ) );
+        assertThat( groupKeysContaining( manager, repo2 ), equalTo( Set.of( g2.getKey() ) ) );
+
+        Group g2Changed = g2.copyOf();
+        g2Changed.removeConstituent( central );
+        store( g2Changed );
+
+        assertThat( groupKeysContaining( manager, central ), equalTo( Set.of( g1.getKey() ) ) );
+
+        removeStore( g1 );
+
+        assertThat( groupKeysContaining( manager, central ).isEmpty(), equalTo( Boolean.TRUE ) );
+        assertThat( groupKeysContaining( manager, repo2 ), equalTo( Set.of( g2.getKey() ) ) );
+    }
+
+    private Set<StoreKey> groupKeysContaining( final StoreDataManager manager, final StoreKey key )
+            throws Exception
+    {
+        return manager.query().getGroupsContaining( key ).stream().map( Group::getKey ).collect( Collectors.toSet() );
+    }
+
     @Test
     public void createTwoGroupsAndAffectedByForOneLevel()
             throws Exception
@@ -296,6 +401,35 @@ public abstract class GroupDataManagerTCK
         assertThat( gKeys.contains( g2.getKey() ), equalTo( Boolean.TRUE ) );
     }
 
+    @Test
+    public void affectedByStopsAtMaxDepth()
+            throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+        final StoreKey central = new StoreKey( MAVEN_PKG_KEY, remote, "central" );
+        Group g1 = new Group( MAVEN_PKG_KEY, "g1", central );
+        Group g2 = new Group( MAVEN_PKG_KEY, "g2", g1.getKey() );
+        Group g3 = new Group( MAVEN_PKG_KEY, "g3", g2.getKey() );
+
+        store( g1, g2, g3 );
+
+        List<StoreKey> keys = Collections.singletonList( central );
+
+        Set<StoreKey> oneLevel = manager.query()
+                                        .getGroupsAffectedBy( keys, 1 )
+                                        .stream()
+                                        .map( Group::getKey )
+                                        .collect( Collectors.toSet() );
+        Set<StoreKey> twoLevels = manager.query()
+                                         .getGroupsAffectedBy( keys, 2 )
+                                         .stream()
+                                         .map( Group::getKey )
+                                         .collect( Collectors.toSet() );
+
+        assertThat( oneLevel, equalTo( Set.of( g1.getKey() ) ) );
+        assertThat( twoLevels, equalTo( Set.of( g1.getKey(), g2.getKey() ) ) );
+    }
+
     @Test
     public void complexGroupsAffectedBy()
             throws Exception
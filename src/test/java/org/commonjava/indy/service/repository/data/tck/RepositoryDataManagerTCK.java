@@ -17,19 +17,32 @@ package org.commonjava.indy.service.repository.data.tck;
 
 import org.commonjava.event.common.EventMetadata;
 import org.commonjava.indy.service.repository.data.StoreDataManager;
+import org.commonjava.indy.service.repository.exception.IndyDataException;
 import org.commonjava.indy.service.repository.model.ArtifactStore;
 import org.commonjava.indy.service.repository.model.RemoteRepository;
+import org.commonjava.indy.service.repository.model.StoreKey;
+import org.commonjava.indy.service.repository.model.StoreType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static jakarta.ws.rs.core.Response.Status.CONFLICT;
 import static org.commonjava.indy.service.repository.model.pkg.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public abstract class RepositoryDataManagerTCK
         extends AbstractProxyDataManagerTCK
@@ -138,6 +151,197 @@ public abstract class RepositoryDataManagerTCK
         assertThat( r.getName(), equalTo( repo2.getName() ) );
     }
 
+    @Test
+    public void queryReflectsStoreDisableAndDelete()
+            throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+
+        final RemoteRepository repo =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo1.maven.apache.org/maven2/" );
+        storeRemoteRepository( repo );
+
+        final RemoteRepository repo2 = new RemoteRepository( MAVEN_PKG_KEY, "test", "http://www.google.com" );
+        storeRemoteRepository( repo2 );
+
+        assertThat( manager.query().storeType( RemoteRepository.class ).enabledState( true ).getAll().size(),
+                    equalTo( 2 ) );
+
+        final RemoteRepository disabled = repo2.copyOf();
+        disabled.setDisabled( true );
+        storeRemoteRepository( disabled );
+
+        assertThat( manager.query().storeType( RemoteRepository.class ).enabledState( true ).getAll().size(),
+                    equalTo( 1 ) );
+        assertThat( manager.query().getAllRemoteRepositories( MAVEN_PKG_KEY, false ).size(), equalTo( 1 ) );
+        assertThat( manager.query().enabledState( false ).getByName( repo2.getName() ), notNullValue() );
+        assertThat( manager.query().enabledState( true ).getByName( repo2.getName() ), nullValue() );
+
+        manager.deleteArtifactStore( repo.getKey(), summary, new EventMetadata() );
+
+        assertThat( manager.query().getByName( repo.getName() ), nullValue() );
+        assertThat( manager.query().storeType( RemoteRepository.class ).getAll().size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void retrieveMultipleReposInOneBatch()
+            throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+
+        final RemoteRepository repo =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo1.maven.apache.org/maven2/" );
+        storeRemoteRepository( repo );
+
+        final RemoteRepository repo2 = new RemoteRepository( MAVEN_PKG_KEY, "test", "http://www.google.com" );
+        storeRemoteRepository( repo2 );
+
+        final StoreKey missing = new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "missing" );
+        final Map<StoreKey, ArtifactStore> result =
+                manager.getArtifactStores( List.of( repo.getKey(), repo2.getKey(), missing ) );
+
+        assertThat( result.size(), equalTo( 2 ) );
+        assertThat( result.get( repo.getKey() ).getName(), equalTo( repo.getName() ) );
+        assertThat( ( (RemoteRepository) result.get( repo2.getKey() ) ).getUrl(), equalTo( repo2.getUrl() ) );
+        assertThat( result.containsKey( missing ), equalTo( false ) );
+    }
+
+    @Test
+    public void updateOfStaleVersionIsRejected()
+            throws Exception
+    {
+        final RemoteRepository repo =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo1.maven.apache.org/maven2/" );
+        storeRemoteRepository( repo );
+        assertThat( repo.getVersion(), equalTo( 1L ) );
+
+        final RemoteRepository first = repo.copyOf();
+        final RemoteRepository second = repo.copyOf();
+
+        first.setDescription( "first" );
+        storeRemoteRepository( first );
+        assertThat( first.getVersion(), equalTo( 2L ) );
+
+        second.setDescription( "second" );
+        IndyDataException error = assertThrows( IndyDataException.class, () -> storeRemoteRepository( second ) );
+        assertThat( error.getStatus(), equalTo( CONFLICT.getStatusCode() ) );
+        assertThat( second.getVersion(), equalTo( 1L ) );
+        assertThat( manager.query().getByName( repo.getName() ).getDescription(), equalTo( "first" ) );
+
+        // a store without version is written unconditionally
+        final RemoteRepository unversioned =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo1.maven.apache.org/maven2/" );
+        storeRemoteRepository( unversioned );
+        assertThat( unversioned.getVersion(), equalTo( 3L ) );
+    }
+
+    @Test
+    public void bulkStoreIsRejectedWholeOnStaleVersion()
+            throws Exception
+    {
+        final RemoteRepository central =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo1.maven.apache.org/maven2/" );
+        final RemoteRepository other = new RemoteRepository( MAVEN_PKG_KEY, "other", "http://127.0.0.1:8080/" );
+        manager.storeArtifactStores( List.of( central, other ), summary, false, new EventMetadata() );
+        assertThat( central.getVersion(), equalTo( 1L ) );
+        assertThat( other.getVersion(), equalTo( 1L ) );
+
+        final RemoteRepository stale = central.copyOf();
+        central.setDescription( "updated" );
+        storeRemoteRepository( central );
+
+        final RemoteRepository added = new RemoteRepository( MAVEN_PKG_KEY, "added", "http://127.0.0.1:8081/" );
+        stale.setDescription( "stale" );
+        IndyDataException error = assertThrows( IndyDataException.class,
+                                                () -> manager.storeArtifactStores( List.of( added, stale ), summary,
+                                                                                   false, new EventMetadata() ) );
+        assertThat( error.getStatus(), equalTo( CONFLICT.getStatusCode() ) );
+        assertThat( manager.query().getByName( "central" ).getDescription(), equalTo( "updated" ) );
+        assertThat( manager.query().getByName( "added" ), nullValue() );
+
+        assertThrows( IndyDataException.class,
+                      () -> manager.storeArtifactStores( List.of( added, added.copyOf() ), summary, false,
+                                                         new EventMetadata() ) );
+    }
+
+    @Test
+    public void concurrentConflictingBulkStoresApplyOnlyOne()
+            throws Exception
+    {
+        final RemoteRepository central =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo1.maven.apache.org/maven2/" );
+        final RemoteRepository other = new RemoteRepository( MAVEN_PKG_KEY, "other", "http://127.0.0.1:8080/" );
+        manager.storeArtifactStores( List.of( central, other ), summary, false, new EventMetadata() );
+
+        // both updates are based on version 1 of both stores
+        final List<List<ArtifactStore>> updates = new ArrayList<>();
+        for ( String description : List.of( "first", "second" ) )
+        {
+            final RemoteRepository c = central.copyOf();
+            final RemoteRepository o = other.copyOf();
+            c.setDescription( description );
+            o.setDescription( description );
+            updates.add( List.of( c, o ) );
+        }
+
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final ExecutorService executor = Executors.newFixedThreadPool( updates.size() );
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for ( List<ArtifactStore> update : updates )
+        {
+            results.add( executor.submit( () -> {
+                start.await();
+                try
+                {
+                    manager.storeArtifactStores( update, summary, false, new EventMetadata() );
+                    return true;
+                }
+                catch ( IndyDataException e )
+                {
+                    assertThat( e.getStatus(), equalTo( CONFLICT.getStatusCode() ) );
+                    return false;
+                }
+            } ) );
+        }
+        start.countDown();
+
+        String winner = null;
+        for ( int i = 0; i < results.size(); i++ )
+        {
+            if ( results.get( i ).get( 30, TimeUnit.SECONDS ) )
+            {
+                assertThat( winner, nullValue() );
+                winner = updates.get( i ).get( 0 ).getDescription();
+            }
+        }
+        executor.shutdown();
+
+        // one update is applied as a whole, the other not at all
+        assertThat( winner, notNullValue() );
+        assertThat( manager.query().getByName( "central" ).getDescription(), equalTo( winner ) );
+        assertThat( manager.query().getByName( "other" ).getDescription(), equalTo( winner ) );
+    }
+
+    @Test
+    public void bulkStoreNewSkipsExistingStores()
+            throws Exception
+    {
+        final RemoteRepository central =
+                new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo1.maven.apache.org/maven2/" );
+        storeRemoteRepository( central );
+
+        final RemoteRepository replaced = central.copyOf();
+        replaced.setVersion( null );
+        replaced.setDescription( "replaced" );
+        final RemoteRepository added = new RemoteRepository( MAVEN_PKG_KEY, "added", "http://127.0.0.1:8081/" );
+        final Set<StoreKey> stored =
+                manager.storeNewArtifactStores( List.of( replaced, added ), summary, false, new EventMetadata() );
+
+        assertThat( stored, equalTo( Set.of( added.getKey() ) ) );
+        assertThat( manager.query().getByName( "central" ).getDescription(), nullValue() );
+        assertThat( manager.query().getByName( "added" ), notNullValue() );
+    }
+
     private void storeRemoteRepository( final RemoteRepository repo )
             throws Exception
     {
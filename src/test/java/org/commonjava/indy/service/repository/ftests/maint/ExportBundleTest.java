@@ -17,32 +17,66 @@ package org.commonjava.indy.service.repository.ftests.maint;
 
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.junit.TestProfile;
+import org.commonjava.indy.service.repository.ftests.AbstractStoreManagementTest;
 import org.commonjava.indy.service.repository.ftests.profile.MemoryFunctionProfile;
+import org.commonjava.indy.service.repository.model.HostedRepository;
 import org.hamcrest.CoreMatchers;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
 import static io.restassured.RestAssured.given;
 import static jakarta.ws.rs.core.HttpHeaders.CONTENT_DISPOSITION;
+import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
+import static jakarta.ws.rs.core.Response.Status.CREATED;
 import static org.commonjava.indy.service.repository.jaxrs.RepositoryMaintenanceResources.MEDIATYPE_APPLICATION_ZIP;
+import static org.commonjava.indy.service.repository.model.pkg.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.MatcherAssert.assertThat;
 
 @QuarkusTest
 @TestProfile( MemoryFunctionProfile.class )
 @Tag( "function" )
 public class ExportBundleTest
+        extends AbstractStoreManagementTest
 {
 
     @Test
     public void run()
+            throws Exception
     {
-        given()
+        final HostedRepository repo = new HostedRepository( MAVEN_PKG_KEY, "exported" );
+        given().body( mapper.writeValueAsString( repo ) )
+               .contentType( APPLICATION_JSON )
+               .post( getRepoTypeUrl( repo.getKey() ) )
+               .then()
+               .statusCode( CREATED.getStatusCode() );
+
+        final byte[] bundle = given()
                    .when()
                    .get( "/api/admin/stores/maint/export" )
                    .then()
                    .statusCode( 200 )
                    .contentType( MEDIATYPE_APPLICATION_ZIP )
                    .header( CONTENT_DISPOSITION,
-                            CoreMatchers.containsString( "attachment; filename=indy-repo-bundle-" ) );
+                            CoreMatchers.containsString( "attachment; filename=indy-repo-bundle-" ) )
+                   .extract()
+                   .asByteArray();
+
+        final Set<String> entries = new HashSet<>();
+        try (ZipInputStream zip = new ZipInputStream( new ByteArrayInputStream( bundle ) ))
+        {
+            for ( ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry() )
+            {
+                entries.add( entry.getName() );
+            }
+        }
+        assertThat( entries, hasItem( "repos/maven/hosted/exported.json" ) );
     }
 
 }
@@ -18,9 +18,11 @@ package org.commonjava.indy.service.repository.testutil;
 import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
 import io.smallrye.reactive.messaging.memory.InMemoryConnector;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import static org.commonjava.indy.service.repository.change.event.kafka.KafkaEventUtils.CHANNEL_STORE;
+import static org.commonjava.indy.service.repository.change.event.kafka.KafkaEventUtils.CHANNEL_STORE_SYNC;
 
 public class KafkaTestResourceLifecycleManager
         implements QuarkusTestResourceLifecycleManager
@@ -29,7 +31,9 @@ public class KafkaTestResourceLifecycleManager
     @Override
     public Map<String, String> start()
     {
-        return InMemoryConnector.switchOutgoingChannelsToInMemory( CHANNEL_STORE );
+        Map<String, String> props = new HashMap<>( InMemoryConnector.switchOutgoingChannelsToInMemory( CHANNEL_STORE ) );
+        props.putAll( InMemoryConnector.switchIncomingChannelsToInMemory( CHANNEL_STORE_SYNC ) );
+        return props;
     }
 
     @Override
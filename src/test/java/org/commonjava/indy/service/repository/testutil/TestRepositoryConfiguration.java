@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-repository-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.repository.testutil;
+
+import io.smallrye.config.WithDefault;
+import io.smallrye.config.WithName;
+import org.commonjava.indy.service.repository.config.IndyRepositoryConfiguration;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An {@link IndyRepositoryConfiguration} for the tests running outside of Quarkus, answering the default value of each
+ * property unless it is given by its name.
+ */
+public class TestRepositoryConfiguration
+{
+    public static IndyRepositoryConfiguration create( final Map<String, Object> properties )
+    {
+        return (IndyRepositoryConfiguration) Proxy.newProxyInstance(
+                IndyRepositoryConfiguration.class.getClassLoader(),
+                new Class<?>[] { IndyRepositoryConfiguration.class }, ( proxy, method, args ) -> {
+                    if ( method.getDeclaringClass() == Object.class )
+                    {
+                        return method.getName().equals( "equals" ) ?
+                                proxy == args[0] :
+                                method.getName().equals( "hashCode" ) ?
+                                        System.identityHashCode( proxy ) :
+                                        "TestRepositoryConfiguration" + properties;
+                    }
+                    final WithName name = method.getAnnotation( WithName.class );
+                    if ( name != null && properties.containsKey( name.value() ) )
+                    {
+                        final Object value = properties.get( name.value() );
+                        return method.getReturnType() == Optional.class ? Optional.ofNullable( value ) : value;
+                    }
+                    return getDefault( method );
+                } );
+    }
+
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    private static Object getDefault( final Method method )
+    {
+        final Class<?> type = method.getReturnType();
+        final WithDefault withDefault = method.getAnnotation( WithDefault.class );
+        if ( withDefault == null )
+        {
+            return type == Optional.class ? Optional.empty() : null;
+        }
+
+        final String value = withDefault.value();
+        if ( type == Boolean.class )
+        {
+            return Boolean.valueOf( value );
+        }
+        if ( type == Integer.class )
+        {
+            return Integer.valueOf( value );
+        }
+        if ( type == Long.class )
+        {
+            return Long.valueOf( value );
+        }
+        if ( type.isEnum() )
+        {
+            return Enum.valueOf( (Class<? extends Enum>) type, value );
+        }
+        return type == Optional.class ? Optional.of( value ) : value;
+    }
+}